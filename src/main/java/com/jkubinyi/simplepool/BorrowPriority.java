@@ -0,0 +1,15 @@
+package com.jkubinyi.simplepool;
+
+/**
+ * Priority class of a borrower. Used only by pools with prioritized borrowing enabled where
+ * returned objects are handed to the waiter of the highest priority first.
+ * 
+ * @author jurajkubinyi
+ */
+public enum BorrowPriority {
+	/** Latency critical borrowers such as health checks. Can use the reserved capacity. **/
+	HIGH,
+	NORMAL,
+	/** Batch jobs and other borrowers which can wait. **/
+	LOW
+}
@@ -0,0 +1,108 @@
+package com.jkubinyi.simplepool;
+
+/**
+ * <p>Keyed variant of the {@link GenericPool}. Objects are pooled separately for each key
+ * (e.g. tenant schema), while all keys share a single global capacity.</p>
+ *
+ * @author jurajkubinyi
+ *
+ * @param <K> Type of the key used to distinguish between sub-pools.
+ * @param <T> Type of the pooled objects.
+ */
+public interface GenericKeyedPool<K, T> {
+
+	/**
+	 * @return Gets current number of active (allocated) objects in use across all keys.
+	 */
+	public int getNumActive();
+
+	/**
+	 * @param key Key of the sub-pool.
+	 * @return Gets current number of active (allocated) objects in use for the key.
+	 */
+	public int getNumActive(K key);
+
+	/**
+	 * @return Gets current number of sleeping (deallocated) objects across all keys.
+	 */
+	public int getNumIdle();
+
+	/**
+	 * @param key Key of the sub-pool.
+	 * @return Gets current number of sleeping (deallocated) objects prepared to be used for the key.
+	 */
+	public int getNumIdle(K key);
+
+	/**
+	 * @return Gets total number of created objects (including already destroyed) counting
+	 * from initiating the pool. No methods can reset this counter, nor {@link #clear()}.
+	 */
+	public long getNumCreated();
+
+	/**
+	 * @return Gets total number of destroyed objects counting from initiating the pool.
+	 * No methods can reset this counter, nor {@link #clear()}.
+	 */
+	public long getNumDestroyed();
+
+	// Main methods API - create, borrow, return and destroy
+	/**
+	 * <p>Used to start the keyed pool. Sub-pools are created lazily on the first use of the key.</p>
+	 * Call {@link #preparePool(Object)} to eagerly ensure minimum number of idle objects for a key.
+	 */
+	public void create();
+
+	/**
+	 * <p>Ensures minimum number of idle objects are available for the key.</p>
+	 * <b>Blocking operation</b>.
+	 *
+	 * @param key Key of the sub-pool.
+	 */
+	public void preparePool(K key);
+
+	/**
+	 * <p>Requests an object for the key by reusing idle objects or creating a new one depending on the pool
+	 * allocation and configuration. If the global capacity is reached idle objects of other keys
+	 * could be evicted to make room for the new object.</p>
+	 * The returned object needs to be returned back to the pool or <b>memory leak could happen.</b>
+	 *
+	 * @param key Key of the sub-pool.
+	 * @return Prepared object to be used.
+	 * @throws Exception Throws exception in case of fatal failure during gathering object.
+	 */
+	public T borrowObject(K key) throws Exception;
+
+	/**
+	 * <p>Returns a <u>borrowed</u> object back to the sub-pool of the key it was borrowed with.</p>
+	 * If the method raises exception it is unlikely calling the method again with the same object will succeed.
+	 *
+	 * @param key Key the object was borrowed with.
+	 * @param object <u>Previously borrowed</u> object from the pool.
+	 * @throws Exception Throws exception in case of fatal failure during returning object.
+	 */
+	public void returnObject(K key, T object) throws Exception;
+
+	/**
+	 * Removes all idle objects of all keys from the pool.
+	 */
+	public void clear();
+
+	/**
+	 * Removes all idle objects of the key from the pool.
+	 *
+	 * @param key Key of the sub-pool.
+	 */
+	public void clear(K key);
+
+	/**
+	 * <p>Removes all idle objects from the pool and will close the pool. All objects returned after closure will
+	 * be automatically removed as well.</p>
+	 * <p>The pool can be again started by calling {@link #create()}.</p>
+	 */
+	public void close();
+
+	/**
+	 * @return Pool state, if {@code false} the pool is not ready to be used.
+	 */
+	public boolean isClosed();
+}
@@ -0,0 +1,464 @@
+package com.jkubinyi.simplepool;
+
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.jkubinyi.simplepool.GenericPoolImpl.ObjectId;
+import com.jkubinyi.simplepool.common.PoolEventHandler.Severity;
+import com.jkubinyi.simplepool.misc.InterruptibleLinkedBlockingDeque;
+
+/**
+ * <p>Default implementation of the {@link GenericKeyedPool}. Each key owns its own idle deque
+ * and identity map (sub-pool) so operations on different keys never contend with each other.
+ * Sub-pools are looked up in a {@link ConcurrentHashMap} without any global lock.</p>
+ * <p>Capacity is shared across keys. When the global cap is reached idle objects of cold keys
+ * (least recently borrowed) are evicted to make room for the hot key.</p>
+ *
+ * @author jurajkubinyi
+ *
+ * @param <K> Type of the key used to distinguish between sub-pools.
+ * @param <T> Type of the pooled objects.
+ */
+public class GenericKeyedPoolImpl<K, T> implements GenericKeyedPool<K, T> {
+
+	/** Flag whether pool has been initialzed and is prepared to be used. **/
+	private final AtomicBoolean prepared = new AtomicBoolean(false);
+
+	/** Counter how many objects were created by the pool. **/
+	private final AtomicLong createdObjects = new AtomicLong(0);
+
+	/** Counter how many objects were destroyed by the pool. **/
+	private final AtomicLong destroyedObjects = new AtomicLong(0);
+
+	/** Number of objects across all keys including objects which are just being created. **/
+	private final AtomicInteger totalObjects = new AtomicInteger(0);
+
+	/** Sub-pools of all keys used so far. **/
+	private final Map<K, KeyedSubPool<K, T>> subPools = new ConcurrentHashMap<>();
+
+	/** Configuration which is used by the pool. **/
+	protected final KeyedPoolConfiguration config;
+
+	/** Reference to the factory used by the pool. */
+	protected final KeyedObjectPoolFactory<K, T> factory;
+
+	public GenericKeyedPoolImpl(KeyedObjectPoolFactory<K, T> factory, KeyedPoolConfiguration config) {
+		this.factory = factory;
+		this.config = config;
+
+		if(this.config.shouldAutostart()) this.create();
+	}
+
+	@Override
+	public int getNumActive() {
+		int active = 0;
+		for(KeyedSubPool<K, T> subPool : this.subPools.values()) {
+			active += subPool.getNumActive();
+		}
+		return active;
+	}
+
+	@Override
+	public int getNumActive(K key) {
+		final KeyedSubPool<K, T> subPool = this.subPools.get(key);
+		return subPool == null ? 0 : subPool.getNumActive();
+	}
+
+	@Override
+	public int getNumIdle() {
+		int idle = 0;
+		for(KeyedSubPool<K, T> subPool : this.subPools.values()) {
+			idle += subPool.idleObjects.size();
+		}
+		return idle;
+	}
+
+	@Override
+	public int getNumIdle(K key) {
+		final KeyedSubPool<K, T> subPool = this.subPools.get(key);
+		return subPool == null ? 0 : subPool.idleObjects.size();
+	}
+
+	@Override
+	public long getNumCreated() {
+		return this.createdObjects.get();
+	}
+
+	@Override
+	public long getNumDestroyed() {
+		return this.destroyedObjects.get();
+	}
+
+	// Main methods API - create, borrow, return and destroy
+	@Override
+	public void create() {
+		this.prepared.compareAndSet(false, true);
+	}
+
+	@Override
+	public void preparePool(K key) {
+		if(this.isClosed())
+			throw new IllegalStateException("Pool is closed.");
+
+		this.checkForMinimumIdles(this.subPool(key));
+	}
+
+	@Override
+	public T borrowObject(K key) throws Exception {
+		if(this.isClosed())
+			throw new IllegalStateException("Pool is closed.");
+
+		final KeyedSubPool<K, T> subPool = this.subPool(key);
+		final int maxWaitTime = this.config.getMaxWaitInSec();
+		PoolObject<T> object = null;
+
+		while(object == null) {
+			boolean createdObject = false;
+			object = subPool.idleObjects.pollFirst();
+			if(object == null) { // We don't have any available idle object
+				object = this.createOneObjectInPool(subPool);
+				if(object != null) {
+					createdObject = true;
+				} else { // Could not get idle object and create a new one -> Let's give it time
+					subPool.waiters.incrementAndGet();
+					try {
+						if(maxWaitTime < 0) {
+							object = subPool.idleObjects.take();
+						} else {
+							object = subPool.idleObjects.pollFirst(maxWaitTime, TimeUnit.SECONDS);
+							if(object == null)
+								throw new PoolTimeoutException("Timeout during waiting for idle object.");
+						}
+					} finally {
+						subPool.waiters.decrementAndGet();
+					}
+				}
+			}
+
+			if(object == null)
+				throw new NoSuchElementException("Cannot obtain object from the pool.");
+
+			object = this.prepareBorrowedObject(subPool, object, createdObject);
+		}
+
+		subPool.lastBorrowTime = System.nanoTime();
+		this.newEvent(Severity.info, "Object {} borrowed from the pool for key {}.", object, key);
+		return object.getObject();
+	}
+
+	@Override
+	public void returnObject(K key, T object) throws Exception {
+		final KeyedSubPool<K, T> subPool = this.subPools.get(key);
+		final PoolObject<T> pooledObject = subPool == null ? null : subPool.allObjects.get(new ObjectId<>(object));
+		final int maxIdleSize = this.config.getMaxPoolIdleSizePerKey();
+
+		if(pooledObject == null)
+			throw new IllegalStateException("Returned object was not created by this pool for the key.");
+
+		if(!pooledObject.returned())
+			throw new IllegalStateException("Object has already been returned or is invalid.");
+
+		try {
+			this.factory.sleepObject(key, pooledObject);
+		} catch(final Exception e) {
+			this.newEvent(Severity.error, "Exception during sleeping object {}: ", pooledObject, e);
+			this.destroyAndReplenish(subPool, pooledObject);
+			return;
+		}
+
+		if(!pooledObject.deallocate())
+			throw new IllegalStateException("Object has already been returned to the pool.");
+
+		if(this.isClosed() || (maxIdleSize > -1 && maxIdleSize <= subPool.idleObjects.size())) {
+			this.destroyAndReplenish(subPool, pooledObject);
+			return;
+		}
+
+		final KeyedSubPool<K, T> hungrySubPool = this.findHungrySubPool(subPool);
+		if(hungrySubPool != null) { // Other key is waiting for the capacity held by this object
+			this.destroyQuietly(subPool, pooledObject);
+			final PoolObject<T> newObject = this.createOneObjectInPool(hungrySubPool);
+			if(newObject != null) this.addIdle(hungrySubPool, newObject);
+			return;
+		}
+
+		this.addIdle(subPool, pooledObject);
+		this.newEvent(Severity.info, "Object {} returned back to the idle objects of key {}.", pooledObject, key);
+
+		if(this.isClosed()) this.clear(key);
+	}
+
+	@Override
+	public void clear() {
+		for(KeyedSubPool<K, T> subPool : this.subPools.values()) {
+			this.clear(subPool);
+		}
+	}
+
+	@Override
+	public void clear(K key) {
+		final KeyedSubPool<K, T> subPool = this.subPools.get(key);
+		if(subPool != null) this.clear(subPool);
+	}
+
+	@Override
+	public void close() {
+		if(this.prepared.compareAndSet(true, false)) {
+			for(KeyedSubPool<K, T> subPool : this.subPools.values()) {
+				this.clear(subPool);
+				subPool.idleObjects.interruptWaitingOnTake();
+			}
+		}
+	}
+
+	@Override
+	public final boolean isClosed() {
+		return !this.prepared.get();
+	}
+
+	private KeyedSubPool<K, T> subPool(K key) {
+		Objects.requireNonNull(key, "Key cannot be null.");
+
+		// Plain get first as computeIfAbsent could lock the bin even for existing keys
+		final KeyedSubPool<K, T> subPool = this.subPools.get(key);
+		if(subPool != null) return subPool;
+		return this.subPools.computeIfAbsent(key, KeyedSubPool::new);
+	}
+
+	/**
+	 * Validates and activates the object before handing it to the borrower.
+	 *
+	 * @return Prepared object or {@code null} if the object was discarded and borrower should try again.
+	 */
+	private PoolObject<T> prepareBorrowedObject(KeyedSubPool<K, T> subPool, PoolObject<T> object, boolean createdObject) throws Exception {
+		boolean valid;
+		try {
+			valid = this.factory.validateObject(subPool.key, object);
+		} catch(final Exception e) {
+			this.newEvent(Severity.warn, "Object {} could not be validated and was destroyed.", object);
+			this.destroyAndReplenish(subPool, object);
+			if(createdObject) {
+				final Exception issExc = new IllegalStateException("Unable to validate object.");
+				issExc.initCause(e);
+				throw issExc;
+			}
+			return null;
+		}
+
+		if(!valid) {
+			this.destroyAndReplenish(subPool, object);
+			if(createdObject)
+				throw new IllegalStateException("Unable to validate object. (Validation not successful)");
+			return null;
+		}
+
+		object.allocate();
+		try {
+			this.factory.activateObject(subPool.key, object);
+		} catch(final Exception e) {
+			this.destroyAndReplenish(subPool, object);
+			if(createdObject) {
+				final Exception issExc = new IllegalStateException("Unable to activate object.");
+				issExc.initCause(e);
+				throw issExc;
+			}
+			this.newEvent(Severity.warn, "Object {} could not be activated and was destroyed.", object);
+			return null;
+		}
+		return object;
+	}
+
+	/**
+	 * Creates a new object for the sub-pool if both per-key and global limits allow it. When the global
+	 * cap is reached tries to evict an idle object of a cold key first.
+	 *
+	 * @return Newly created object or {@code null} if limits do not allow to create a new one.
+	 */
+	private PoolObject<T> createOneObjectInPool(KeyedSubPool<K, T> subPool) {
+		if(this.isClosed())
+			throw new IllegalStateException("Pool is closed.");
+
+		if(!subPool.reserve(this.config.getMaxPoolSizePerKey()))
+			return null;
+
+		if(!this.reserveGlobal() && !(this.evictColdIdleObject(subPool) && this.reserveGlobal())) {
+			subPool.numObjects.decrementAndGet();
+			return null;
+		}
+
+		try {
+			final PoolObject<T> newObject = this.factory.produceObject(this, subPool.key);
+			this.createdObjects.incrementAndGet();
+			subPool.allObjects.put(new ObjectId<>(newObject.getObject()), newObject);
+			return newObject;
+		} catch(Exception e) {
+			subPool.numObjects.decrementAndGet();
+			this.totalObjects.decrementAndGet();
+			this.caughtException(e);
+		}
+		return null;
+	}
+
+	private boolean reserveGlobal() {
+		final int maxTotal = this.config.getMaxTotalSize();
+		int current;
+		do {
+			current = this.totalObjects.get();
+			if(current >= maxTotal) return false;
+		} while(!this.totalObjects.compareAndSet(current, current + 1));
+		return true;
+	}
+
+	/**
+	 * Destroys one idle object of the least recently borrowed key which has no waiting borrowers.
+	 *
+	 * @param requester Sub-pool requesting the capacity, never evicted.
+	 * @return {@code true} if an object was evicted.
+	 */
+	private boolean evictColdIdleObject(KeyedSubPool<K, T> requester) {
+		KeyedSubPool<K, T> coldest = null;
+		for(KeyedSubPool<K, T> subPool : this.subPools.values()) {
+			if(subPool == requester || subPool.waiters.get() > 0 || subPool.idleObjects.isEmpty()) continue;
+			if(coldest == null || subPool.lastBorrowTime - coldest.lastBorrowTime < 0) coldest = subPool;
+		}
+		if(coldest == null) return false;
+
+		// Least recently returned object sits at the tail with LiFo and at the head with FiFo
+		final PoolObject<T> object = this.config.prefersLiFo() ? coldest.idleObjects.pollLast() : coldest.idleObjects.pollFirst();
+		if(object == null) return false;
+
+		this.newEvent(Severity.debug, "Evicting idle object {} of cold key {}.", object, coldest.key);
+		this.destroyQuietly(coldest, object);
+		return true;
+	}
+
+	/**
+	 * @return Sub-pool of other key with waiting borrowers if the global capacity is exhausted, otherwise {@code null}.
+	 */
+	private KeyedSubPool<K, T> findHungrySubPool(KeyedSubPool<K, T> returningTo) {
+		if(returningTo.waiters.get() > 0 || this.totalObjects.get() < this.config.getMaxTotalSize())
+			return null;
+
+		for(KeyedSubPool<K, T> subPool : this.subPools.values()) {
+			if(subPool != returningTo && subPool.waiters.get() > 0
+					&& subPool.numObjects.get() < this.config.getMaxPoolSizePerKey())
+				return subPool;
+		}
+		return null;
+	}
+
+	private void addIdle(KeyedSubPool<K, T> subPool, PoolObject<T> object) {
+		if(this.config.prefersLiFo()) subPool.idleObjects.addFirst(object);
+		else subPool.idleObjects.addLast(object);
+	}
+
+	private void checkForMinimumIdles(KeyedSubPool<K, T> subPool) {
+		final int minIdle = this.config.getMinPoolIdleSizePerKey();
+
+		while(subPool.idleObjects.size() < minIdle) {
+			final PoolObject<T> object = this.createOneObjectInPool(subPool);
+			if(object == null) break;
+			this.addIdle(subPool, object);
+		}
+
+		if(this.isClosed()) { // Pool has closed in the meantime
+			this.clear(subPool);
+		}
+	}
+
+	private void clear(KeyedSubPool<K, T> subPool) {
+		PoolObject<T> object = subPool.idleObjects.poll();
+		while(object != null) {
+			this.destroyQuietly(subPool, object);
+			object = subPool.idleObjects.poll();
+		}
+	}
+
+	private void destroyAndReplenish(KeyedSubPool<K, T> subPool, PoolObject<T> object) {
+		this.destroyQuietly(subPool, object);
+		if(this.isClosed()) return;
+		try {
+			this.checkForMinimumIdles(subPool);
+		} catch(final Exception e) {
+			this.newEvent(Severity.error, "Pool could not autocreate minimum objects: ", e);
+		}
+	}
+
+	private void destroyQuietly(KeyedSubPool<K, T> subPool, PoolObject<T> object) {
+		try {
+			this.destroy(subPool, object);
+		} catch(final Exception e) {
+			this.newEvent(Severity.warn, "Object {} could not be destroyed. (Already destroyed?)", object);
+		}
+	}
+
+	private void destroy(KeyedSubPool<K, T> subPool, PoolObject<T> object) throws Exception {
+		object.invalidate();
+		subPool.idleObjects.remove(object);
+		if(subPool.allObjects.remove(new ObjectId<T>(object.getObject())) != null) {
+			subPool.numObjects.decrementAndGet();
+			this.totalObjects.decrementAndGet();
+		}
+		try {
+			this.factory.destroyObject(subPool.key, object);
+		} finally {
+			this.newEvent(Severity.info, "Object {} was destroyed.", object);
+			this.destroyedObjects.incrementAndGet();
+		}
+	}
+
+	private void caughtException(Exception e) {
+		this.newEvent(Severity.error, "Exception during execution: ", e);
+	}
+
+	private void newEvent(Severity severity, String format, Object... objects) {
+		this.config.getEventHandler().newEvent(severity, format, objects);
+	}
+
+	/**
+	 * State of the pool for a single key.
+	 *
+	 * @author jurajkubinyi
+	 */
+	static final class KeyedSubPool<K, T> {
+		private final K key;
+
+		/** Holds all idle objects of the key prepared and waiting to be used **/
+		private final InterruptibleLinkedBlockingDeque<PoolObject<T>> idleObjects = new InterruptibleLinkedBlockingDeque<>();
+
+		/** Map used to store references to all objects of the key currently known by the pool. **/
+		private final Map<ObjectId<T>, PoolObject<T>> allObjects = new ConcurrentHashMap<>();
+
+		/** Number of objects of the key including objects which are just being created. **/
+		private final AtomicInteger numObjects = new AtomicInteger(0);
+
+		/** Number of borrowers currently waiting for an idle object of the key. **/
+		private final AtomicInteger waiters = new AtomicInteger(0);
+
+		/** {@link System#nanoTime()} of the last borrow used to find cold keys. **/
+		private volatile long lastBorrowTime = System.nanoTime();
+
+		private KeyedSubPool(K key) {
+			this.key = key;
+		}
+
+		private boolean reserve(int maxPoolSize) {
+			int current;
+			do {
+				current = this.numObjects.get();
+				if(current >= maxPoolSize) return false;
+			} while(!this.numObjects.compareAndSet(current, current + 1));
+			return true;
+		}
+
+		private int getNumActive() {
+			return this.allObjects.size() - this.idleObjects.size();
+		}
+	}
+}
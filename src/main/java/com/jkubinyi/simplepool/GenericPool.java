@@ -1,5 +1,9 @@
 package com.jkubinyi.simplepool;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+
 public interface GenericPool<T> {
 	
 	/**
@@ -42,6 +46,31 @@ public interface GenericPool<T> {
 	 */
 	public T borrowObject() throws Exception;
 	
+	/**
+	 * <p>Requests an object from the pool waiting at most the given time. The borrow fails early with
+	 * {@link PoolOverloadException} when the wait projected from recent hold times would exceed
+	 * the timeout or when too many threads are already waiting.</p>
+	 * The returned object needs to be returned back to the pool or <b>memory leak could happen.</b>
+	 * 
+	 * @param timeout Time left to the caller's deadline. Negative duration waits indefinitely.
+	 * @return Prepared object to be used.
+	 * @throws PoolTimeoutException When no object is available in time or the borrow was shed.
+	 * @throws Exception Throws exception in case of fatal failure during gathering object.
+	 */
+	public T borrowObject(Duration timeout) throws Exception;
+	
+	/**
+	 * <p>Requests an object from the pool as {@link #borrowObject(Duration)} does. If the pool uses
+	 * prioritized borrowing, returned objects are handed to waiters of the higher priority first.</p>
+	 * 
+	 * @param timeout Time left to the caller's deadline. Negative duration waits indefinitely.
+	 * @param priority Priority class of the borrower.
+	 * @return Prepared object to be used.
+	 * @throws PoolTimeoutException When no object is available in time or the borrow was shed.
+	 * @throws Exception Throws exception in case of fatal failure during gathering object.
+	 */
+	public T borrowObject(Duration timeout, BorrowPriority priority) throws Exception;
+	
 	/**
 	 * <p>Returns a <u>borrowed</u> object back to the pool. After returning it the pool will regain control over
 	 * the object's lifecycle so you should not reference it down the line without requesting a new object again.</p>
@@ -52,6 +81,68 @@ public interface GenericPool<T> {
 	 */
 	public void returnObject(T object) throws Exception;
 	
+	/**
+	 * <p>Requests an object from the pool wrapped in {@link PoolObject}. Timeout is signalled by returning
+	 * {@code null} rather than throwing exception, making it suitable for overloaded systems. A borrow
+	 * shed by the pool throws {@link PoolOverloadException}; {@link Duration#ZERO} never waits and is never shed.</p>
+	 * The object has to be returned using {@link #returnPoolObject(PoolObject)} or destroyed using
+	 * {@link #invalidatePoolObject(PoolObject)}.
+	 * 
+	 * @param timeout Maximum time to wait for an idle object. Negative duration waits indefinitely.
+	 * @return Prepared object to be used or {@code null} in case of timeout.
+	 * @throws PoolOverloadException When the borrow was shed.
+	 * @throws Exception Throws exception in case of fatal failure during gathering object.
+	 */
+	public PoolObject<T> tryBorrow(Duration timeout) throws Exception;
+	
+	/**
+	 * <p>Returns an object borrowed using {@link #tryBorrow(Duration)} back to the pool. The object
+	 * is not looked up by the pool, so it <u>must</u> be borrowed from this pool.</p>
+	 * 
+	 * @param object <u>Previously borrowed</u> object from the pool.
+	 * @throws Exception Throws exception in case of fatal failure during returning object.
+	 */
+	public void returnPoolObject(PoolObject<T> object) throws Exception;
+	
+	/**
+	 * Destroys an object borrowed using {@link #tryBorrow(Duration)} instead of returning it
+	 * back to the pool. Should be used when the object's state is unknown (e.g. after failure).
+	 * 
+	 * @param object <u>Previously borrowed</u> object from the pool.
+	 */
+	public void invalidatePoolObject(PoolObject<T> object);
+	
+	/**
+	 * <p>Borrows an object, applies the function and returns the object back to the pool. The object
+	 * is guaranteed to be returned, or invalidated if the function fails.</p>
+	 * 
+	 * @param function Function applied to the borrowed object.
+	 * @return Result of the function.
+	 * @throws PoolTimeoutException Stackless exception thrown when no object is available in time.
+	 * @throws Exception Exception thrown by the function or during gathering object.
+	 */
+	public <R> R withObject(PooledFunction<T, R> function) throws Exception;
+	
+	/**
+	 * <p>Requests a batch of objects from the pool. The operation is all-or-nothing: either all requested
+	 * objects are returned or the method fails and no object is kept by the caller.</p>
+	 * All returned objects need to be returned back to the pool or <b>memory leak could happen.</b>
+	 * 
+	 * @param numOfObjects Number of objects to borrow, cannot be higher than maximum pool size.
+	 * @param timeout Maximum time to wait for the whole batch.
+	 * @return Prepared objects to be used.
+	 * @throws Exception Throws exception in case of fatal failure during gathering objects.
+	 */
+	public List<T> borrowObjects(int numOfObjects, Duration timeout) throws Exception;
+	
+	/**
+	 * <p>Returns a batch of <u>borrowed</u> objects back to the pool in one operation.</p>
+	 * 
+	 * @param objects <u>Previously borrowed</u> objects from the pool.
+	 * @throws Exception Throws exception in case of fatal failure during returning objects.
+	 */
+	public void returnObjects(Collection<T> objects) throws Exception;
+	
 	/**
 	 * Removes all idle objects from the pool and could trigger creation of
 	 * new objects depending on the configuration.
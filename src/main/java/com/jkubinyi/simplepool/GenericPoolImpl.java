@@ -1,14 +1,35 @@
 package com.jkubinyi.simplepool;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 import com.jkubinyi.simplepool.common.PoolEventHandler.Severity;
+import com.jkubinyi.simplepool.jmx.PoolMXBeanImpl;
 import com.jkubinyi.simplepool.misc.InterruptibleLinkedBlockingDeque;
+import com.jkubinyi.simplepool.misc.LatencyRecorder;
+import com.jkubinyi.simplepool.misc.PriorityHandoffQueue;
 
 public class GenericPoolImpl<T> implements GenericPool<T> {
 
@@ -27,34 +48,107 @@ public class GenericPoolImpl<T> implements GenericPool<T> {
 	 **/
 	private AtomicLong destroyedObjects = new AtomicLong(0);
 
+	/** Number of objects handed to the destroyer which are not destroyed yet. **/
+	private final AtomicInteger pendingDestruction = new AtomicInteger(0);
+
+	/** Monitor notified once all pending objects are destroyed. **/
+	private final Object destructionLock = new Object();
+
+	/** Number of threads currently waiting for an idle object. **/
+	private final AtomicInteger waitingThreads = new AtomicInteger(0);
+
+	/** Counter how many borrows timed out. **/
+	private final AtomicLong timeouts = new AtomicLong(0);
+
+	/** Counter how many borrows were rejected due to overload. **/
+	private final AtomicLong shedBorrows = new AtomicLong(0);
+
+	/** Counter how many borrows had to wait for an idle object. **/
+	private final AtomicLong waitedBorrows = new AtomicLong(0);
+
+	/**
+	 * Exponential moving average of hold times in nanoseconds, negative until the first return.
+	 * Updated without synchronization, a lost update only drops a single sample.
+	 **/
+	private volatile long averageHoldNanos = -1;
+
+	/** Recent latencies of successful borrows including waiting. **/
+	private final LatencyRecorder borrowLatency = new LatencyRecorder(1024);
+
+	/** Flag whether objects are validated before being handed out. **/
+	private volatile boolean validationEnabled = true;
+
+	/** Name of the registered MBean, {@code null} if not registered. **/
+	private volatile ObjectName registeredMBean;
+
+	/** Number of objects known by the pool including the ones being created. Used to reserve capacity. **/
+	private final AtomicInteger numObjects = new AtomicInteger(0);
+
+	/** Number of resize requests not yet handled by the resizing task. **/
+	private final AtomicInteger resizeRequests = new AtomicInteger(0);
+
 	/** Map used to store references to all objects currently known by the pool. **/
 	private final Map<ObjectId<T>, PoolObject<T>> allObjects = new ConcurrentHashMap<>();
 
 	/** Lock object to synchronize during creating objects **/
 	private final Object objectCreationLock = new Object();
 
+	/** Lock object allowing only one batch to be gathered at a time **/
+	private final Object batchLock = new Object();
+
 	/** Holds all idle objects prepared and waiting to be used **/
 	protected final InterruptibleLinkedBlockingDeque<PoolObject<T>> idleObjects = new InterruptibleLinkedBlockingDeque<>();
 
+	/** Slot of the current thread caching one idle object in thread-affine mode, {@code null} otherwise. **/
+	private final ThreadLocal<AffineSlot<T>> affineSlot;
+
+	/** Waiters ordered by priority when prioritized borrowing is enabled, {@code null} otherwise. **/
+	private final PriorityHandoffQueue<PoolObject<T>> handoff;
+
+	/** All slots handed out to threads, used to reclaim objects cached by dead threads. **/
+	private final Queue<AffineSlot<T>> affineSlots = new ConcurrentLinkedQueue<>();
+
+	/** Number of idle objects cached in the thread slots. **/
+	private final AtomicInteger affineIdleObjects = new AtomicInteger(0);
+
+	/** Number of objects handed out to borrowers, sampled for the warm-up profile without locking the idle objects. **/
+	private final AtomicInteger borrowedObjects = new AtomicInteger(0);
+
+	/** Keepalive of idle objects scheduled in the registry, {@code null} if not enabled or the pool is closed. **/
+	private volatile ScheduledFuture<?> keepalive;
+
+	/** Records peak demand for the warm-up profile, {@code null} if not enabled. **/
+	private volatile WarmupProfile.Recorder warmupRecorder;
+
 	/** Configuration which is used by the pool. **/
 	protected final PoolConfiguration config;
 
 	/** Reference to the factory used by the pool. */
 	protected final ObjectPoolFactory<T> factory;
 
+	/** Registry running the housekeeping of the pool, the default one is resolved again on each start. **/
+	private volatile PoolRegistry registry;
+
+	/** Unique name of the pool in the registry, {@code null} while not registered. **/
+	private volatile String registeredName;
+
 	public GenericPoolImpl(ObjectPoolFactory<T> factory, PoolConfiguration config) {
 		this.factory = factory;
 		this.config = config;
+		this.registry = config.getRegistry() != null ? config.getRegistry() : PoolRegistry.getDefault();
+		this.affineSlot = config.isThreadAffine() ? ThreadLocal.withInitial(this::newAffineSlot) : null;
+		this.handoff = config.isPrioritizedBorrowing()
+				? new PriorityHandoffQueue<>(TimeUnit.MILLISECONDS.toNanos(config.getPriorityAgingInMillis())) : null;
 
 		if(this.config.shouldAutostart()) this.create();
 	}
 
 	public int getNumActive() {
-		return this.allObjects.size() - this.idleObjects.size();
+		return this.allObjects.size() - this.getNumIdle();
 	}
 
 	public int getNumIdle() {
-		return this.idleObjects.size();
+		return this.idleObjects.size() + this.affineIdleObjects.get();
 	}
 
 	public long getNumCreated() {
@@ -65,6 +159,131 @@ public class GenericPoolImpl<T> implements GenericPool<T> {
 		return this.destroyedObjects.get();
 	}
 
+	/**
+	 * @return Number of objects removed by {@link #clear()} or {@link #close()} which are not destroyed yet.
+	 */
+	public int getNumPendingDestruction() {
+		return this.pendingDestruction.get();
+	}
+
+	/**
+	 * @return Number of threads currently waiting for an idle object.
+	 */
+	public int getNumWaiters() {
+		return this.waitingThreads.get();
+	}
+
+	/**
+	 * @return Number of borrows which timed out since the pool was created.
+	 */
+	public long getNumTimeouts() {
+		return this.timeouts.get();
+	}
+
+	/**
+	 * @return Number of borrows rejected without waiting due to overload.
+	 */
+	public long getNumShed() {
+		return this.shedBorrows.get();
+	}
+
+	/**
+	 * @return Number of borrows which had to wait for an idle object.
+	 */
+	public long getNumWaited() {
+		return this.waitedBorrows.get();
+	}
+
+	public PoolConfiguration getConfiguration() {
+		return this.config;
+	}
+
+	/**
+	 * @return Registry the pool is registered in while it is open.
+	 */
+	public PoolRegistry getRegistry() {
+		return this.registry;
+	}
+
+	/**
+	 * @return {@code true} if objects are validated using the factory before being handed out.
+	 */
+	public boolean isValidationEnabled() {
+		return this.validationEnabled;
+	}
+
+	/**
+	 * Turns off validation of objects before being handed out, e.g. when the validation itself
+	 * overloads the backend. Newly created objects are still validated on start.
+	 * 
+	 * @param validationEnabled {@code false} to skip validation.
+	 */
+	public void setValidationEnabled(boolean validationEnabled) {
+		this.validationEnabled = validationEnabled;
+		this.newEvent(Severity.info, "Validation of borrowed objects {}.", validationEnabled ? "enabled" : "disabled");
+	}
+
+	/**
+	 * Gathers current statistics of the pool. Computing percentiles copies and sorts the recent
+	 * latencies, so callers polling frequently should cache the result.
+	 * 
+	 * @return Point-in-time statistics of the pool.
+	 */
+	public PoolStatistics getStatistics() {
+		final long[] latencies = this.borrowLatency.sortedSnapshot();
+		final int idle = this.getNumIdle();
+		return new PoolStatistics(System.currentTimeMillis(), this.allObjects.size() - idle, idle,
+				this.getNumCreated(), this.getNumDestroyed(), this.getNumWaiters(), this.getNumTimeouts(),
+				this.getNumShed(), this.getNumWaited(), Math.max(0, this.averageHoldNanos),
+				LatencyRecorder.percentile(latencies, 50), LatencyRecorder.percentile(latencies, 95),
+				LatencyRecorder.percentile(latencies, 99), LatencyRecorder.percentile(latencies, 100),
+				this.getNumPendingDestruction());
+	}
+
+	/**
+	 * <p>Changes the minimum idle and maximum pool size. The new limits are swapped atomically and
+	 * applied on a housekeeping thread of the {@link PoolRegistry}, so borrowers are never paused by the resize.</p>
+	 * <p>Shrinking retires idle objects first, starting with the ones idle the longest. Borrowed objects
+	 * above the new maximum are destroyed once returned. Growing creates objects one at a time so
+	 * borrowers can take them as soon as they are ready.</p>
+	 * 
+	 * @param minPoolIdleSize New minimum of idle objects.
+	 * @param maxPoolSize New maximum of all objects.
+	 */
+	public void resize(int minPoolIdleSize, int maxPoolSize) {
+		final PoolConfiguration.Limits previous = this.config.resize(minPoolIdleSize, maxPoolSize);
+		this.newEvent(Severity.info, "Pool resized from {} to {}.", previous, this.config.getLimits());
+
+		if(this.resizeRequests.getAndIncrement() == 0) this.registry.execute(this::applyLimits);
+	}
+
+	/**
+	 * Runs on a housekeeping thread of the registry till all resize requests (even the ones made meanwhile) are applied.
+	 */
+	private void applyLimits() {
+		int requests;
+		do {
+			requests = this.resizeRequests.get();
+			final PoolConfiguration.Limits limits = this.config.getLimits();
+			PoolObject<T> object;
+			while(!this.isClosed() && this.numObjects.get() > limits.getMaxPoolSize()
+					&& (object = limits.prefersLiFo() ? this.idleObjects.pollLast() : this.idleObjects.pollFirst()) != null) {
+				try {
+					this.destroy(object);
+				} catch(final Exception e) {
+					this.newEvent(Severity.warn, "Object {} could not be destroyed. (Already destroyed?)", object);
+				}
+			}
+			if(!this.isClosed()) {
+				try {
+					this.checkForMinimumIdles();
+				} catch(final Exception e) {
+					this.newEvent(Severity.error, "Pool could not autocreate minimum objects: ", e);
+				}
+			}
+		} while(!this.resizeRequests.compareAndSet(requests, 0));
+	}
+
 	// Main methods API - create, borrow, return and destroy
 	/**
 	 * <p>Used to start the object pool ensuring minimum number of objects are available at the disposal.</p>
@@ -72,8 +291,13 @@ public class GenericPoolImpl<T> implements GenericPool<T> {
 	 * lifecycle (at the startup, change of application configuration, etc.).
 	 */
 	public void create() {
+		if(this.config.getRegistry() == null) this.registry = PoolRegistry.getDefault();
+		if(this.registry.isClosed())
+			throw new IllegalStateException("Registry of the pool is closed.");
 		if(this.prepared.compareAndSet(false, true)) {
-			int toCreate = this.config.getInitialPoolSize();
+			this.registeredName = this.registry.register(this);
+			if(this.handoff != null) this.handoff.open();
+			int toCreate = this.warmupPoolSize();
 			boolean prefersLiFo = this.config.prefersLiFo();
 			synchronized(this.objectCreationLock) {
 				for (int i = 0; i < toCreate; i++) {
@@ -82,6 +306,8 @@ public class GenericPoolImpl<T> implements GenericPool<T> {
 						object = this.factory.produceObject(this);
 						this.createdObjects.incrementAndGet();
 						if(this.factory.validateObject(object)) {
+							object.markValidated();
+							this.numObjects.incrementAndGet();
 							this.allObjects.put(new ObjectId<>(object.getObject()), object);
 							if(prefersLiFo) this.idleObjects.addFirst(object);
 							else this.idleObjects.addLast(object);
@@ -91,6 +317,148 @@ public class GenericPoolImpl<T> implements GenericPool<T> {
 					}
 				}
 			}
+			if(this.warmupProfileFile() != null)
+				this.warmupRecorder = new WarmupProfile.Recorder(TimeUnit.SECONDS.toNanos(this.config.getWarmupWindowInSec()));
+			this.registerMBean();
+			this.startKeepalive();
+		}
+	}
+
+	private void startKeepalive() {
+		final int interval = this.config.getKeepaliveIntervalInSec();
+		if(interval <= 0) return;
+
+		this.keepalive = this.registry.scheduleHousekeeping(this, GenericPoolImpl::runKeepalive, interval, TimeUnit.SECONDS);
+	}
+
+	private void runKeepalive() {
+		try {
+			this.keepaliveIdleObjects();
+		} catch(final RuntimeException e) { // Would cancel further runs
+			this.newEvent(Severity.error, "Keepalive of idle objects failed: ", e);
+		}
+	}
+
+	/**
+	 * <p>Validates a few idle objects not validated within the keepalive interval. Each object is
+	 * removed from the idle objects while being validated, so no borrower can get it meanwhile and
+	 * borrowers never wait for the scan.</p>
+	 * Valid objects are put back to the cold end of the idle objects, dead ones are destroyed and replaced.
+	 */
+	void keepaliveIdleObjects() {
+		final long validBefore = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(this.config.getKeepaliveIntervalInSec());
+		int remaining = this.config.getKeepaliveBatchSize();
+
+		for(PoolObject<T> object : this.idleObjects) { // Weakly consistent iterator
+			if(remaining <= 0 || this.isClosed()) break;
+			if(object.getLastValidationTime() > validBefore || !this.idleObjects.remove(object)) continue;
+			remaining--;
+
+			boolean valid;
+			try {
+				valid = this.factory.validateObject(object);
+			} catch(final Exception e) {
+				valid = false;
+			}
+
+			if(valid) {
+				object.markValidated();
+				this.offerIdle(object, false);
+			} else {
+				this.newEvent(Severity.warn, "Idle object {} failed keepalive validation and will be replaced.", object);
+				try {
+					this.destroy(object);
+				} catch(final Exception e) {
+					this.newEvent(Severity.warn, "Object {} could not be destroyed. (Already destroyed?)", object);
+				}
+				if(!this.isClosed()) {
+					final PoolObject<T> replacement = this.createOneObjectInPool(-1);
+					if(replacement != null) this.offerIdle(replacement, false);
+				}
+			}
+		}
+		if(this.isClosed()) this.clear(false); // Objects put back after closing
+	}
+
+	private void registerMBean() {
+		final String jmxName = this.config.getJmxName();
+		if(jmxName == null) return;
+
+		try {
+			final ObjectName name = new ObjectName(jmxName);
+			final PoolMXBeanImpl bean = new PoolMXBeanImpl(this, 1000);
+			ManagementFactory.getPlatformMBeanServer().registerMBean(bean, name);
+			this.registeredMBean = name;
+			// Drops the bean of a pool collected without closing, the task ends once the bean is unregistered
+			this.registry.scheduleHousekeeping(bean, PoolMXBeanImpl::unregisterIfCollected, 60, TimeUnit.SECONDS);
+		} catch(final JMException e) {
+			this.newEvent(Severity.warn, "MBean {} could not be registered: ", jmxName, e);
+		}
+	}
+
+	private void unregisterMBean() {
+		final ObjectName name = this.registeredMBean;
+		if(name == null) return;
+
+		this.registeredMBean = null;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		} catch(final JMException e) {
+			this.newEvent(Severity.warn, "MBean {} could not be unregistered: ", name, e);
+		}
+	}
+
+	/**
+	 * @return Path of the warm-up profile or {@code null} if the profile is not enabled.
+	 */
+	private Path warmupProfileFile() {
+		final Path directory = this.config.getWarmupProfileDirectory();
+		final String poolName = this.config.getPoolName();
+		if(directory == null || poolName == null) return null;
+		return WarmupProfile.profileFile(directory, poolName);
+	}
+
+	/**
+	 * @return Number of objects to create on start. Uses the recorded peak demand if available,
+	 * otherwise falls back to the initial pool size.
+	 */
+	private int warmupPoolSize() {
+		final PoolConfiguration.Limits limits = this.config.getLimits();
+		final int initialPoolSize = limits.getInitialPoolSize();
+		final Path file = this.warmupProfileFile();
+		if(file == null || !Files.exists(file)) return initialPoolSize;
+
+		try {
+			final WarmupProfile profile = WarmupProfile.load(file);
+			final int toCreate = Math.min(profile.getPeakActive() + limits.getMinPoolIdleSize(), limits.getMaxPoolSize());
+			this.newEvent(Severity.info, "Pool will be pre-sized to {} objects using {}.", toCreate, profile);
+			return Math.max(initialPoolSize, toCreate);
+		} catch(final IOException | IllegalArgumentException e) {
+			this.newEvent(Severity.warn, "Warm-up profile {} could not be read, using initial pool size: ", file, e);
+			return initialPoolSize;
+		}
+	}
+
+	private void storeWarmupProfile() {
+		final WarmupProfile.Recorder recorder = this.warmupRecorder;
+		final Path file = this.warmupProfileFile();
+		if(recorder == null || file == null) return;
+
+		this.warmupRecorder = null;
+		final WarmupProfile profile = recorder.toProfile();
+		try {
+			profile.store(file);
+			this.newEvent(Severity.info, "Warm-up profile {} stored to {}.", profile, file);
+		} catch(final IOException e) {
+			this.newEvent(Severity.warn, "Warm-up profile could not be stored to {}: ", file, e);
+		}
+	}
+
+	private void recordDemand() {
+		final WarmupProfile.Recorder recorder = this.warmupRecorder;
+		if(recorder != null) {
+			final int active = this.borrowedObjects.get();
+			recorder.record(active, Math.max(0, this.numObjects.get() - active));
 		}
 	}
 
@@ -98,16 +466,217 @@ public class GenericPoolImpl<T> implements GenericPool<T> {
 		return borrowObject(this.config.getMaxWaitInSec());
 	}
 
+	@Override
+	public T borrowObject(Duration timeout) throws Exception {
+		return this.borrowObject(timeout, BorrowPriority.NORMAL);
+	}
+
+	@Override
+	public T borrowObject(Duration timeout, BorrowPriority priority) throws Exception {
+		final PoolObject<T> object = this.borrowPoolObject(timeout.isNegative() ? -1 : timeout.toNanos(), priority);
+		if(object == null)
+			throw new PoolTimeoutException("Timeout during waiting for idle object.");
+		return object.getObject();
+	}
+
 	public void returnObject(T object) throws Exception {
-		final PoolObject<T> newObject = allObjects.get(new ObjectId<>(object));
-		int maxIdleSize = this.config.getMaxPoolIdleSize();
-		boolean prefersLiFo = this.config.prefersLiFo();
+		final PoolObject<T> newObject = this.lookUpBorrowedObject(object);
 
 		if(newObject == null) 
 			throw new IllegalStateException("Returned object was not created by this pool.");
 
-		synchronized(object) {
+		this.returnPoolObject(newObject);
+	}
+
+	/**
+	 * <p>Borrows a batch of objects from the pool. The operation is all-or-nothing: either all
+	 * {@code numOfObjects} objects are returned or none of them is kept by the caller.</p>
+	 * <p>Idle objects are drained in a single pass and only one batch is being gathered at a time,
+	 * so two concurrent batches can never deadlock each holding a part of the pool.</p>
+	 * 
+	 * @param numOfObjects Number of objects to borrow.
+	 * @param timeout Maximum time to wait for the whole batch. Negative duration waits indefinitely.
+	 * @return List of prepared objects to be used.
+	 * @throws Exception Throws exception in case of fatal failure during gathering objects.
+	 * @throws NoSuchElementException When the whole batch could not be gathered in time.
+	 */
+	@Override
+	public List<T> borrowObjects(int numOfObjects, Duration timeout) throws Exception {
+		if(this.isClosed())
+			throw new IllegalStateException("Pool is closed.");
+		if(numOfObjects > this.config.getMaxPoolSize())
+			throw new IllegalArgumentException("Cannot borrow more objects than is the maximum pool size.");
+		if(numOfObjects <= 0)
+			return new ArrayList<>(0);
+
+		final long deadline = timeout.isNegative() ? -1 : System.nanoTime() + timeout.toNanos();
+		final List<PoolObject<T>> batch = new ArrayList<>(numOfObjects);
+
+		synchronized(this.batchLock) {
+			try {
+				while(batch.size() < numOfObjects) {
+					final int from = batch.size();
+					this.idleObjects.drainTo(batch, numOfObjects - from);
+
+					while(batch.size() < numOfObjects) {
+						final PoolObject<T> object = this.createOneObjectInPool(deadline);
+						if(object == null) break;
+						batch.add(object);
+					}
+
+					if(batch.size() < numOfObjects) { // Pool is exhausted -> Wait for returned objects
+						PoolObject<T> object = null;
+						if(deadline < 0 || deadline - System.nanoTime() > 0) { // Same path as a single borrow, so prioritized waiters and thread slots are honoured
+							this.waitingThreads.incrementAndGet();
+							try {
+								object = this.stealAffineObject();
+								if(object == null) object = this.awaitIdle(BorrowPriority.NORMAL, deadline);
+							} finally {
+								this.waitingThreads.decrementAndGet();
+							}
+						}
+						if(object == null) {
+							this.timeouts.incrementAndGet();
+							throw new PoolTimeoutException("Timeout during waiting for idle objects.");
+						}
+						batch.add(object);
+					}
+
+					this.prepareBatch(batch, from);
+				}
+			} catch(final Exception e) {
+				this.releaseBatch(batch);
+				throw e;
+			}
+		}
+
+		final List<T> objects = new ArrayList<>(batch.size());
+		for(PoolObject<T> object : batch) {
+			objects.add(object.getObject());
+		}
+		this.recordDemand();
+		this.newEvent(Severity.info, "Batch of {} objects borrowed from the pool.", objects.size());
+		return objects;
+	}
+
+	/**
+	 * <p>Returns a batch of <u>borrowed</u> objects back to the pool. All objects are verified to be
+	 * known by the pool before any of them is returned.</p>
+	 * <p>Objects kept by the pool are put to the idle objects or handed over to waiters in a single pass.</p>
+	 * 
+	 * @param objects <u>Previously borrowed</u> objects from the pool.
+	 * @throws Exception Throws exception in case of fatal failure during returning objects.
+	 */
+	@Override
+	public void returnObjects(Collection<T> objects) throws Exception {
+		final List<PoolObject<T>> batch = new ArrayList<>(objects.size());
+		for(T object : objects) {
+			final PoolObject<T> newObject = this.allObjects.get(new ObjectId<>(object));
+			if(newObject == null)
+				throw new IllegalStateException("Returned object was not created by this pool.");
+			batch.add(newObject);
+		}
+
+		final List<PoolObject<T>> idle = new ArrayList<>(batch.size());
+		Exception failure = null;
+		for(PoolObject<T> object : batch) {
+			try {
+				if(this.releaseReturned(object, idle.size()) && !this.parkAffineObject(object)) idle.add(object);
+			} catch(final Exception e) {
+				if(failure == null) failure = e;
+				else failure.addSuppressed(e);
+			}
+		}
+
+		this.offerIdle(idle, this.config.getLimits().prefersLiFo());
+		this.newEvent(Severity.info, "Batch of {} objects returned back to the pool.", batch.size());
+		this.recordDemand();
+		if(this.isClosed()) this.clear(false); // Pool has closed in the meantime, nothing to replenish
+		if(failure != null) throw failure;
+	}
+
+	/**
+	 * Validates and activates objects of the batch starting at the index. Objects which could not
+	 * be prepared are destroyed and removed from the batch.
+	 */
+	private void prepareBatch(final List<PoolObject<T>> batch, int from) {
+		final Iterator<PoolObject<T>> iterator = batch.listIterator(from);
+		while(iterator.hasNext()) {
+			final PoolObject<T> object = iterator.next();
+			boolean prepared = false;
+			try {
+				if(this.validateObject(object)) {
+					object.allocate();
+					this.factory.activateObject(object);
+					this.borrowedObjects.incrementAndGet();
+					prepared = true;
+				}
+			} catch(final Exception e) {
+				this.newEvent(Severity.warn, "Object {} could not be prepared and was destroyed.", object);
+			}
+
+			if(!prepared) {
+				iterator.remove();
+				this.destroyAndReplenish(object);
+			}
+		}
+	}
+
+	/**
+	 * Puts back all objects of the partially gathered batch.
+	 */
+	private void releaseBatch(final List<PoolObject<T>> batch) {
+		final boolean prefersLiFo = this.config.prefersLiFo();
+		for(PoolObject<T> object : batch) {
+			if(object.getState() == PoolObject.ObjectState.ALLOCATED) {
+				try {
+					this.returnPoolObject(object);
+				} catch(final Exception e) {
+					this.newEvent(Severity.warn, "Object {} could not be returned after failed batch.", object);
+				}
+			} else {
+				this.offerIdle(object, prefersLiFo);
+			}
+		}
+		batch.clear();
+	}
+
+	/**
+	 * Returns a <u>borrowed</u> object back to the pool without looking it up in the pool.
+	 * 
+	 * @param newObject Object borrowed using {@link #tryBorrow(Duration)}.
+	 * @throws Exception Throws exception in case of fatal failure during returning object.
+	 */
+	@Override
+	public void returnPoolObject(final PoolObject<T> newObject) throws Exception {
+		if(!this.releaseReturned(newObject, 0)) return;
+
+		if(this.parkAffineObject(newObject)) {
+			this.newEvent(Severity.info, "Object {} returned back to the thread slot.", newObject);
+		} else {
+			this.offerIdle(newObject, this.config.getLimits().prefersLiFo());
+			this.newEvent(Severity.info, "Object {} returned back to the idle objects.", newObject);
+		}
+		this.recordDemand();
+
+		if(this.isClosed()) this.clear(false); // Pool has closed in the meantime, nothing to replenish
+	}
+
+	/**
+	 * Marks the returned object as released and puts it to sleep. Objects which failed to sleep or
+	 * are a surplus of the pool are destroyed.
+	 * 
+	 * @param newObject Returned object.
+	 * @param pendingIdle Number of objects of the same batch about to become idle.
+	 * @return {@code true} if the object is to be kept by the pool.
+	 */
+	private boolean releaseReturned(final PoolObject<T> newObject, final int pendingIdle) throws Exception {
+		final PoolConfiguration.Limits limits = this.config.getLimits();
+		final int maxIdleSize = limits.getMaxPoolIdleSize();
+
+		synchronized(newObject.getObject()) {
 			this.markPoolObjectReturned(newObject);
+			this.borrowedObjects.decrementAndGet();
 			try {
 				this.factory.sleepObject(newObject);
 			} catch(final Exception e) {
@@ -122,13 +691,15 @@ public class GenericPoolImpl<T> implements GenericPool<T> {
 				} catch(final Exception ee) {
 					this.newEvent(Severity.error, "Pool could not autocreate minimum objects: ", ee);
 				}
-				return;
+				return false;
 			}
 
 			if(!newObject.deallocate())
 				throw new IllegalStateException("Object has already been returned to the pool.");
+			this.recordHoldTime(newObject);
 
-			if(this.isClosed() || (maxIdleSize > -1 && maxIdleSize <= this.idleObjects.size())) {
+			if(this.isClosed() || (maxIdleSize > -1 && maxIdleSize <= this.getNumIdle() + pendingIdle)
+					|| this.numObjects.get() > limits.getMaxPoolSize()) { // Surplus after shrinking the pool
 				try {
 					this.destroy(newObject);
 				} catch(final Exception e) {
@@ -139,13 +710,9 @@ public class GenericPoolImpl<T> implements GenericPool<T> {
 				} catch(final Exception e) {
 					this.newEvent(Severity.error, "Pool could not autocreate minimum objects: ", e);
 				}
-			} else {
-				if(prefersLiFo) this.idleObjects.addFirst(newObject);
-				else this.idleObjects.addLast(newObject);
-				this.newEvent(Severity.info, "Object {} returned back to the idle objects.", newObject);
-
-				if(this.isClosed()) this.clear();
+				return false;
 			}
+			return true;
 		}
 	}
 
@@ -155,25 +722,108 @@ public class GenericPoolImpl<T> implements GenericPool<T> {
 	}
 
 	private T borrowObject(int maxWaitTime) throws Exception {
+		final PoolObject<T> object = this.borrowPoolObject(maxWaitTime < 0 ? -1 : TimeUnit.SECONDS.toNanos(maxWaitTime), BorrowPriority.NORMAL);
+		if(object == null)
+			throw new PoolTimeoutException("Timeout during waiting for idle object.");
+		return object.getObject();
+	}
+
+	/**
+	 * <p>Requests an object from the pool wrapped in {@link PoolObject}. Unlike {@link #borrowObject()}
+	 * timeout is signalled by returning {@code null} rather than throwing exception. A shed borrow
+	 * still throws {@link PoolOverloadException} so it can be told apart from a timeout.</p>
+	 * The object has to be returned using {@link #returnPoolObject(PoolObject)} which does not need
+	 * to look the object up or invalidated using {@link #invalidatePoolObject(PoolObject)}.
+	 * 
+	 * @param timeout Maximum time to wait for an idle object. Negative duration waits indefinitely.
+	 * @return Prepared object to be used or {@code null} in case of timeout.
+	 * @throws PoolOverloadException When the borrow was shed.
+	 * @throws Exception Throws exception in case of fatal failure during gathering object.
+	 */
+	@Override
+	public PoolObject<T> tryBorrow(Duration timeout) throws Exception {
+		return this.borrowPoolObject(timeout.isNegative() ? -1 : timeout.toNanos(), BorrowPriority.NORMAL);
+	}
+
+	/**
+	 * <p>Borrows an object, applies the function to it and returns the object back to the pool.</p>
+	 * If the function fails the object is invalidated and destroyed as its state is unknown.
+	 * 
+	 * @param function Function to be applied to the borrowed object.
+	 * @return Result of the function.
+	 * @throws PoolTimeoutException Stackless exception thrown when no object is available in time.
+	 * @throws Exception Exception thrown by the function or by the pool.
+	 */
+	@Override
+	public <R> R withObject(PooledFunction<T, R> function) throws Exception {
+		final int maxWaitTime = this.config.getMaxWaitInSec();
+		final PoolObject<T> object = this.borrowPoolObject(maxWaitTime < 0 ? -1 : TimeUnit.SECONDS.toNanos(maxWaitTime), BorrowPriority.NORMAL);
+		if(object == null)
+			throw new PoolTimeoutException("Timeout during waiting for idle object.");
+
+		final R result;
+		try {
+			result = function.apply(object.getObject());
+		} catch(final Exception | Error e) {
+			this.invalidatePoolObject(object);
+			throw e;
+		}
+		this.returnPoolObject(object);
+		return result;
+	}
+
+	/**
+	 * Destroys a <u>borrowed</u> object instead of returning it back to the pool.
+	 * 
+	 * @param object Object borrowed using {@link #tryBorrow(Duration)}.
+	 */
+	@Override
+	public void invalidatePoolObject(final PoolObject<T> object) {
+		if(object.getState() == PoolObject.ObjectState.INVALID)
+			throw new IllegalStateException("Object has already been invalidated.");
+
+		if(object.getState() == PoolObject.ObjectState.ALLOCATED) this.borrowedObjects.decrementAndGet();
+		this.newEvent(Severity.info, "Object {} was invalidated by the borrower.", object);
+		this.destroyAndReplenish(object);
+	}
+
+	/**
+	 * @param maxWaitNanos Maximum time to wait in nanoseconds, negative to wait indefinitely.
+	 * @param priority Priority of the borrower, used only with prioritized borrowing.
+	 * @return Borrowed object or {@code null} in case of timeout.
+	 */
+	private PoolObject<T> borrowPoolObject(long maxWaitNanos, BorrowPriority priority) throws Exception {
 		if(this.isClosed())
 			throw new IllegalStateException("Pool is closed.");
 
 		PoolObject<T> object = null;
 		boolean createdObject = false;
+		boolean waited = false;
+		final long start = System.nanoTime();
+		final long deadline = start + maxWaitNanos;
 
 		while(object == null) {
-			object = this.idleObjects.pollFirst();
+			final boolean reserved = this.isCapacityReserved(priority);
+			object = this.takeAffineObject();
+			if(object == null && !reserved) object = this.idleObjects.pollFirst();
 			if(object == null) { // We don't have any available idle object
-				object = this.createOneObjectInPool();
+				object = reserved ? null : this.createOneObjectInPool(maxWaitNanos < 0 ? -1 : deadline);
 				if(object != null) {
 					createdObject = true;
-				} else { // Could not get idle object and create a new one -> Let's give it time
-					if(maxWaitTime < 0) { // A negative number -> block on queue indefinitely till has some idle object or interrupted
-						object = this.idleObjects.take();
-					} else { // We will wait only maximum defined time
-						object = this.idleObjects.pollFirst(maxWaitTime, TimeUnit.SECONDS);
-						if(object == null)
-							throw new NoSuchElementException("Timeout during waiting for idle object.");
+				} else if(reserved || (object = this.stealAffineObject()) == null) { // Could not get idle object and create a new one -> Let's give it time
+					final int waiters = this.waitingThreads.incrementAndGet();
+					try {
+						if(maxWaitNanos != 0) // Zero-wait borrows do not queue, nothing to shed
+							this.shedIfOverloaded(waiters, maxWaitNanos < 0 ? -1 : Math.max(0, deadline - System.nanoTime()));
+						waited = true;
+						if(!reserved) object = this.stealAffineObject(); // Parked before this thread was counted as a waiter
+						if(object == null) object = this.awaitIdle(priority, maxWaitNanos < 0 ? -1 : deadline);
+					} finally {
+						this.waitingThreads.decrementAndGet();
+					}
+					if(object == null && maxWaitNanos >= 0) {
+						this.timeouts.incrementAndGet();
+						return null;
 					}
 				}
 			}
@@ -183,7 +833,7 @@ public class GenericPoolImpl<T> implements GenericPool<T> {
 			else {
 				boolean valid = false;
 				try {
-					valid = this.factory.validateObject(object);
+					valid = this.validateObject(object);
 				} catch(final Exception e) {
 					this.newEvent(Severity.warn, "Object {} could not be validated and was destroyed.", object);
 					try {
@@ -250,14 +900,274 @@ public class GenericPoolImpl<T> implements GenericPool<T> {
 			}
 		}
 		
+		if(this.affineSlot != null) this.affineSlot.get().borrowed = object;
+		this.borrowedObjects.incrementAndGet();
+		if(waited) this.waitedBorrows.incrementAndGet();
+		this.borrowLatency.record(System.nanoTime() - start);
+		this.recordDemand();
 		this.newEvent(Severity.info, "Object {} borrowed from the pool.", object);
-		return object.getObject();
+		return object;
+	}
+
+	/**
+	 * Rejects the borrow if there are too many waiting threads or if the wait projected from the
+	 * average hold time exceeds the remaining time. Borrows which do not wait are never shed. Each of the objects is expected to be returned
+	 * once per average hold time, so the waiter is served after {@code hold * waiters / objects}.
+	 * 
+	 * @param waiters Number of waiting threads including the current one.
+	 * @param remainingNanos Time left to the deadline or negative if waiting indefinitely.
+	 */
+	private void shedIfOverloaded(int waiters, long remainingNanos) {
+		final int maxWaiters = this.config.getMaxWaiters();
+		if(maxWaiters > -1 && waiters > maxWaiters) {
+			this.shedBorrows.incrementAndGet();
+			throw new PoolOverloadException("Maximum number of waiting threads reached.");
+		}
+
+		final long averageHold = this.averageHoldNanos;
+		if(remainingNanos >= 0 && averageHold > 0
+				&& averageHold * waiters / Math.max(1, this.numObjects.get()) > remainingNanos) {
+			this.shedBorrows.incrementAndGet();
+			throw new PoolOverloadException("Projected wait exceeds the deadline.");
+		}
+	}
+
+	/**
+	 * Waits for an object returned by another thread. The caller has to be counted in the waiting threads,
+	 * otherwise returning threads keep the objects in their slots in thread-affine mode.
+	 * 
+	 * @param deadline Deadline in {@link System#nanoTime()} or negative to wait indefinitely.
+	 * @return Returned object or {@code null} on timeout.
+	 */
+	private PoolObject<T> awaitIdle(BorrowPriority priority, long deadline) throws InterruptedException {
+		if(this.handoff != null) return this.awaitHandoff(priority, deadline);
+		if(deadline < 0) return this.idleObjects.takeFirst(); // Signalled by every insertion unlike the monitor based take()
+		return this.idleObjects.pollFirst(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Registers the current thread as a prioritized waiter and waits for an object handed over by
+	 * a returning thread.
+	 * 
+	 * @param deadline Deadline in {@link System#nanoTime()} or negative to wait indefinitely.
+	 * @return Handed over object or {@code null} on timeout or closing the pool.
+	 */
+	private PoolObject<T> awaitHandoff(BorrowPriority priority, long deadline) throws InterruptedException {
+		final PriorityHandoffQueue.Waiter<PoolObject<T>> waiter;
+		PoolObject<T> object = null;
+		synchronized(this.handoff) { // Pairs with offerIdle, an object cannot be added between the registration and the poll
+			waiter = this.handoff.register(priority.ordinal());
+			if(!this.isCapacityReserved(priority))
+				object = this.idleObjects.pollFirst(); // Returned before the registration
+		}
+		if(object != null) {
+			if(!this.handoff.cancel(waiter)) this.offerIdle(waiter.getElement(), this.config.prefersLiFo());
+			return object;
+		}
+		return this.handoff.await(waiter, deadline);
+	}
+
+	/**
+	 * Puts the object to the idle objects or hands it over to the best waiter if there is any.
+	 * Waiters below {@link BorrowPriority#HIGH} receive the object only if the reserved capacity stays intact.
+	 * With prioritized borrowing the check for waiters and the insertion run under the monitor of the
+	 * handoff queue, otherwise a borrower registering in between would miss the object and park.
+	 */
+	private void offerIdle(final PoolObject<T> object, final boolean prefersLiFo) {
+		if(this.handoff == null) {
+			this.addIdle(object, prefersLiFo);
+			return;
+		}
+		synchronized(this.handoff) {
+			this.offerIdleLocked(object, prefersLiFo);
+		}
+	}
+
+	/**
+	 * Puts the objects to the idle objects or hands them over to waiters as {@link #offerIdle(PoolObject, boolean)}
+	 * does, taking the monitor of the handoff queue only once for the whole batch.
+	 */
+	private void offerIdle(final List<PoolObject<T>> objects, final boolean prefersLiFo) {
+		if(objects.isEmpty()) return;
+		if(this.handoff == null) {
+			for(PoolObject<T> object : objects) this.addIdle(object, prefersLiFo);
+			return;
+		}
+		synchronized(this.handoff) {
+			for(PoolObject<T> object : objects) this.offerIdleLocked(object, prefersLiFo);
+		}
+	}
+
+	private void offerIdleLocked(final PoolObject<T> object, final boolean prefersLiFo) {
+		if(this.handoff.hasWaiters()) {
+			final int reserve = this.reservedCapacity();
+			final int maxRank = reserve > 0 && this.availableCapacity() + 1 <= reserve
+					? BorrowPriority.HIGH.ordinal() : Integer.MAX_VALUE;
+			if(this.handoff.offer(object, maxRank)) return;
+		}
+		this.addIdle(object, prefersLiFo);
+	}
+
+	private void addIdle(final PoolObject<T> object, final boolean prefersLiFo) {
+		if(prefersLiFo) this.idleObjects.addFirst(object);
+		else this.idleObjects.addLast(object);
+	}
+
+	/**
+	 * @return {@code true} if the borrower cannot use the idle objects nor create a new one
+	 * as the rest of the capacity is reserved for {@link BorrowPriority#HIGH} borrowers.
+	 */
+	private boolean isCapacityReserved(BorrowPriority priority) {
+		if(this.handoff == null || priority == BorrowPriority.HIGH) return false;
+
+		final int reserve = this.reservedCapacity();
+		return reserve > 0 && this.availableCapacity() <= reserve;
+	}
+
+	private int reservedCapacity() {
+		return (this.config.getMaxPoolSize() * this.config.getHighPriorityReservePercent() + 99) / 100;
+	}
+
+	/**
+	 * @return Number of idle objects and objects which can still be created.
+	 */
+	private int availableCapacity() {
+		return this.idleObjects.size() + Math.max(0, this.config.getMaxPoolSize() - this.numObjects.get());
+	}
+
+	private void recordHoldTime(final PoolObject<T> object) {
+		final long sample = TimeUnit.MILLISECONDS.toNanos(object.getLastReturnTime() - object.getLastBorrowTime());
+		final long average = this.averageHoldNanos;
+		this.averageHoldNanos = average < 0 ? sample : average + (sample - average) / 8;
+	}
+
+	/**
+	 * In thread-affine mode the object last borrowed by the current thread is recognized
+	 * without looking it up in the map of all objects.
+	 */
+	private PoolObject<T> lookUpBorrowedObject(T object) {
+		if(this.affineSlot != null) {
+			final AffineSlot<T> slot = this.affineSlot.get();
+			final PoolObject<T> borrowed = slot.borrowed;
+			if(borrowed != null && borrowed.getObject() == object) {
+				slot.borrowed = null;
+				return borrowed;
+			}
+		}
+		return this.allObjects.get(new ObjectId<>(object));
+	}
+
+	private AffineSlot<T> newAffineSlot() {
+		this.reclaimAffineObjects(true); // Slots of finished threads would pile up with thread-per-task executors
+		final AffineSlot<T> slot = new AffineSlot<>(Thread.currentThread());
+		this.affineSlots.add(slot);
+		return slot;
+	}
+
+	/**
+	 * @return Idle object cached by the current thread or {@code null}.
+	 */
+	private PoolObject<T> takeAffineObject() {
+		if(this.affineSlot == null) return null;
+
+		final PoolObject<T> object = this.affineSlot.get().parked.getAndSet(null);
+		if(object != null) this.affineIdleObjects.decrementAndGet();
+		return object;
+	}
+
+	/**
+	 * Caches the object in the slot of the current thread unless there are waiting borrowers, which
+	 * wait on the shared idle objects. A borrower counts itself as waiting before it looks into the
+	 * slots for the last time, so the object is either stolen by it or taken back out of the slot here.
+	 * 
+	 * @return {@code false} if the object should go to the shared idle objects.
+	 */
+	private boolean parkAffineObject(PoolObject<T> object) {
+		if(this.affineSlot == null || this.waitingThreads.get() > 0) return false;
+
+		final AffineSlot<T> slot = this.affineSlot.get();
+		if(!slot.parked.compareAndSet(null, object)) return false;
+		this.affineIdleObjects.incrementAndGet();
+		if(this.waitingThreads.get() > 0 && slot.parked.compareAndSet(object, null)) { // Borrower started waiting meanwhile
+			this.affineIdleObjects.decrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Used when the pool is exhausted. Objects cached by dead threads are moved to the shared idle
+	 * objects and one cached object (even of a living thread) is taken so the borrower does not wait
+	 * for an object which sits unused in other thread's slot.
+	 * 
+	 * @return Object taken from other thread's slot or {@code null}.
+	 */
+	private PoolObject<T> stealAffineObject() {
+		if(this.affineSlot == null) return null;
+
+		this.reclaimAffineObjects(true);
+		for(AffineSlot<T> slot : this.affineSlots) {
+			final PoolObject<T> object = slot.parked.getAndSet(null);
+			if(object != null) {
+				this.affineIdleObjects.decrementAndGet();
+				return object;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Moves objects cached in thread slots to the shared idle objects.
+	 * 
+	 * @param onlyDeadThreads If {@code true} only slots of dead threads are reclaimed.
+	 */
+	private void reclaimAffineObjects(boolean onlyDeadThreads) {
+		final boolean prefersLiFo = this.config.prefersLiFo();
+		final Iterator<AffineSlot<T>> iterator = this.affineSlots.iterator();
+		while(iterator.hasNext()) {
+			final AffineSlot<T> slot = iterator.next();
+			final boolean ownerAlive = slot.isOwnerAlive();
+			if(onlyDeadThreads && ownerAlive) continue;
+
+			final PoolObject<T> object = slot.parked.getAndSet(null);
+			if(object != null) {
+				this.affineIdleObjects.decrementAndGet();
+				this.offerIdle(object, prefersLiFo);
+			}
+			if(!ownerAlive) iterator.remove();
+		}
+	}
+
+	/**
+	 * Objects validated within the trust window (e.g. by the keepalive) are not validated again.
+	 */
+	private boolean validateObject(final PoolObject<T> object) throws Exception {
+		if(!this.validationEnabled) return true;
+
+		final long trust = this.config.getValidationTrustInMillis();
+		if(trust > 0 && System.currentTimeMillis() - object.getLastValidationTime() < trust) return true;
+
+		if(!this.factory.validateObject(object)) return false;
+		if(trust > 0) object.markValidated();
+		return true;
 	}
 
 	private void destroy(final PoolObject<T> object) throws Exception {
+		this.detach(object);
+		this.destroyDetached(object);
+	}
+
+	/**
+	 * Removes the object from the pool, freeing its capacity before it is destroyed.
+	 */
+	private void detach(final PoolObject<T> object) {
 		object.invalidate();
 		this.idleObjects.remove(object);
-		this.allObjects.remove(new ObjectId<T>(object.getObject()));
+		if(this.allObjects.remove(new ObjectId<T>(object.getObject())) != null)
+			this.numObjects.decrementAndGet();
+	}
+
+	private void destroyDetached(final PoolObject<T> object) throws Exception {
 		try {
 			this.factory.destroyObject(object);
 		} finally {
@@ -266,23 +1176,77 @@ public class GenericPoolImpl<T> implements GenericPool<T> {
 		}
 	}
 
+	/**
+	 * Detaches the object and hands it to the destroyer of the registry, so slow destruction
+	 * (e.g. a rollback and a socket close) does not block the caller.
+	 */
+	private void destroyAsync(final PoolObject<T> object) {
+		this.detach(object);
+		this.pendingDestruction.incrementAndGet();
+		this.registry.destroy(() -> {
+			try {
+				this.destroyDetached(object);
+			} catch(final Exception e) {
+				this.newEvent(Severity.warn, "Object {} could not be destroyed. (Already destroyed?)", object);
+			} finally {
+				if(this.pendingDestruction.decrementAndGet() == 0) {
+					synchronized(this.destructionLock) {
+						this.destructionLock.notifyAll();
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Waits till the objects removed by {@link #clear()} or {@link #close()} are destroyed.
+	 * 
+	 * @param timeout Maximum time to wait.
+	 * @return {@code true} if no object is pending destruction.
+	 * @throws InterruptedException When interrupted while waiting.
+	 */
+	public boolean awaitDestruction(Duration timeout) throws InterruptedException {
+		final long deadline = System.nanoTime() + timeout.toNanos();
+		synchronized(this.destructionLock) {
+			while(this.pendingDestruction.get() > 0) {
+				final long remaining = deadline - System.nanoTime();
+				if(remaining <= 0) return false;
+				TimeUnit.NANOSECONDS.timedWait(this.destructionLock, remaining);
+			}
+		}
+		return true;
+	}
+
+	private void destroyAndReplenish(final PoolObject<T> object) {
+		try {
+			this.destroy(object);
+		} catch(final Exception e) {
+			this.newEvent(Severity.warn, "Object {} could not be destroyed. (Already destroyed?)", object);
+		}
+		try {
+			this.checkForMinimumIdles();
+		} catch(final Exception e) {
+			this.newEvent(Severity.error, "Pool could not autocreate minimum objects: ", e);
+		}
+	}
+
 	private void checkForMinimumIdles() throws Exception {
 		if(this.isClosed())
 			throw new IllegalStateException("Pool is closed.");
 
-		int minIdle = this.config.getMinPoolIdleSize();
-		boolean prefersLiFo = this.config.prefersLiFo();
+		final PoolConfiguration.Limits limits = this.config.getLimits();
+		final int minIdle = limits.getMinPoolIdleSize();
+		final boolean prefersLiFo = limits.prefersLiFo();
 
-		if(this.idleObjects.size() >= minIdle) {
+		if(this.getNumIdle() >= minIdle) { // Objects parked in the thread slots are idle as well
 			return;
 		}
 
-		while(this.idleObjects.size() < minIdle) {
-			final PoolObject<T> object = this.createOneObjectInPool();
+		while(this.getNumIdle() < minIdle) {
+			final PoolObject<T> object = this.createOneObjectInPool(-1);
 			if(object == null) break;
 
-			if(prefersLiFo) this.idleObjects.addFirst(object);
-			else this.idleObjects.addLast(object);
+			this.offerIdle(object, prefersLiFo);
 		}
 
 		if(this.isClosed()) { // Pool has closed in the meantime
@@ -290,35 +1254,71 @@ public class GenericPoolImpl<T> implements GenericPool<T> {
 		}
 	}
 
+	/**
+	 * Removes all idle objects and hands them to the destroyer of the registry, so the caller does
+	 * not wait for their destruction. Their capacity is freed immediately.
+	 * 
+	 * @see #getNumPendingDestruction()
+	 * @see #awaitDestruction(Duration)
+	 */
 	public void clear() {
 		this.clear(true);
 	}
 
+	/**
+	 * Closes the pool without waiting for its idle objects to be destroyed.
+	 * 
+	 * @see #close(Duration)
+	 */
 	@Override
 	public void close() {
 		this.close(true);
 	}
 
+	/**
+	 * Closes the pool and waits till its idle objects are destroyed. Borrowed objects are destroyed
+	 * once returned and are not waited for.
+	 * 
+	 * @param timeout Maximum time to wait for the destruction.
+	 * @return {@code true} if all idle objects were destroyed in time.
+	 * @throws InterruptedException When interrupted while waiting.
+	 */
+	public boolean close(Duration timeout) throws InterruptedException {
+		this.close();
+		return this.awaitDestruction(timeout);
+	}
+
 	public final boolean isClosed() {
 		return !this.prepared.get();
 	}
 
 	protected void close(boolean clear) {
 		if(this.prepared.compareAndSet(true, false)) {
+			this.storeWarmupProfile();
+			this.unregisterMBean();
+			final ScheduledFuture<?> keepalive = this.keepalive;
+			if(keepalive != null) {
+				this.keepalive = null;
+				keepalive.cancel(false);
+			}
+			final String registeredName = this.registeredName;
+			if(registeredName != null) {
+				this.registeredName = null;
+				this.registry.unregister(registeredName);
+			}
 			if(clear) this.clear(false);
 			this.idleObjects.interruptWaitingOnTake();
+			if(this.handoff != null) this.handoff.close();
 		}
 	}
 
 	protected void clear(boolean restart) {
+		if(this.affineSlot != null) this.reclaimAffineObjects(false);
+
 		PoolObject<T> object = this.idleObjects.poll();
 
 		while(object != null) {
-			try {
-				this.destroy(object);
-			} catch(final Exception e) {
-				this.newEvent(Severity.warn, "Object {} could not be destroyed. (Already destroyed?)", object);
-			}
+			this.destroyAsync(object);
 			object = this.idleObjects.poll();
 		}
 
@@ -334,19 +1334,31 @@ public class GenericPoolImpl<T> implements GenericPool<T> {
 		}
 	}
 
-	private synchronized PoolObject<T> createOneObjectInPool() {
+	/**
+	 * Reserves capacity using CAS before producing the object, so concurrent creations do not
+	 * serialize on a lock and the maximum pool size is never exceeded.
+	 * 
+	 * @param deadline Deadline of the borrower in {@link System#nanoTime()} or negative if there is none.
+	 */
+	private PoolObject<T> createOneObjectInPool(long deadline) {
 		if(this.isClosed())
 			throw new IllegalStateException("Pool is closed.");
 
-		if(this.allObjects.size() >= this.config.getMaxPoolSize()) // Check for maximum objects
-			return null;
+		final int maxPoolSize = this.config.getMaxPoolSize();
+		int current;
+		do {
+			current = this.numObjects.get();
+			if(current >= maxPoolSize) // Check for maximum objects
+				return null;
+		} while(!this.numObjects.compareAndSet(current, current + 1));
 
 		try {
-			PoolObject<T> newObject = this.factory.produceObject(this);
+			PoolObject<T> newObject = this.factory.produceObject(this, deadline);
 			this.createdObjects.incrementAndGet();
 			this.allObjects.put(new ObjectId<>(newObject.getObject()), newObject);
 			return newObject;
 		} catch(Exception e) {
+			this.numObjects.decrementAndGet();
 			this.caughtException(e);
 		}
 
@@ -362,6 +1374,33 @@ public class GenericPoolImpl<T> implements GenericPool<T> {
 		this.config.getEventHandler().newEvent(severity, format, objects);
 	}
 
+	/**
+	 * Slot of a single thread in thread-affine mode. The owner is referenced weakly so the slot
+	 * does not keep dead threads alive and its object can be reclaimed.
+	 * 
+	 * @author jurajkubinyi
+	 *
+	 * @param <T>
+	 */
+	static final class AffineSlot<T> {
+		private final WeakReference<Thread> owner;
+
+		/** Idle object cached for the owner. Other threads can reclaim it, hence atomic. **/
+		private final AtomicReference<PoolObject<T>> parked = new AtomicReference<>();
+
+		/** Object last borrowed by the owner, accessed only by the owner thread. **/
+		private PoolObject<T> borrowed;
+
+		private AffineSlot(Thread owner) {
+			this.owner = new WeakReference<>(owner);
+		}
+
+		private boolean isOwnerAlive() {
+			final Thread thread = this.owner.get();
+			return thread != null && thread.isAlive();
+		}
+	}
+
 	/**
 	 * Class is used to uniquely distinguish between objects for safe storage inside pool. Has unique
 	 * hashcode depending on the underlying object to maintain proper pool object management.
@@ -377,7 +1416,7 @@ public class GenericPoolImpl<T> implements GenericPool<T> {
 		 * Creates the ObjectId of the object for the pool.
 		 * @param object
 		 */
-		private ObjectId(final T object) {
+		ObjectId(final T object) {
 			this.object = object;
 		}
 
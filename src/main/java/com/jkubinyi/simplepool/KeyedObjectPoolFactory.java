@@ -0,0 +1,60 @@
+package com.jkubinyi.simplepool;
+
+/**
+ * Keyed equivalent of the {@link ObjectPoolFactory} used by the {@link GenericKeyedPool}. Each
+ * lifecycle method receives the key of the sub-pool the object belongs to.
+ *
+ * @author jurajkubinyi
+ *
+ * @param <K> Type of the key used to distinguish between sub-pools.
+ * @param <T> Type of the pooled objects.
+ */
+public interface KeyedObjectPoolFactory<K, T> {
+
+	/**
+	 * Used to produce object for the key wrapped by {@link PoolObject} class instance.
+	 *
+	 * @param pool {@link GenericKeyedPool} which is requesting to create a new object.
+	 * @param key Key of the sub-pool the object is created for.
+	 * @return Object wrapped by PoolObject
+	 * @throws Exception Thrown if the object creation is not successful.
+	 */
+	PoolObject<T> produceObject(GenericKeyedPool<K, T> pool, K key) throws Exception;
+
+	/**
+	 * @see ObjectPoolFactory#destroyObject(PoolObject)
+	 *
+	 * @param key Key of the sub-pool the object belongs to.
+	 * @param object Object to be destroyed wrapped in {@link PoolObject}
+	 * @throws Exception Unrecoverable exception thrown during destroying object.
+	 */
+	void destroyObject(K key, PoolObject<T> object) throws Exception;
+
+	/**
+	 * @see ObjectPoolFactory#validateObject(PoolObject)
+	 *
+	 * @param key Key of the sub-pool the object belongs to.
+	 * @param object Object to be tested wrapped in {@link PoolObject}
+	 * @return {@code false} if the object cannot be reused by the pool again
+	 * @throws Exception Unrecoverable exception thrown during validating object.
+	 */
+	boolean validateObject(K key, PoolObject<T> object) throws Exception;
+
+	/**
+	 * @see ObjectPoolFactory#activateObject(PoolObject)
+	 *
+	 * @param key Key of the sub-pool the object belongs to.
+	 * @param object Object to be returned by the poll wrapped in {@link PoolObject}
+	 * @throws Exception Unrecoverable exception thrown during preparing object before returning.
+	 */
+	void activateObject(K key, PoolObject<T> object) throws Exception;
+
+	/**
+	 * @see ObjectPoolFactory#sleepObject(PoolObject)
+	 *
+	 * @param key Key of the sub-pool the object belongs to.
+	 * @param object Object to be marked as idle wrapped by {@link PoolObject}
+	 * @throws Exception Unrecoverable exception thrown during preparing object to mark idle.
+	 */
+	void sleepObject(K key, PoolObject<T> object) throws Exception;
+}
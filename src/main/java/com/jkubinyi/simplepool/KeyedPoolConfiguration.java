@@ -0,0 +1,131 @@
+package com.jkubinyi.simplepool;
+
+import com.jkubinyi.simplepool.common.DefaultEventHandler;
+import com.jkubinyi.simplepool.common.PoolEventHandler;
+
+/**
+ * Configuration used by the {@link GenericKeyedPoolImpl}. Per-key limits are applied to each
+ * sub-pool separately while {@link #getMaxTotalSize()} caps the number of objects across all keys.
+ *
+ * @author jurajkubinyi
+ */
+public class KeyedPoolConfiguration {
+
+	private final int maxTotalSize;
+	private final int maxPoolSizePerKey;
+	private final int maxPoolIdleSizePerKey;
+	private final int minPoolIdleSizePerKey;
+	private final int maxWaitInSec;
+	private final boolean prefersLiFo;
+	private final boolean autostart;
+	private final PoolEventHandler eventHandler;
+
+	private KeyedPoolConfiguration(int maxTotalSize, int maxPoolSizePerKey, int maxPoolIdleSizePerKey,
+			int minPoolIdleSizePerKey, int maxWaitInSec, boolean prefersLiFo, boolean autostart, PoolEventHandler eventHandler) {
+		if(maxPoolSizePerKey > maxTotalSize) this.maxPoolSizePerKey = maxTotalSize;
+		else this.maxPoolSizePerKey = maxPoolSizePerKey;
+
+		if(minPoolIdleSizePerKey > this.maxPoolSizePerKey) this.minPoolIdleSizePerKey = this.maxPoolSizePerKey;
+		else this.minPoolIdleSizePerKey = minPoolIdleSizePerKey;
+
+		this.maxTotalSize = maxTotalSize;
+		this.maxPoolIdleSizePerKey = maxPoolIdleSizePerKey;
+		this.maxWaitInSec = maxWaitInSec;
+		this.prefersLiFo = prefersLiFo;
+		this.autostart = autostart;
+		this.eventHandler = eventHandler;
+	}
+
+	/**
+	 * @return Maximum number of objects across all keys.
+	 */
+	public int getMaxTotalSize() {
+		return maxTotalSize;
+	}
+
+	/**
+	 * @return Maximum number of objects (idle and active) of a single key.
+	 */
+	public int getMaxPoolSizePerKey() {
+		return maxPoolSizePerKey;
+	}
+
+	/**
+	 * @return Maximum number of idle objects kept for a single key. Negative value means no limit.
+	 */
+	public int getMaxPoolIdleSizePerKey() {
+		return maxPoolIdleSizePerKey;
+	}
+
+	/**
+	 * @return Minimum number of idle objects the pool tries to keep for each used key.
+	 */
+	public int getMinPoolIdleSizePerKey() {
+		return minPoolIdleSizePerKey;
+	}
+
+	public int getMaxWaitInSec() {
+		return maxWaitInSec;
+	}
+
+	public boolean prefersLiFo() {
+		return prefersLiFo;
+	}
+
+	public boolean shouldAutostart() {
+		return autostart;
+	}
+
+	public PoolEventHandler getEventHandler() {
+		return eventHandler;
+	}
+
+	public static class Builder {
+
+		private int maxTotalSize = 8;
+		private int maxPoolSizePerKey = 1;
+		private int maxPoolIdleSizePerKey = 1;
+		private int minPoolIdleSizePerKey = 0;
+		private int maxWaitInSec = 10;
+		private boolean prefersLiFo = false;
+		private boolean autostart = true;
+		private PoolEventHandler eventHandler = new DefaultEventHandler();
+
+		public Builder setMaxTotalSize(int maxTotalSize) {
+			this.maxTotalSize = maxTotalSize;
+			return this;
+		}
+		public Builder setMaxPoolSizePerKey(int maxPoolSizePerKey) {
+			this.maxPoolSizePerKey = maxPoolSizePerKey;
+			return this;
+		}
+		public Builder setMaxPoolIdleSizePerKey(int maxPoolIdleSizePerKey) {
+			this.maxPoolIdleSizePerKey = maxPoolIdleSizePerKey;
+			return this;
+		}
+		public Builder setMinPoolIdleSizePerKey(int minPoolIdleSizePerKey) {
+			this.minPoolIdleSizePerKey = minPoolIdleSizePerKey;
+			return this;
+		}
+		public Builder setMaxWaitInSec(int maxWaitInSec) {
+			this.maxWaitInSec = maxWaitInSec;
+			return this;
+		}
+		public Builder setPrefersLiFo(boolean prefersLiFo) {
+			this.prefersLiFo = prefersLiFo;
+			return this;
+		}
+		public Builder setAutostart(boolean autostart) {
+			this.autostart = autostart;
+			return this;
+		}
+		public Builder setEventHandler(PoolEventHandler handler) {
+			this.eventHandler = handler;
+			return this;
+		}
+		public KeyedPoolConfiguration build() {
+			return new KeyedPoolConfiguration(maxTotalSize, maxPoolSizePerKey, maxPoolIdleSizePerKey,
+					minPoolIdleSizePerKey, maxWaitInSec, prefersLiFo, autostart, eventHandler);
+		}
+	}
+}
@@ -10,6 +10,19 @@ public interface ObjectPoolFactory<T> {
 	 * @throws Exception Thrown if the object creation is not successful.
 	 */
 	PoolObject<T> produceObject(GenericPool<T> pool) throws Exception;
+
+	/**
+	 * Produces an object for a borrower which waits at most till the deadline. Factories which can
+	 * block before creating (e.g. throttled handshakes) should not wait past it.
+	 * 
+	 * @param pool {@link GenericPool} which is requesting to create a new object.
+	 * @param deadline Deadline of the borrower in {@link System#nanoTime()} or negative if there is none.
+	 * @return Object wrapped by PoolObject
+	 * @throws Exception Thrown if the object creation is not successful.
+	 */
+	default PoolObject<T> produceObject(GenericPool<T> pool, long deadline) throws Exception {
+		return this.produceObject(pool);
+	}
 	
 	/**
 	 * <p>Called during destroying a reference to an instance of the object in the pool. Please keep
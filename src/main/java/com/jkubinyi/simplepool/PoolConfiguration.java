@@ -1,19 +1,29 @@
 package com.jkubinyi.simplepool;
 
+import java.nio.file.Path;
+
 import com.jkubinyi.simplepool.common.DefaultEventHandler;
 import com.jkubinyi.simplepool.common.PoolEventHandler;
 
 public class PoolConfiguration {
 
-	private int initialPoolSize;
-	private int maxWaitInSec;
-	private int maxPoolSize;
-	private int maxPoolIdleSize;
-	private int minPoolIdleSize;
-	private int maxObjectIdleTime;
-	private boolean prefersLiFo;
-	private boolean autostart;
+	/** Current sizing snapshot. Setters replace the whole snapshot so readers never see a partial change. **/
+	private volatile Limits limits;
+	private final boolean autostart;
+	private final boolean threadAffine;
+	private final String poolName;
+	private final Path warmupProfileDirectory;
+	private final int warmupWindowInSec;
+	private final String jmxName;
+	private final int maxWaiters;
+	private final boolean prioritizedBorrowing;
+	private final long priorityAgingInMillis;
+	private final int highPriorityReservePercent;
+	private final int keepaliveIntervalInSec;
+	private final int keepaliveBatchSize;
+	private final long validationTrustInMillis;
 	private final PoolEventHandler eventHandler;
+	private final PoolRegistry registry;
 
 	/**
 	 * @param initialPoolSize
@@ -25,90 +35,309 @@ public class PoolConfiguration {
 	 * @param prefersLiFo
 	 */
 	private PoolConfiguration(int initialPoolSize, int maxWaitInSec, int maxPoolSize, int maxPoolIdleSize,
-			int minPoolIdleSize, int maxObjectIdleTime, boolean prefersLiFo, boolean autostart, PoolEventHandler eventHandler) {
+			int minPoolIdleSize, int maxObjectIdleTime, boolean prefersLiFo, boolean autostart, boolean threadAffine,
+			String poolName, Path warmupProfileDirectory, int warmupWindowInSec, String jmxName, int maxWaiters,
+			boolean prioritizedBorrowing, long priorityAgingInMillis, int highPriorityReservePercent,
+			int keepaliveIntervalInSec, int keepaliveBatchSize, long validationTrustInMillis, PoolEventHandler eventHandler,
+			PoolRegistry registry) {
 		super();
-		this.initialPoolSize = initialPoolSize;
-		
-		if(maxPoolSize < initialPoolSize) this.maxPoolSize = initialPoolSize;
-		else this.maxPoolSize = maxPoolSize;
-		
-		if(maxPoolIdleSize < initialPoolSize) this.maxPoolIdleSize = initialPoolSize;
-		else this.maxPoolIdleSize = maxPoolIdleSize;
-		
-		this.maxWaitInSec = maxWaitInSec;
-		this.minPoolIdleSize = minPoolIdleSize;
-		this.maxObjectIdleTime = maxObjectIdleTime;
-		this.prefersLiFo = prefersLiFo;
+		this.limits = new Limits(initialPoolSize, maxWaitInSec, Math.max(maxPoolSize, initialPoolSize),
+				Math.max(maxPoolIdleSize, initialPoolSize), minPoolIdleSize, maxObjectIdleTime, prefersLiFo);
 		this.autostart = autostart;
+		this.threadAffine = threadAffine;
+		this.poolName = poolName;
+		this.warmupProfileDirectory = warmupProfileDirectory;
+		this.warmupWindowInSec = warmupWindowInSec;
+		this.jmxName = jmxName;
+		this.maxWaiters = maxWaiters;
+		this.prioritizedBorrowing = prioritizedBorrowing;
+		this.priorityAgingInMillis = priorityAgingInMillis;
+		this.highPriorityReservePercent = highPriorityReservePercent;
+		this.keepaliveIntervalInSec = keepaliveIntervalInSec;
+		this.keepaliveBatchSize = keepaliveBatchSize;
+		this.validationTrustInMillis = validationTrustInMillis;
 		this.eventHandler = eventHandler;
+		this.registry = registry;
+	}
+
+	/**
+	 * @return Immutable snapshot of the current sizing. Operations reading several values should
+	 * use a single snapshot to get a consistent view.
+	 */
+	public Limits getLimits() {
+		return limits;
+	}
+
+	/**
+	 * Atomically replaces the minimum idle and maximum pool size. The maximum idle size is raised
+	 * to the minimum idle size if needed, the initial pool size is capped by the maximum.
+	 * 
+	 * @param minPoolIdleSize New minimum of idle objects.
+	 * @param maxPoolSize New maximum of all objects.
+	 * @return Snapshot which was replaced.
+	 */
+	public synchronized Limits resize(int minPoolIdleSize, int maxPoolSize) {
+		if(minPoolIdleSize < 0 || maxPoolSize < minPoolIdleSize)
+			throw new IllegalArgumentException("Minimum idle size has to be between 0 and the maximum pool size.");
+
+		final Limits previous = this.limits;
+		this.limits = new Limits(Math.min(previous.initialPoolSize, maxPoolSize), previous.maxWaitInSec, maxPoolSize,
+				Math.max(previous.maxPoolIdleSize, minPoolIdleSize), minPoolIdleSize, previous.maxObjectIdleTime,
+				previous.prefersLiFo);
+		return previous;
 	}
 
 	public int getInitialPoolSize() {
-		return initialPoolSize;
+		return limits.initialPoolSize;
 	}
 
 	public int getMaxPoolIdleSize() {
-		return maxPoolIdleSize;
+		return limits.maxPoolIdleSize;
 	}
 
 	public int getMinPoolIdleSize() {
-		return minPoolIdleSize;
+		return limits.minPoolIdleSize;
 	}
 
 	public int getMaxObjectIdleTime() {
-		return maxObjectIdleTime;
+		return limits.maxObjectIdleTime;
 	}
 
 	public int getMaxPoolSize() {
-		return maxPoolSize;
+		return limits.maxPoolSize;
 	}
 
 	public int getMaxWaitInSec() {
-		return maxWaitInSec;
+		return limits.maxWaitInSec;
 	}
 
-	public void setMaxWaitInSec(int maxWaitInSec) {
-		this.maxWaitInSec = maxWaitInSec;
+	public synchronized void setMaxWaitInSec(int maxWaitInSec) {
+		final Limits l = this.limits;
+		this.limits = new Limits(l.initialPoolSize, maxWaitInSec, l.maxPoolSize, l.maxPoolIdleSize,
+				l.minPoolIdleSize, l.maxObjectIdleTime, l.prefersLiFo);
 	}
 
-	public void setInitialPoolSize(int initialPoolSize) {
-		if(this.maxPoolSize < initialPoolSize) this.maxPoolSize = initialPoolSize;
-		if(this.maxPoolIdleSize < initialPoolSize) this.maxPoolIdleSize = initialPoolSize;
-		this.initialPoolSize = initialPoolSize;
+	public synchronized void setInitialPoolSize(int initialPoolSize) {
+		final Limits l = this.limits;
+		this.limits = new Limits(initialPoolSize, l.maxWaitInSec, Math.max(l.maxPoolSize, initialPoolSize),
+				Math.max(l.maxPoolIdleSize, initialPoolSize), l.minPoolIdleSize, l.maxObjectIdleTime, l.prefersLiFo);
 	}
 
-	public void setMaxPoolSize(int maxPoolSize) {
-		this.maxPoolSize = maxPoolSize;
+	/**
+	 * Changes only the configuration, use {@link GenericPoolImpl#resize(int, int)} to apply
+	 * the change to a running pool.
+	 */
+	public synchronized void setMaxPoolSize(int maxPoolSize) {
+		final Limits l = this.limits;
+		this.limits = new Limits(l.initialPoolSize, l.maxWaitInSec, maxPoolSize, l.maxPoolIdleSize,
+				l.minPoolIdleSize, l.maxObjectIdleTime, l.prefersLiFo);
 	}
 
-	public void setMaxPoolIdleSize(int maxPoolIdleSize) {
-		this.maxPoolIdleSize = maxPoolIdleSize;
+	public synchronized void setMaxPoolIdleSize(int maxPoolIdleSize) {
+		final Limits l = this.limits;
+		this.limits = new Limits(l.initialPoolSize, l.maxWaitInSec, l.maxPoolSize, maxPoolIdleSize,
+				l.minPoolIdleSize, l.maxObjectIdleTime, l.prefersLiFo);
 	}
 
-	public void setMinPoolIdleSize(int minPoolIdleSize) {
-		this.minPoolIdleSize = minPoolIdleSize;
+	/**
+	 * Changes only the configuration, use {@link GenericPoolImpl#resize(int, int)} to apply
+	 * the change to a running pool.
+	 */
+	public synchronized void setMinPoolIdleSize(int minPoolIdleSize) {
+		final Limits l = this.limits;
+		this.limits = new Limits(l.initialPoolSize, l.maxWaitInSec, l.maxPoolSize, l.maxPoolIdleSize,
+				minPoolIdleSize, l.maxObjectIdleTime, l.prefersLiFo);
 	}
 
-	public void setMaxObjectIdleTime(int maxObjectIdleTime) {
-		this.maxObjectIdleTime = maxObjectIdleTime;
+	public synchronized void setMaxObjectIdleTime(int maxObjectIdleTime) {
+		final Limits l = this.limits;
+		this.limits = new Limits(l.initialPoolSize, l.maxWaitInSec, l.maxPoolSize, l.maxPoolIdleSize,
+				l.minPoolIdleSize, maxObjectIdleTime, l.prefersLiFo);
 	}
 
 	public boolean prefersLiFo() {
-		return prefersLiFo;
+		return limits.prefersLiFo;
 	}
 
-	public void setPrefersLiFo(boolean prefersLiFo) {
-		this.prefersLiFo = prefersLiFo;
+	public synchronized void setPrefersLiFo(boolean prefersLiFo) {
+		final Limits l = this.limits;
+		this.limits = new Limits(l.initialPoolSize, l.maxWaitInSec, l.maxPoolSize, l.maxPoolIdleSize,
+				l.minPoolIdleSize, l.maxObjectIdleTime, prefersLiFo);
 	}
 	
 	public boolean shouldAutostart() {
 		return autostart;
 	}
 
+	/**
+	 * @return {@code true} if each thread caches its own idle object which is borrowed and returned
+	 * without going through the shared idle objects. Suitable for non-thread-safe helper objects.
+	 */
+	public boolean isThreadAffine() {
+		return threadAffine;
+	}
+
+	/**
+	 * @return Name of the pool or {@code null} if the pool is anonymous.
+	 */
+	public String getPoolName() {
+		return poolName;
+	}
+
+	/**
+	 * @return Directory where the warm-up profile of the named pool is stored or {@code null}
+	 * if the pool should not record its demand.
+	 */
+	public Path getWarmupProfileDirectory() {
+		return warmupProfileDirectory;
+	}
+
+	/**
+	 * @return Length of the window in seconds over which the peak demand is recorded.
+	 */
+	public int getWarmupWindowInSec() {
+		return warmupWindowInSec;
+	}
+
+	/**
+	 * @return Object name under which the pool registers its MBean or {@code null} if the pool
+	 * should not be exposed over JMX.
+	 */
+	public String getJmxName() {
+		return jmxName;
+	}
+
+	/**
+	 * @return Maximum number of threads waiting for an idle object, borrows above the limit fail
+	 * immediately. Negative number means unlimited.
+	 */
+	public int getMaxWaiters() {
+		return maxWaiters;
+	}
+
+	/**
+	 * @return {@code true} if returned objects are handed to waiters by their {@link BorrowPriority}
+	 * instead of the first come, first served order.
+	 */
+	public boolean isPrioritizedBorrowing() {
+		return prioritizedBorrowing;
+	}
+
+	/**
+	 * @return Time in miliseconds after which a waiting borrower gains one priority class.
+	 */
+	public long getPriorityAgingInMillis() {
+		return priorityAgingInMillis;
+	}
+
+	/**
+	 * @return Percentage of the maximum pool size which can be used only by {@link BorrowPriority#HIGH} borrowers.
+	 */
+	public int getHighPriorityReservePercent() {
+		return highPriorityReservePercent;
+	}
+
+	/**
+	 * @return Interval in seconds in which idle objects are validated in the background. Objects
+	 * validated within the interval are skipped. 0 disables the keepalive.
+	 */
+	public int getKeepaliveIntervalInSec() {
+		return keepaliveIntervalInSec;
+	}
+
+	/**
+	 * @return Maximum number of idle objects validated by a single keepalive run.
+	 */
+	public int getKeepaliveBatchSize() {
+		return keepaliveBatchSize;
+	}
+
+	/**
+	 * @return Time in miliseconds after successful validation during which the object is handed
+	 * out without validating it again. 0 validates on every borrow.
+	 */
+	public long getValidationTrustInMillis() {
+		return validationTrustInMillis;
+	}
+
 	public PoolEventHandler getEventHandler() {
 		return eventHandler;
 	}
 
+	/**
+	 * @return Registry running the housekeeping of the pool or {@code null} for {@link PoolRegistry#getDefault()}.
+	 */
+	public PoolRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * Immutable snapshot of the sizing part of the configuration which can change at runtime.
+	 * 
+	 * @author jurajkubinyi
+	 */
+	public static final class Limits {
+		private final int initialPoolSize;
+		private final int maxWaitInSec;
+		private final int maxPoolSize;
+		private final int maxPoolIdleSize;
+		private final int minPoolIdleSize;
+		private final int maxObjectIdleTime;
+		private final boolean prefersLiFo;
+
+		private Limits(int initialPoolSize, int maxWaitInSec, int maxPoolSize, int maxPoolIdleSize,
+				int minPoolIdleSize, int maxObjectIdleTime, boolean prefersLiFo) {
+			this.initialPoolSize = initialPoolSize;
+			this.maxWaitInSec = maxWaitInSec;
+			this.maxPoolSize = maxPoolSize;
+			this.maxPoolIdleSize = maxPoolIdleSize;
+			this.minPoolIdleSize = minPoolIdleSize;
+			this.maxObjectIdleTime = maxObjectIdleTime;
+			this.prefersLiFo = prefersLiFo;
+		}
+
+		public int getInitialPoolSize() {
+			return initialPoolSize;
+		}
+
+		public int getMaxWaitInSec() {
+			return maxWaitInSec;
+		}
+
+		public int getMaxPoolSize() {
+			return maxPoolSize;
+		}
+
+		public int getMaxPoolIdleSize() {
+			return maxPoolIdleSize;
+		}
+
+		public int getMinPoolIdleSize() {
+			return minPoolIdleSize;
+		}
+
+		public int getMaxObjectIdleTime() {
+			return maxObjectIdleTime;
+		}
+
+		public boolean prefersLiFo() {
+			return prefersLiFo;
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder builder = new StringBuilder();
+			builder.append("Limits [min idle: ");
+			builder.append(this.minPoolIdleSize);
+			builder.append("; max idle: ");
+			builder.append(this.maxPoolIdleSize);
+			builder.append("; max: ");
+			builder.append(this.maxPoolSize);
+			builder.append("]");
+			return builder.toString();
+		}
+	}
+
 	public static class Builder {
 
 		private int initialPoolSize = 1;
@@ -119,7 +348,20 @@ public class PoolConfiguration {
 		private int maxObjectIdleTime = 100;
 		private boolean prefersLiFo = false;
 		private boolean autostart = true;
+		private boolean threadAffine = false;
+		private String poolName;
+		private Path warmupProfileDirectory;
+		private int warmupWindowInSec = 300;
+		private String jmxName;
+		private int maxWaiters = -1;
+		private boolean prioritizedBorrowing = false;
+		private long priorityAgingInMillis = 1000;
+		private int highPriorityReservePercent = 0;
+		private int keepaliveIntervalInSec = 0;
+		private int keepaliveBatchSize = 3;
+		private long validationTrustInMillis = 0;
 		private PoolEventHandler eventHandler = new DefaultEventHandler();
+		private PoolRegistry registry;
 		
 		public Builder setInitialPoolSize(int initialPoolSize) {
 			this.initialPoolSize = initialPoolSize;
@@ -153,13 +395,96 @@ public class PoolConfiguration {
 			this.autostart = autostart;
 			return this;
 		}
+		public Builder setThreadAffine(boolean threadAffine) {
+			this.threadAffine = threadAffine;
+			return this;
+		}
+		public Builder setPoolName(String poolName) {
+			this.poolName = poolName;
+			return this;
+		}
+		/**
+		 * Enables recording of the peak demand which is stored on closing the pool and used to
+		 * pre-size the pool on the next start. Requires the pool name to be set.
+		 * 
+		 * @param warmupProfileDirectory Directory where the profile is stored.
+		 * @return Builder instance.
+		 */
+		public Builder setWarmupProfileDirectory(Path warmupProfileDirectory) {
+			this.warmupProfileDirectory = warmupProfileDirectory;
+			return this;
+		}
+		public Builder setWarmupWindowInSec(int warmupWindowInSec) {
+			this.warmupWindowInSec = warmupWindowInSec;
+			return this;
+		}
+		/**
+		 * Registers {@link com.jkubinyi.simplepool.jmx.PoolMXBean} of the pool in the platform
+		 * MBean server on start, e.g. {@code com.jkubinyi.simplepool:type=GenericPool,name=orders}.
+		 * 
+		 * @param jmxName Object name of the MBean.
+		 * @return Builder instance.
+		 */
+		public Builder setJmxName(String jmxName) {
+			this.jmxName = jmxName;
+			return this;
+		}
+		public Builder setMaxWaiters(int maxWaiters) {
+			this.maxWaiters = maxWaiters;
+			return this;
+		}
+		public Builder setPrioritizedBorrowing(boolean prioritizedBorrowing) {
+			this.prioritizedBorrowing = prioritizedBorrowing;
+			return this;
+		}
+		public Builder setPriorityAgingInMillis(long priorityAgingInMillis) {
+			this.priorityAgingInMillis = priorityAgingInMillis;
+			return this;
+		}
+		/**
+		 * Keeps part of the capacity for {@link BorrowPriority#HIGH} borrowers. Applies only when
+		 * prioritized borrowing is enabled.
+		 * 
+		 * @param highPriorityReservePercent Percentage of the maximum pool size, rounded up.
+		 * @return Builder instance.
+		 */
+		public Builder setHighPriorityReservePercent(int highPriorityReservePercent) {
+			this.highPriorityReservePercent = highPriorityReservePercent;
+			return this;
+		}
+		public Builder setKeepaliveIntervalInSec(int keepaliveIntervalInSec) {
+			this.keepaliveIntervalInSec = keepaliveIntervalInSec;
+			return this;
+		}
+		public Builder setKeepaliveBatchSize(int keepaliveBatchSize) {
+			this.keepaliveBatchSize = keepaliveBatchSize;
+			return this;
+		}
+		public Builder setValidationTrustInMillis(long validationTrustInMillis) {
+			this.validationTrustInMillis = validationTrustInMillis;
+			return this;
+		}
 		public Builder setEventHandler(PoolEventHandler handler) {
 			this.eventHandler = handler;
 			return this;
 		}
+		/**
+		 * Registers the pool in the registry instead of {@link PoolRegistry#getDefault()}.
+		 * 
+		 * @param registry Registry running the housekeeping of the pool.
+		 * @return Builder instance.
+		 */
+		public Builder setRegistry(PoolRegistry registry) {
+			this.registry = registry;
+			return this;
+		}
 		public PoolConfiguration build() {
 			return new PoolConfiguration(initialPoolSize, maxWaitInSec, maxPoolSize, maxPoolIdleSize,
-					minPoolIdleSize, maxObjectIdleTime, prefersLiFo, autostart, eventHandler);
+					minPoolIdleSize, maxObjectIdleTime, prefersLiFo, autostart, threadAffine,
+					poolName, warmupProfileDirectory, warmupWindowInSec, jmxName, maxWaiters,
+					prioritizedBorrowing, priorityAgingInMillis, highPriorityReservePercent,
+					keepaliveIntervalInSec, keepaliveBatchSize, validationTrustInMillis, eventHandler,
+					registry);
 		}
 	}
 }
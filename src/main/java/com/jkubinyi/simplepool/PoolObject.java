@@ -1,7 +1,9 @@
 package com.jkubinyi.simplepool;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 public final class PoolObject<T> {
-	
+
 	enum ObjectState {
 		IDLE,
 		ALLOCATED,
@@ -9,10 +11,26 @@ public final class PoolObject<T> {
 		INVALID
 	}
 
+	private static final ObjectState[] STATES = ObjectState.values();
+	private static final int IDLE = ObjectState.IDLE.ordinal();
+	private static final int ALLOCATED = ObjectState.ALLOCATED.ordinal();
+	private static final int RETURNED = ObjectState.RETURNED.ordinal();
+	private static final int INVALID = ObjectState.INVALID.ordinal();
+
+	@SuppressWarnings("rawtypes")
+	private static final AtomicIntegerFieldUpdater<PoolObject> STATE_UPDATER =
+			AtomicIntegerFieldUpdater.newUpdater(PoolObject.class, "state");
+
     private final T object;
-    private ObjectState state = ObjectState.IDLE;
+    /** Ordinal of the current {@link ObjectState}. Transitions are done using CAS. **/
+    private volatile int state = IDLE;
     private final long creationTime = System.currentTimeMillis();
-    
+    private volatile long lastBorrowTime = 0;
+    private volatile long lastReturnTime = 0;
+    private volatile long lastValidationTime = 0;
+    /** Written only by the thread which won the allocation CAS. **/
+    private volatile long borrowCount = 0;
+
     /**
      * Creates a wrapper instance of the object for the pool.
      * @param object Object which will be stored in pool.
@@ -20,37 +38,73 @@ public final class PoolObject<T> {
     public PoolObject(final T object) {
         this.object = object;
     }
-    
+
     /**
      * @return Returns underlying wrapped object.
      */
     public T getObject() {
         return this.object;
     }
-    
+
     /**
      * @return Returns creation timestamp in miliseconds.
      */
     public long getCreationTime() {
         return this.creationTime;
     }
-    
+
+    /**
+     * @return Returns timestamp of the last borrow in miliseconds or 0 if never borrowed.
+     */
+    public long getLastBorrowTime() {
+        return this.lastBorrowTime;
+    }
+
+    /**
+     * @return Returns timestamp of the last return in miliseconds or 0 if never returned.
+     */
+    public long getLastReturnTime() {
+        return this.lastReturnTime;
+    }
+
+    /**
+     * @return Returns timestamp of the last successful validation in miliseconds or 0 if never validated.
+     */
+    public long getLastValidationTime() {
+        return this.lastValidationTime;
+    }
+
+    /**
+     * Records successful validation so the object can be trusted for a while without validating again.
+     */
+    void markValidated() {
+        this.lastValidationTime = System.currentTimeMillis();
+    }
+
+    /**
+     * @return Returns how many times the object has been borrowed.
+     */
+    public long getBorrowCount() {
+        return this.borrowCount;
+    }
+
     /**
      * @return Gets current state of the object in pool. Under normal condition
      * you should never need to check the state manually.
      */
-    public synchronized ObjectState getState() {
-        return this.state;
+    public ObjectState getState() {
+        return STATES[this.state];
     }
-    
+
     /**
      * Marks the object as currently under use by the {@link GenericPool}.
-     * 
+     *
      * @return {@code true} if the previous state was {@link ObjectState#IDLE}
      */
-    protected synchronized boolean allocate() {
-        if (this.state == ObjectState.IDLE) {
-            this.state = ObjectState.ALLOCATED;
+    protected boolean allocate() {
+        if (STATE_UPDATER.compareAndSet(this, IDLE, ALLOCATED)) {
+            this.lastBorrowTime = System.currentTimeMillis();
+            this.borrowCount++;
             return true;
         }
         return false;
@@ -62,9 +116,10 @@ public final class PoolObject<T> {
      *
      * @return {@code true} if the previous state was {@link ObjectState#ALLOCATED} or {@link ObjectState#RETURNED}
      */
-    protected synchronized boolean deallocate() {
-        if (this.state == ObjectState.RETURNED || this.state == ObjectState.ALLOCATED) {
-            this.state = ObjectState.IDLE;
+    protected boolean deallocate() {
+        final int current = this.state;
+        if ((current == RETURNED || current == ALLOCATED) && STATE_UPDATER.compareAndSet(this, current, IDLE)) {
+            this.lastReturnTime = System.currentTimeMillis();
             return true;
         }
         return false;
@@ -73,33 +128,29 @@ public final class PoolObject<T> {
     /**
      * Marks the object as invalid making it not reusable.
      */
-    protected synchronized void invalidate() {
-        this.state = ObjectState.INVALID;
+    protected void invalidate() {
+        this.state = INVALID;
     }
 
     /**
      * Marks the object as returned to the pool but not directly available to be reused.
      */
-    protected synchronized boolean returned() {
-        if(this.state == ObjectState.ALLOCATED) {
-        	this.state = ObjectState.RETURNED;
-        	return true;
-        }
-        return false;
+    protected boolean returned() {
+        return STATE_UPDATER.compareAndSet(this, ALLOCATED, RETURNED);
     }
-    
+
     @Override
     public String toString() {
         final StringBuilder result = new StringBuilder();
         result.append("[wrapped: ");
         result.append(object.toString());
         result.append("; state: ");
-        synchronized (this) {
-            result.append(state.toString());
-        }
+        result.append(this.getState().toString());
         result.append("; created: ");
         result.append(this.creationTime);
-        result.append("]");
+        result.append("; borrowed: ");
+        result.append(this.borrowCount);
+        result.append("x]");
         return result.toString();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,17 @@
+package com.jkubinyi.simplepool;
+
+/**
+ * <p>Thrown when the borrow is rejected without waiting because the pool is overloaded: either
+ * too many threads are already waiting or the projected wait exceeds the caller's deadline.</p>
+ * Failing fast keeps request threads from piling up on a slow backend.
+ * 
+ * @author jurajkubinyi
+ */
+public class PoolOverloadException extends PoolTimeoutException {
+
+	private static final long serialVersionUID = 1L;
+
+	public PoolOverloadException(String message) {
+		super(message);
+	}
+}
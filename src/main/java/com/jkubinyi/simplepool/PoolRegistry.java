@@ -0,0 +1,352 @@
+package com.jkubinyi.simplepool;
+
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * <p>Shared home of many {@link GenericPoolImpl} instances in a single JVM. Pools register on
+ * {@link GenericPoolImpl#create()} and unregister on {@link GenericPoolImpl#close()}.</p>
+ * <p>Housekeeping of all registered pools (e.g. the keepalive of idle objects) runs on one small
+ * scheduled executor instead of a timer thread per pool. The first run of each task is offset by a
+ * fraction of its interval following the golden ratio sequence, so tasks with the same interval
+ * are spread evenly instead of firing in synchronized bursts.</p>
+ * <p>Objects destroyed by {@link GenericPoolImpl#clear()} and {@link GenericPoolImpl#close()} are
+ * destroyed in parallel by a bounded destroyer. Once its queue is full, the caller destroys the
+ * object itself, which slows down the producer instead of dropping the destruction.</p>
+ * <p>Pools are referenced weakly, so a pool dropped without being closed can still be garbage
+ * collected together with its housekeeping. Pools without a configured registry use {@link #getDefault()}.</p>
+ *
+ * @author jurajkubinyi
+ */
+public final class PoolRegistry implements AutoCloseable {
+
+	/** Fractional part of the golden ratio, consecutive multiples are evenly spread in [0, 1). **/
+	private static final double GOLDEN_RATIO_FRACTION = 0.6180339887498949;
+
+	private static volatile PoolRegistry defaultRegistry;
+
+	private final ScheduledThreadPoolExecutor executor;
+	private final ThreadPoolExecutor destroyer;
+	/** Registered pools by their unique name. **/
+	private final Map<String, WeakReference<GenericPoolImpl<?>>> pools = new ConcurrentHashMap<>();
+	private final AtomicInteger anonymousPools = new AtomicInteger(0);
+	private final AtomicLong scheduledTasks = new AtomicLong(0);
+	private volatile boolean closed = false;
+
+	/**
+	 * Creates registry with 4 destroyer threads and a queue of 1024 objects.
+	 * 
+	 * @param housekeepingThreads Number of threads running the housekeeping of all pools.
+	 */
+	public PoolRegistry(int housekeepingThreads) {
+		this(housekeepingThreads, 4, 1024);
+	}
+
+	/**
+	 * @param housekeepingThreads Number of threads running the housekeeping of all pools.
+	 * @param destroyerThreads Maximum number of objects destroyed in parallel.
+	 * @param destroyerQueueSize Maximum number of objects waiting for a destroyer thread.
+	 */
+	public PoolRegistry(int housekeepingThreads, int destroyerThreads, int destroyerQueueSize) {
+		if(housekeepingThreads <= 0 || destroyerThreads <= 0 || destroyerQueueSize <= 0)
+			throw new IllegalArgumentException("Registry needs at least one housekeeping and destroyer thread and queue slot.");
+		this.executor = new ScheduledThreadPoolExecutor(housekeepingThreads, daemonThreads("simplepool-housekeeping-"));
+		this.executor.setRemoveOnCancelPolicy(true); // Closed pools must not leave their tasks in the queue
+		this.destroyer = new ThreadPoolExecutor(destroyerThreads, destroyerThreads, 30, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(destroyerQueueSize), daemonThreads("simplepool-destroyer-"),
+				(task, executor) -> task.run()); // Even after shutdown, so no destruction is lost
+		this.destroyer.allowCoreThreadTimeOut(true);
+	}
+
+	private static ThreadFactory daemonThreads(String prefix) {
+		final AtomicInteger threadNumber = new AtomicInteger(0);
+		return runnable -> {
+			final Thread thread = new Thread(runnable, prefix + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	/**
+	 * @return Registry shared by the pools which do not configure their own, created on the first use
+	 * with 2 housekeeping threads. Once it is closed, the next call creates a new one.
+	 */
+	public static PoolRegistry getDefault() {
+		PoolRegistry registry = defaultRegistry;
+		if(registry == null) {
+			synchronized(PoolRegistry.class) {
+				registry = defaultRegistry;
+				if(registry == null) {
+					registry = new PoolRegistry(2);
+					defaultRegistry = registry;
+				}
+			}
+		}
+		return registry;
+	}
+
+	/**
+	 * Installs the default registry without closing the previous one, so tests can exercise a default
+	 * registry of their own and put the shared one back afterwards.
+	 *
+	 * @param registry New default registry, {@code null} to create one on the next use.
+	 * @return Previous default registry, possibly {@code null}.
+	 */
+	static PoolRegistry setDefault(PoolRegistry registry) {
+		synchronized(PoolRegistry.class) {
+			final PoolRegistry previous = defaultRegistry;
+			defaultRegistry = registry;
+			return previous;
+		}
+	}
+
+	/**
+	 * Registers the pool under its name, suffixed by {@code -2}, {@code -3}, ... if the name is taken.
+	 *
+	 * @return Unique name of the pool within the registry.
+	 */
+	String register(GenericPoolImpl<?> pool) {
+		if(this.closed)
+			throw new IllegalStateException("Registry is closed.");
+		this.pools.values().removeIf(reference -> reference.get() == null);
+		final String poolName = pool.getConfiguration().getPoolName();
+		final WeakReference<GenericPoolImpl<?>> reference = new WeakReference<>(pool);
+		if(poolName == null) {
+			String name;
+			do {
+				name = "anonymous-" + this.anonymousPools.incrementAndGet();
+			} while(this.pools.putIfAbsent(name, reference) != null);
+			return name;
+		}
+		String name = poolName;
+		for(int suffix = 2; this.pools.putIfAbsent(name, reference) != null; suffix++) {
+			name = poolName + "-" + suffix;
+		}
+		return name;
+	}
+
+	void unregister(String name) {
+		this.pools.remove(name);
+	}
+
+	/**
+	 * Schedules a periodic housekeeping task of the owner. The owner is referenced weakly, the task is
+	 * cancelled once the owner is garbage collected. An exception thrown by the task cancels its further
+	 * runs, so tasks should handle their own failures.
+	 *
+	 * @param owner Object the task runs on, e.g. a pool.
+	 * @param task Task to be run. Must not capture the owner, otherwise it is never collected.
+	 * @param interval Delay between the end of a run and the start of the next one.
+	 * @param unit Unit of the interval.
+	 * @return Future used to cancel the task.
+	 */
+	public <O> ScheduledFuture<?> scheduleHousekeeping(O owner, Consumer<? super O> task, long interval, TimeUnit unit) {
+		if(this.closed)
+			throw new IllegalStateException("Registry is closed.");
+		final WeakReference<O> reference = new WeakReference<>(owner);
+		final AtomicReference<ScheduledFuture<?>> future = new AtomicReference<>();
+		final long intervalNanos = unit.toNanos(interval);
+		final double fraction = (this.scheduledTasks.getAndIncrement() * GOLDEN_RATIO_FRACTION) % 1;
+		final long initialDelay = intervalNanos + (long) (fraction * intervalNanos);
+		future.set(this.executor.scheduleWithFixedDelay(() -> {
+			final O current = reference.get();
+			if(current != null) task.accept(current);
+			else future.get().cancel(false);
+		}, initialDelay, intervalNanos, TimeUnit.NANOSECONDS));
+		return future.get();
+	}
+
+	/**
+	 * Runs a one-off housekeeping task, on the caller thread if the registry is already closed.
+	 *
+	 * @param task Task to be run.
+	 */
+	void execute(Runnable task) {
+		try {
+			this.executor.execute(task);
+		} catch(RejectedExecutionException e) {
+			task.run();
+		}
+	}
+
+	/**
+	 * Runs the destruction on a destroyer thread or on the caller thread if the destroyer is saturated.
+	 *
+	 * @param destruction Destruction of a single object.
+	 */
+	void destroy(Runnable destruction) {
+		this.destroyer.execute(destruction);
+	}
+
+	/**
+	 * @return Currently registered pools.
+	 */
+	public List<GenericPoolImpl<?>> getPools() {
+		final List<GenericPoolImpl<?>> pools = new ArrayList<>();
+		for(WeakReference<GenericPoolImpl<?>> reference : this.pools.values()) {
+			final GenericPoolImpl<?> pool = reference.get();
+			if(pool != null) pools.add(pool);
+		}
+		return pools;
+	}
+
+	/**
+	 * @return Number of housekeeping tasks waiting for their next run.
+	 */
+	public int getNumScheduledTasks() {
+		return this.executor.getQueue().size();
+	}
+
+	/**
+	 * Gathers statistics of all registered pools. Each pool is read separately, so the totals are
+	 * not an atomic view of all pools.
+	 *
+	 * @return Point-in-time statistics of the registered pools.
+	 */
+	public Snapshot getStatistics() {
+		final Map<String, PoolStatistics> statistics = new LinkedHashMap<>();
+		for(Map.Entry<String, WeakReference<GenericPoolImpl<?>>> entry : this.pools.entrySet()) {
+			final GenericPoolImpl<?> pool = entry.getValue().get();
+			if(pool != null) statistics.put(entry.getKey(), pool.getStatistics());
+		}
+		return new Snapshot(System.currentTimeMillis(), statistics);
+	}
+
+	/**
+	 * Closes all registered pools, destroying their idle objects.
+	 */
+	public void closeAll() {
+		for(GenericPoolImpl<?> pool : this.getPools()) {
+			pool.close(); // Unregisters the pool
+		}
+	}
+
+	/**
+	 * Closes all registered pools and stops the housekeeping threads. No pool can be registered afterwards,
+	 * closing the {@link #getDefault() default registry} makes the next pools use a new default one.
+	 * Objects already handed to the destroyer are still destroyed in the background.
+	 */
+	@Override
+	public void close() {
+		synchronized(PoolRegistry.class) {
+			if(defaultRegistry == this) defaultRegistry = null;
+		}
+		this.closed = true;
+		this.closeAll();
+		this.executor.shutdownNow();
+		this.destroyer.shutdown();
+	}
+
+	/**
+	 * Closes the registry and waits till the objects of the closed pools are destroyed.
+	 *
+	 * @param timeout Maximum time to wait for the destruction.
+	 * @return {@code true} if all objects were destroyed in time.
+	 * @throws InterruptedException When interrupted while waiting.
+	 */
+	public boolean close(Duration timeout) throws InterruptedException {
+		this.close();
+		return this.destroyer.awaitTermination(timeout.toNanos(), TimeUnit.NANOSECONDS);
+	}
+
+	public boolean isClosed() {
+		return this.closed;
+	}
+
+	/**
+	 * Statistics of all registered pools keyed by the unique name of the pool. Anonymous pools are
+	 * named by the order of their registration, pools sharing a name get a numeric suffix.
+	 *
+	 * @author jurajkubinyi
+	 */
+	public static final class Snapshot {
+		private final long timestamp;
+		private final Map<String, PoolStatistics> pools;
+
+		private Snapshot(long timestamp, Map<String, PoolStatistics> pools) {
+			this.timestamp = timestamp;
+			this.pools = Collections.unmodifiableMap(pools);
+		}
+
+		/**
+		 * @return Timestamp in miliseconds when the statistics were taken.
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public Map<String, PoolStatistics> getPools() {
+			return pools;
+		}
+
+		public int getNumPools() {
+			return this.pools.size();
+		}
+
+		public int getNumActive() {
+			int sum = 0;
+			for(PoolStatistics statistics : this.pools.values()) sum += statistics.getNumActive();
+			return sum;
+		}
+
+		public int getNumIdle() {
+			int sum = 0;
+			for(PoolStatistics statistics : this.pools.values()) sum += statistics.getNumIdle();
+			return sum;
+		}
+
+		public int getNumWaiters() {
+			int sum = 0;
+			for(PoolStatistics statistics : this.pools.values()) sum += statistics.getNumWaiters();
+			return sum;
+		}
+
+		public long getNumTimeouts() {
+			long sum = 0;
+			for(PoolStatistics statistics : this.pools.values()) sum += statistics.getNumTimeouts();
+			return sum;
+		}
+
+		public int getNumPendingDestruction() {
+			int sum = 0;
+			for(PoolStatistics statistics : this.pools.values()) sum += statistics.getNumPendingDestruction();
+			return sum;
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder builder = new StringBuilder();
+			builder.append("[pools: ");
+			builder.append(this.getNumPools());
+			builder.append("; active: ");
+			builder.append(this.getNumActive());
+			builder.append("; idle: ");
+			builder.append(this.getNumIdle());
+			builder.append("; waiters: ");
+			builder.append(this.getNumWaiters());
+			builder.append("; timeouts: ");
+			builder.append(this.getNumTimeouts());
+			builder.append("; pending destruction: ");
+			builder.append(this.getNumPendingDestruction());
+			builder.append("]");
+			return builder.toString();
+		}
+	}
+}
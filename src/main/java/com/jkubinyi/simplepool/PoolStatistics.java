@@ -0,0 +1,159 @@
+package com.jkubinyi.simplepool;
+
+/**
+ * Point-in-time statistics of the {@link GenericPoolImpl}. Latencies are measured from requesting
+ * an object until it is handed out, so they include waiting for an idle object.
+ * 
+ * @author jurajkubinyi
+ */
+public final class PoolStatistics {
+
+	private final long timestamp;
+	private final int numActive;
+	private final int numIdle;
+	private final long numCreated;
+	private final long numDestroyed;
+	private final int numWaiters;
+	private final long numTimeouts;
+	private final long numShed;
+	private final long numWaited;
+	private final long averageHoldTime;
+	private final long borrowLatencyP50;
+	private final long borrowLatencyP95;
+	private final long borrowLatencyP99;
+	private final long borrowLatencyMax;
+	private final int numPendingDestruction;
+
+	PoolStatistics(long timestamp, int numActive, int numIdle, long numCreated, long numDestroyed, int numWaiters,
+			long numTimeouts, long numShed, long numWaited, long averageHoldTime, long borrowLatencyP50, long borrowLatencyP95, long borrowLatencyP99, long borrowLatencyMax,
+			int numPendingDestruction) {
+		this.timestamp = timestamp;
+		this.numActive = numActive;
+		this.numIdle = numIdle;
+		this.numCreated = numCreated;
+		this.numDestroyed = numDestroyed;
+		this.numWaiters = numWaiters;
+		this.numTimeouts = numTimeouts;
+		this.numShed = numShed;
+		this.numWaited = numWaited;
+		this.averageHoldTime = averageHoldTime;
+		this.borrowLatencyP50 = borrowLatencyP50;
+		this.borrowLatencyP95 = borrowLatencyP95;
+		this.borrowLatencyP99 = borrowLatencyP99;
+		this.borrowLatencyMax = borrowLatencyMax;
+		this.numPendingDestruction = numPendingDestruction;
+	}
+
+	/**
+	 * @return Timestamp in miliseconds when the statistics were taken.
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public int getNumActive() {
+		return numActive;
+	}
+
+	public int getNumIdle() {
+		return numIdle;
+	}
+
+	public long getNumCreated() {
+		return numCreated;
+	}
+
+	public long getNumDestroyed() {
+		return numDestroyed;
+	}
+
+	/**
+	 * @return Number of threads waiting for an idle object.
+	 */
+	public int getNumWaiters() {
+		return numWaiters;
+	}
+
+	/**
+	 * @return Number of borrows which timed out since the pool was created.
+	 */
+	public long getNumTimeouts() {
+		return numTimeouts;
+	}
+
+	/**
+	 * @return Number of borrows rejected without waiting due to overload since the pool was created.
+	 */
+	public long getNumShed() {
+		return numShed;
+	}
+
+	/**
+	 * @return Number of borrows which had to wait for an idle object since the pool was created.
+	 */
+	public long getNumWaited() {
+		return numWaited;
+	}
+
+	/**
+	 * @return Moving average of the time objects are held by borrowers in nanoseconds.
+	 */
+	public long getAverageHoldTime() {
+		return averageHoldTime;
+	}
+
+	/**
+	 * @return Median of the recent borrow latencies in nanoseconds.
+	 */
+	public long getBorrowLatencyP50() {
+		return borrowLatencyP50;
+	}
+
+	/**
+	 * @return 95th percentile of the recent borrow latencies in nanoseconds.
+	 */
+	public long getBorrowLatencyP95() {
+		return borrowLatencyP95;
+	}
+
+	/**
+	 * @return 99th percentile of the recent borrow latencies in nanoseconds.
+	 */
+	public long getBorrowLatencyP99() {
+		return borrowLatencyP99;
+	}
+
+	/**
+	 * @return Maximum of the recent borrow latencies in nanoseconds.
+	 */
+	public long getBorrowLatencyMax() {
+		return borrowLatencyMax;
+	}
+
+	/**
+	 * @return Number of objects removed from the pool by {@link GenericPoolImpl#clear()} or
+	 * {@link GenericPoolImpl#close()} which are not destroyed yet.
+	 */
+	public int getNumPendingDestruction() {
+		return numPendingDestruction;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder();
+		builder.append("PoolStatistics [active: ");
+		builder.append(this.numActive);
+		builder.append("; idle: ");
+		builder.append(this.numIdle);
+		builder.append("; waiters: ");
+		builder.append(this.numWaiters);
+		builder.append("; timeouts: ");
+		builder.append(this.numTimeouts);
+		builder.append("; shed: ");
+		builder.append(this.numShed);
+		builder.append("; p99: ");
+		builder.append(this.borrowLatencyP99);
+		builder.append("ns]");
+		return builder.toString();
+	}
+}
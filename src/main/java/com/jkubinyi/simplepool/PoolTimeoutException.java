@@ -0,0 +1,25 @@
+package com.jkubinyi.simplepool;
+
+import java.util.NoSuchElementException;
+
+/**
+ * <p>Thrown when no object could be obtained from the pool in time.</p>
+ * <p>Timeouts are expected under overload, so the exception does not capture the stack trace
+ * which would otherwise make throwing it a hotspot. Extends {@link NoSuchElementException}
+ * to stay compatible with existing error handling.</p>
+ * 
+ * @author jurajkubinyi
+ */
+public class PoolTimeoutException extends NoSuchElementException {
+
+	private static final long serialVersionUID = 1L;
+
+	public PoolTimeoutException(String message) {
+		super(message);
+	}
+
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
+}
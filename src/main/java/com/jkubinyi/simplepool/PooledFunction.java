@@ -0,0 +1,14 @@
+package com.jkubinyi.simplepool;
+
+/**
+ * Function applied to a borrowed object by {@link GenericPool#withObject(PooledFunction)}.
+ * 
+ * @author jurajkubinyi
+ *
+ * @param <T> Type of the pooled object.
+ * @param <R> Type of the result.
+ */
+@FunctionalInterface
+public interface PooledFunction<T, R> {
+	R apply(T object) throws Exception;
+}
@@ -0,0 +1,181 @@
+package com.jkubinyi.simplepool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Peak demand of a pool recorded during its lifetime. Stored by the {@link GenericPoolImpl} on
+ * {@link GenericPool#close()} and read back on {@link GenericPool#create()} so the restarted pool can
+ * pre-size itself instead of growing under live traffic.</p>
+ * <p>The profile is stored as a small properties file named after the pool.</p>
+ *
+ * @author jurajkubinyi
+ */
+public final class WarmupProfile {
+
+	private static final String VERSION = "1";
+	private static final String KEY_VERSION = "version";
+	private static final String KEY_PEAK_ACTIVE = "peakActive";
+	private static final String KEY_PEAK_IDLE = "peakIdle";
+	private static final String KEY_RECORDED = "recorded";
+
+	private final int peakActive;
+	private final int peakIdle;
+	private final long recordedTime;
+
+	WarmupProfile(int peakActive, int peakIdle, long recordedTime) {
+		this.peakActive = peakActive;
+		this.peakIdle = peakIdle;
+		this.recordedTime = recordedTime;
+	}
+
+	/**
+	 * @return Peak number of active (borrowed) objects.
+	 */
+	public int getPeakActive() {
+		return peakActive;
+	}
+
+	/**
+	 * @return Peak number of idle objects.
+	 */
+	public int getPeakIdle() {
+		return peakIdle;
+	}
+
+	/**
+	 * @return Timestamp in miliseconds when the profile was recorded.
+	 */
+	public long getRecordedTime() {
+		return recordedTime;
+	}
+
+	/**
+	 * @param directory Directory with the profiles.
+	 * @param poolName Name of the pool.
+	 * @return Path of the profile file of the pool.
+	 */
+	public static Path profileFile(Path directory, String poolName) {
+		return directory.resolve(poolName.replaceAll("[^A-Za-z0-9._-]", "_") + ".warmup");
+	}
+
+	/**
+	 * @param file Profile file.
+	 * @return Loaded profile.
+	 * @throws IOException When the file cannot be read.
+	 * @throws IllegalArgumentException When the file is corrupt.
+	 */
+	public static WarmupProfile load(Path file) throws IOException {
+		final Properties properties = new Properties();
+		try(InputStream input = Files.newInputStream(file)) {
+			properties.load(input);
+		}
+
+		if(!VERSION.equals(properties.getProperty(KEY_VERSION)))
+			throw new IllegalArgumentException("Unsupported warm-up profile version.");
+
+		try {
+			final int peakActive = Integer.parseInt(properties.getProperty(KEY_PEAK_ACTIVE));
+			final int peakIdle = Integer.parseInt(properties.getProperty(KEY_PEAK_IDLE));
+			final long recorded = Long.parseLong(properties.getProperty(KEY_RECORDED));
+			if(peakActive < 0 || peakIdle < 0)
+				throw new IllegalArgumentException("Warm-up profile contains negative peaks.");
+			return new WarmupProfile(peakActive, peakIdle, recorded);
+		} catch(NumberFormatException e) { // Also covers missing properties
+			throw new IllegalArgumentException("Warm-up profile is corrupt.", e);
+		}
+	}
+
+	/**
+	 * Stores the profile replacing the previous one atomically where the file system allows it.
+	 *
+	 * @param file Profile file.
+	 * @throws IOException When the file cannot be written.
+	 */
+	public void store(Path file) throws IOException {
+		final Properties properties = new Properties();
+		properties.setProperty(KEY_VERSION, VERSION);
+		properties.setProperty(KEY_PEAK_ACTIVE, Integer.toString(this.peakActive));
+		properties.setProperty(KEY_PEAK_IDLE, Integer.toString(this.peakIdle));
+		properties.setProperty(KEY_RECORDED, Long.toString(this.recordedTime));
+
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		final Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try(OutputStream output = Files.newOutputStream(temporary)) {
+			properties.store(output, "SimpleObjectPool warm-up profile");
+		}
+		try {
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch(AtomicMoveNotSupportedException e) {
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder();
+		builder.append("WarmupProfile [peak active: ");
+		builder.append(this.peakActive);
+		builder.append("; peak idle: ");
+		builder.append(this.peakIdle);
+		builder.append("; recorded: ");
+		builder.append(this.recordedTime);
+		builder.append("]");
+		return builder.toString();
+	}
+
+	/**
+	 * Records peaks over tumbling windows. The resulting profile holds the higher peaks of the
+	 * current and the last complete window, so a short quiet period before closing the pool
+	 * does not erase the demand seen shortly before.
+	 *
+	 * @author jurajkubinyi
+	 */
+	static final class Recorder {
+		private final long windowNanos;
+		private volatile long windowStart = System.nanoTime();
+		private final AtomicInteger peakActive = new AtomicInteger(0);
+		private final AtomicInteger peakIdle = new AtomicInteger(0);
+		private volatile int previousPeakActive = 0;
+		private volatile int previousPeakIdle = 0;
+
+		Recorder(long windowNanos) {
+			this.windowNanos = windowNanos;
+		}
+
+		void record(int active, int idle) {
+			final long now = System.nanoTime();
+			final long start = this.windowStart;
+			if(now - start > this.windowNanos) {
+				synchronized(this) {
+					if(this.windowStart == start) {
+						this.previousPeakActive = this.peakActive.getAndSet(0);
+						this.previousPeakIdle = this.peakIdle.getAndSet(0);
+						this.windowStart = now;
+					}
+				}
+			}
+			updateMax(this.peakActive, active);
+			updateMax(this.peakIdle, idle);
+		}
+
+		WarmupProfile toProfile() {
+			return new WarmupProfile(Math.max(this.peakActive.get(), this.previousPeakActive),
+					Math.max(this.peakIdle.get(), this.previousPeakIdle), System.currentTimeMillis());
+		}
+
+		private static void updateMax(AtomicInteger peak, int value) {
+			int current;
+			while(value > (current = peak.get()) && !peak.compareAndSet(current, value)) {
+				// Retry until the peak is at least the value
+			}
+		}
+	}
+}
@@ -0,0 +1,269 @@
+package com.jkubinyi.simplepool.array;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Pool of primitive arrays of varying lengths. Lengths are rounded up to the power of two and each
+ * power of two has its own bucket, so acquired arrays can be longer than requested.</p>
+ * <p>Every thread caches a small magazine of arrays for each bucket which serves the fast path
+ * without any lock. Empty magazines are refilled from and full magazines are spilled to the shared
+ * depot of the bucket. Magazines of all threads and the depot together retain at most
+ * {@link ArrayPoolConfiguration#getMaxRetainedBytesPerBucket()} bytes per bucket, tracked by a single
+ * counter of the bucket. Surplus arrays are left for the garbage collector. Arrays cached by threads
+ * which died are moved to the depot once the bucket runs out of room or arrays, at most once per second.</p>
+ * <p>Arrays are stored as they are, without any wrapper, so neither bucket selection nor the
+ * fast path allocates or boxes anything.</p>
+ * 
+ * @author jurajkubinyi
+ *
+ * @param <A> Type of the primitive array.
+ */
+public abstract class ArrayPool<A> {
+
+	private final int minShift;
+	private final int maxLength;
+	private final int magazineSize;
+	private final Depot[] depots;
+	/** Number of arrays retained by the magazines and the depot of each bucket. **/
+	private final AtomicInteger[] retained;
+	/** Maximum of {@link #retained} of each bucket. **/
+	private final int[] maxRetained;
+	private final ThreadLocal<Magazine[]> magazines;
+	/** Magazines of all threads, used to reclaim arrays cached by dead threads. **/
+	private final Queue<ThreadMagazines> allMagazines = new ConcurrentLinkedQueue<>();
+	/** {@link System#nanoTime()} before which dead threads are not looked for again. **/
+	private final AtomicLong nextReclaim = new AtomicLong(System.nanoTime());
+
+	protected ArrayPool(ArrayPoolConfiguration config, int elementSize) {
+		this.minShift = Integer.numberOfTrailingZeros(config.getMinArrayLength());
+		this.maxLength = config.getMaxArrayLength();
+		this.magazineSize = config.getMagazineSize();
+
+		final int numOfBuckets = Integer.numberOfTrailingZeros(this.maxLength) - this.minShift + 1;
+		this.depots = new Depot[numOfBuckets];
+		this.retained = new AtomicInteger[numOfBuckets];
+		this.maxRetained = new int[numOfBuckets];
+		for(int i = 0; i < numOfBuckets; i++) {
+			final long bucketBytes = ((long) config.getMinArrayLength() << i) * elementSize;
+			this.maxRetained[i] = (int) Math.min(config.getMaxRetainedBytesPerBucket() / bucketBytes, Integer.MAX_VALUE - 8);
+			this.retained[i] = new AtomicInteger(0);
+			this.depots[i] = new Depot();
+		}
+		this.magazines = ThreadLocal.withInitial(this::newMagazines);
+	}
+
+	/**
+	 * @param length Length of the array.
+	 * @return New array of the length.
+	 */
+	protected abstract A newArray(int length);
+
+	/**
+	 * @param array Array to measure.
+	 * @return Length of the array.
+	 */
+	protected abstract int length(A array);
+
+	/**
+	 * Acquires an array of at least the requested length. Arrays longer than the biggest bucket
+	 * are allocated with the exact length and are not pooled.
+	 * 
+	 * @param minLength Minimum length of the array.
+	 * @return Array which is <b>not</b> cleared and may contain data of the previous holder.
+	 */
+	public A acquire(int minLength) {
+		final int bucket = this.bucketFor(minLength);
+		if(bucket < 0) return this.newArray(minLength);
+
+		final Magazine magazine = this.magazines.get()[bucket];
+		Object array = magazine.pop();
+		if(array == null) array = this.depots[bucket].refill(magazine);
+		if(array == null && this.retained[bucket].get() > 0 && this.reclaimDeadMagazines())
+			array = this.depots[bucket].refill(magazine);
+		if(array == null) return this.newArray(1 << (bucket + this.minShift));
+		this.retained[bucket].decrementAndGet();
+		return this.cast(array);
+	}
+
+	/**
+	 * Releases the array back to the pool. Arrays which could not come from the pool (lengths which
+	 * are not a power of two or out of the bucket range) are ignored.
+	 * 
+	 * @param array Array which must not be used after releasing it.
+	 */
+	public void release(A array) {
+		final int length = this.length(array);
+		if((length & (length - 1)) != 0 || length > this.maxLength) return;
+
+		final int bucket = Integer.numberOfTrailingZeros(length) - this.minShift;
+		if(bucket < 0) return;
+		if(!this.reserve(bucket) && !(this.reclaimDeadMagazines() && this.reserve(bucket))) return;
+
+		final Magazine magazine = this.magazines.get()[bucket];
+		if(magazine.push(array)) return;
+
+		final Depot depot = this.depots[bucket];
+		depot.spill(magazine);
+		if(!magazine.push(array)) depot.push(array);
+	}
+
+	/**
+	 * @return {@code false} if the bucket already retains the maximum number of arrays.
+	 */
+	private boolean reserve(int bucket) {
+		final AtomicInteger counter = this.retained[bucket];
+		int current;
+		do {
+			current = counter.get();
+			if(current >= this.maxRetained[bucket]) return false;
+		} while(!counter.compareAndSet(current, current + 1));
+		return true;
+	}
+
+	/**
+	 * Moves arrays cached by the magazines of dead threads to the depots.
+	 * 
+	 * @return {@code false} if dead threads were looked for less than a second ago.
+	 */
+	private boolean reclaimDeadMagazines() {
+		final long now = System.nanoTime();
+		final long next = this.nextReclaim.get();
+		if(now - next < 0 || !this.nextReclaim.compareAndSet(next, now + TimeUnit.SECONDS.toNanos(1))) return false;
+
+		for(ThreadMagazines owned : this.allMagazines) {
+			final Thread owner = owned.owner.get();
+			if(owner != null && owner.isAlive()) continue; // Termination makes the magazines visible
+
+			if(!this.allMagazines.remove(owned)) continue; // Magazines are not thread-safe, only the remover drains them
+			for(int i = 0; i < owned.magazines.length; i++) {
+				final Magazine magazine = owned.magazines[i];
+				Object array;
+				while((array = magazine.pop()) != null) this.depots[i].push(array);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param bucket Index of the bucket.
+	 * @return Number of arrays retained by the magazines of all threads and the depot of the bucket.
+	 */
+	int getNumRetained(int bucket) {
+		return this.retained[bucket].get();
+	}
+
+	/**
+	 * @param minLength Requested length.
+	 * @return Index of the bucket or {@code -1} if the length exceeds the biggest bucket.
+	 */
+	private int bucketFor(int minLength) {
+		if(minLength > this.maxLength) return -1;
+		if(minLength <= 1) return 0;
+		return Math.max(0, 32 - Integer.numberOfLeadingZeros(minLength - 1) - this.minShift);
+	}
+
+	@SuppressWarnings("unchecked")
+	private A cast(Object array) {
+		return (A) array;
+	}
+
+	private Magazine[] newMagazines() {
+		final Magazine[] newMagazines = new Magazine[this.depots.length];
+		for(int i = 0; i < newMagazines.length; i++) {
+			newMagazines[i] = new Magazine(this.magazineSize);
+		}
+		this.allMagazines.add(new ThreadMagazines(Thread.currentThread(), newMagazines));
+		return newMagazines;
+	}
+
+	static int roundUpToPowerOfTwo(int length) {
+		return length <= 1 ? 1 : Integer.highestOneBit(length - 1) << 1;
+	}
+
+	/**
+	 * Magazines of a single thread. The owner is referenced weakly so dead threads can be collected.
+	 */
+	private static final class ThreadMagazines {
+		private final WeakReference<Thread> owner;
+		private final Magazine[] magazines;
+
+		private ThreadMagazines(Thread owner, Magazine[] magazines) {
+			this.owner = new WeakReference<>(owner);
+			this.magazines = magazines;
+		}
+	}
+
+	/**
+	 * Per-thread stack of arrays of a single bucket. Accessed only by the owning thread
+	 * until it dies.
+	 */
+	private static final class Magazine {
+		private final Object[] arrays;
+		private int count = 0;
+
+		private Magazine(int size) {
+			this.arrays = new Object[size];
+		}
+
+		private Object pop() {
+			if(this.count == 0) return null;
+			final Object array = this.arrays[--this.count];
+			this.arrays[this.count] = null;
+			return array;
+		}
+
+		private boolean push(Object array) {
+			if(this.count == this.arrays.length) return false;
+			this.arrays[this.count++] = array;
+			return true;
+		}
+	}
+
+	/**
+	 * Shared stack of arrays of a single bucket guarded by its monitor. Grows on demand, the number
+	 * of arrays is bounded by the retained counter of the bucket.
+	 */
+	private static final class Depot {
+		private Object[] arrays = new Object[0];
+		private int count = 0;
+
+		/**
+		 * @return One array for the caller, up to half of the magazine is refilled as well.
+		 */
+		private synchronized Object refill(Magazine magazine) {
+			if(this.count == 0) return null;
+			final Object array = this.pop();
+			for(int i = magazine.arrays.length / 2; i > 0 && this.count > 0; i--) {
+				magazine.push(this.pop());
+			}
+			return array;
+		}
+
+		/**
+		 * Moves half of the full magazine to the depot.
+		 */
+		private synchronized void spill(Magazine magazine) {
+			for(int i = (magazine.count + 1) / 2; i > 0; i--) {
+				this.push(magazine.pop());
+			}
+		}
+
+		private synchronized void push(Object array) {
+			if(this.count == this.arrays.length)
+				this.arrays = Arrays.copyOf(this.arrays, Math.max(8, this.count * 2));
+			this.arrays[this.count++] = array;
+		}
+
+		private Object pop() {
+			final Object array = this.arrays[--this.count];
+			this.arrays[this.count] = null;
+			return array;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package com.jkubinyi.simplepool.array;
+
+/**
+ * Configuration used by the {@link ArrayPool}.
+ * 
+ * @author jurajkubinyi
+ */
+public final class ArrayPoolConfiguration {
+
+	private final int minArrayLength;
+	private final int maxArrayLength;
+	private final int magazineSize;
+	private final long maxRetainedBytesPerBucket;
+
+	private ArrayPoolConfiguration(int minArrayLength, int maxArrayLength, int magazineSize, long maxRetainedBytesPerBucket) {
+		this.minArrayLength = minArrayLength;
+		this.maxArrayLength = maxArrayLength;
+		this.magazineSize = magazineSize;
+		this.maxRetainedBytesPerBucket = maxRetainedBytesPerBucket;
+	}
+
+	/**
+	 * @return Length of the arrays in the smallest bucket. Always a power of two.
+	 */
+	public int getMinArrayLength() {
+		return minArrayLength;
+	}
+
+	/**
+	 * @return Length of the arrays in the biggest bucket. Always a power of two. Bigger
+	 * arrays are allocated and released without pooling.
+	 */
+	public int getMaxArrayLength() {
+		return maxArrayLength;
+	}
+
+	/**
+	 * @return Number of arrays of each bucket cached by every thread.
+	 */
+	public int getMagazineSize() {
+		return magazineSize;
+	}
+
+	/**
+	 * @return Maximum number of bytes retained by each bucket, counting the magazines of all threads
+	 * as well as the shared depot.
+	 */
+	public long getMaxRetainedBytesPerBucket() {
+		return maxRetainedBytesPerBucket;
+	}
+
+	public static class Builder {
+
+		private int minArrayLength = 16;
+		private int maxArrayLength = 1024 * 1024;
+		private int magazineSize = 4;
+		private long maxRetainedBytesPerBucket = 4 * 1024 * 1024;
+
+		/**
+		 * @param minArrayLength Length of the arrays in the smallest bucket, rounded up to the power of two.
+		 * @return Builder instance.
+		 */
+		public Builder setMinArrayLength(int minArrayLength) {
+			this.minArrayLength = minArrayLength;
+			return this;
+		}
+		/**
+		 * @param maxArrayLength Length of the arrays in the biggest bucket, rounded up to the power of two.
+		 * @return Builder instance.
+		 */
+		public Builder setMaxArrayLength(int maxArrayLength) {
+			this.maxArrayLength = maxArrayLength;
+			return this;
+		}
+		public Builder setMagazineSize(int magazineSize) {
+			this.magazineSize = magazineSize;
+			return this;
+		}
+		public Builder setMaxRetainedBytesPerBucket(long maxRetainedBytesPerBucket) {
+			this.maxRetainedBytesPerBucket = maxRetainedBytesPerBucket;
+			return this;
+		}
+		public ArrayPoolConfiguration build() {
+			if(this.minArrayLength <= 0 || this.maxArrayLength < this.minArrayLength || this.maxArrayLength > (1 << 30))
+				throw new IllegalArgumentException("Array lengths have to be positive, ordered and at most 2^30.");
+			if(this.magazineSize < 0)
+				throw new IllegalArgumentException("Magazine size cannot be negative.");
+
+			return new ArrayPoolConfiguration(ArrayPool.roundUpToPowerOfTwo(this.minArrayLength),
+					ArrayPool.roundUpToPowerOfTwo(this.maxArrayLength), this.magazineSize, this.maxRetainedBytesPerBucket);
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package com.jkubinyi.simplepool.array;
+
+/**
+ * {@link ArrayPool} of {@code byte[]} arrays.
+ * 
+ * @author jurajkubinyi
+ */
+public class ByteArrayPool extends ArrayPool<byte[]> {
+
+	public ByteArrayPool(ArrayPoolConfiguration config) {
+		super(config, Byte.BYTES);
+	}
+
+	@Override
+	protected byte[] newArray(int length) {
+		return new byte[length];
+	}
+
+	@Override
+	protected int length(byte[] array) {
+		return array.length;
+	}
+}
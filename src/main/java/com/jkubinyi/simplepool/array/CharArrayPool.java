@@ -0,0 +1,23 @@
+package com.jkubinyi.simplepool.array;
+
+/**
+ * {@link ArrayPool} of {@code char[]} arrays.
+ * 
+ * @author jurajkubinyi
+ */
+public class CharArrayPool extends ArrayPool<char[]> {
+
+	public CharArrayPool(ArrayPoolConfiguration config) {
+		super(config, Character.BYTES);
+	}
+
+	@Override
+	protected char[] newArray(int length) {
+		return new char[length];
+	}
+
+	@Override
+	protected int length(char[] array) {
+		return array.length;
+	}
+}
@@ -0,0 +1,23 @@
+package com.jkubinyi.simplepool.array;
+
+/**
+ * {@link ArrayPool} of {@code long[]} arrays.
+ * 
+ * @author jurajkubinyi
+ */
+public class LongArrayPool extends ArrayPool<long[]> {
+
+	public LongArrayPool(ArrayPoolConfiguration config) {
+		super(config, Long.BYTES);
+	}
+
+	@Override
+	protected long[] newArray(int length) {
+		return new long[length];
+	}
+
+	@Override
+	protected int length(long[] array) {
+		return array.length;
+	}
+}
@@ -0,0 +1,8 @@
+/**
+ * Pools of primitive arrays bucketed by power-of-two lengths.
+ */
+/**
+ * @author jurajkubinyi
+ *
+ */
+package com.jkubinyi.simplepool.array;
@@ -0,0 +1,126 @@
+package com.jkubinyi.simplepool.buffer;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Objects;
+
+import com.jkubinyi.simplepool.common.DefaultEventHandler;
+import com.jkubinyi.simplepool.common.PoolEventHandler;
+
+/**
+ * Configuration used by the {@link ByteBufferPool}.
+ * 
+ * @author jurajkubinyi
+ */
+public final class BufferPoolConfiguration {
+
+	public enum SlabAllocation {
+		/** Slabs are allocated using {@link java.nio.ByteBuffer#allocateDirect(int)}. **/
+		DIRECT,
+		/** Slabs are memory-mapped temporary files created in {@link BufferPoolConfiguration#getMappedDirectory()}. **/
+		MAPPED
+	}
+
+	private final int[] sizeClasses;
+	private final int slabSize;
+	private final int maxSlabsPerClass;
+	private final SlabAllocation slabAllocation;
+	private final Path mappedDirectory;
+	private final PoolEventHandler eventHandler;
+
+	private BufferPoolConfiguration(int[] sizeClasses, int slabSize, int maxSlabsPerClass, SlabAllocation slabAllocation,
+			Path mappedDirectory, PoolEventHandler eventHandler) {
+		this.sizeClasses = sizeClasses;
+		this.slabSize = slabSize;
+		this.maxSlabsPerClass = maxSlabsPerClass;
+		this.slabAllocation = slabAllocation;
+		this.mappedDirectory = mappedDirectory;
+		this.eventHandler = eventHandler;
+	}
+
+	/**
+	 * @return Sorted sizes of the buffers in bytes, one per size class.
+	 */
+	public int[] getSizeClasses() {
+		return sizeClasses.clone();
+	}
+
+	/**
+	 * @return Size of a single slab in bytes. Each slab is carved into slices of one size class.
+	 */
+	public int getSlabSize() {
+		return slabSize;
+	}
+
+	/**
+	 * @return Maximum number of slabs allocated for a single size class.
+	 */
+	public int getMaxSlabsPerClass() {
+		return maxSlabsPerClass;
+	}
+
+	public SlabAllocation getSlabAllocation() {
+		return slabAllocation;
+	}
+
+	/**
+	 * @return Directory for the memory-mapped slab files when using {@link SlabAllocation#MAPPED}.
+	 */
+	public Path getMappedDirectory() {
+		return mappedDirectory;
+	}
+
+	public PoolEventHandler getEventHandler() {
+		return eventHandler;
+	}
+
+	public static class Builder {
+
+		private int[] sizeClasses = { 512, 4 * 1024, 16 * 1024, 64 * 1024 };
+		private int slabSize = 1024 * 1024;
+		private int maxSlabsPerClass = 16;
+		private SlabAllocation slabAllocation = SlabAllocation.DIRECT;
+		private Path mappedDirectory;
+		private PoolEventHandler eventHandler = new DefaultEventHandler();
+
+		public Builder setSizeClasses(int... sizeClasses) {
+			this.sizeClasses = sizeClasses.clone();
+			return this;
+		}
+		public Builder setSlabSize(int slabSize) {
+			this.slabSize = slabSize;
+			return this;
+		}
+		public Builder setMaxSlabsPerClass(int maxSlabsPerClass) {
+			this.maxSlabsPerClass = maxSlabsPerClass;
+			return this;
+		}
+		public Builder setDirectSlabs() {
+			this.slabAllocation = SlabAllocation.DIRECT;
+			this.mappedDirectory = null;
+			return this;
+		}
+		public Builder setMappedSlabs(Path directory) {
+			Objects.requireNonNull(directory, "Directory cannot be null.");
+			this.slabAllocation = SlabAllocation.MAPPED;
+			this.mappedDirectory = directory;
+			return this;
+		}
+		public Builder setEventHandler(PoolEventHandler handler) {
+			this.eventHandler = handler;
+			return this;
+		}
+		public BufferPoolConfiguration build() {
+			if(this.sizeClasses.length == 0)
+				throw new IllegalArgumentException("At least one size class is required.");
+
+			final int[] sorted = this.sizeClasses.clone();
+			Arrays.sort(sorted);
+			if(sorted[0] <= 0 || sorted[sorted.length - 1] > this.slabSize)
+				throw new IllegalArgumentException("Size classes have to be positive and cannot exceed the slab size.");
+
+			return new BufferPoolConfiguration(sorted, this.slabSize, this.maxSlabsPerClass, this.slabAllocation,
+					this.mappedDirectory, this.eventHandler);
+		}
+	}
+}
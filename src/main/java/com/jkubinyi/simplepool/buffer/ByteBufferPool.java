@@ -0,0 +1,270 @@
+package com.jkubinyi.simplepool.buffer;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.jkubinyi.simplepool.common.PoolEventHandler.Severity;
+
+/**
+ * <p>Pool of off-heap {@link ByteBuffer}s organized into size classes. Each size class carves
+ * equally sized slices out of large direct or memory-mapped slabs, so a single slab allocation
+ * serves thousands of buffers without a {@link com.jkubinyi.simplepool.PoolObject} or a map entry
+ * for each of them (as would be the case with {@link com.jkubinyi.simplepool.GenericPoolImpl}).</p>
+ * <p>Buffers are handed out as zero-copy views wrapped by preallocated {@link PooledByteBuffer}
+ * handles. Returning a buffer pushes the slot index of the handle back to the free stack of its
+ * size class.</p>
+ *
+ * @author jurajkubinyi
+ */
+public class ByteBufferPool {
+
+	/** Flag whether pool has been initialzed and is prepared to be used. **/
+	private final AtomicBoolean prepared = new AtomicBoolean(false);
+
+	/** Configuration which is used by the pool. **/
+	protected final BufferPoolConfiguration config;
+
+	private volatile SizeClass[] sizeClasses = new SizeClass[0];
+
+	public ByteBufferPool(BufferPoolConfiguration config) {
+		this.config = config;
+		this.create();
+	}
+
+	/**
+	 * Prepares size classes of the pool. Slabs are allocated lazily on the first demand.
+	 */
+	public void create() {
+		if(this.prepared.compareAndSet(false, true)) {
+			final int[] sizes = this.config.getSizeClasses();
+			final SizeClass[] classes = new SizeClass[sizes.length];
+			for(int i = 0; i < sizes.length; i++) {
+				classes[i] = new SizeClass(this, sizes[i], this.config.getSlabSize() / sizes[i], this.config.getMaxSlabsPerClass());
+			}
+			this.sizeClasses = classes;
+		}
+	}
+
+	/**
+	 * Acquires a buffer of the smallest size class able to hold the requested size.
+	 *
+	 * @param size Requested size in bytes.
+	 * @return Handle of the buffer. Buffer's limit is set to the requested size.
+	 * @throws NoSuchElementException If the size class is exhausted.
+	 * @throws IllegalArgumentException If the size exceeds the biggest size class.
+	 */
+	public PooledByteBuffer acquire(int size) {
+		final PooledByteBuffer buffer = this.tryAcquire(size);
+		if(buffer == null)
+			throw new NoSuchElementException("Size class for " + size + " bytes is exhausted.");
+		return buffer;
+	}
+
+	/**
+	 * Acquires a buffer of the smallest size class able to hold the requested size.
+	 *
+	 * @param size Requested size in bytes.
+	 * @return Handle of the buffer or {@code null} if the size class is exhausted.
+	 * @throws IllegalArgumentException If the size exceeds the biggest size class.
+	 */
+	public PooledByteBuffer tryAcquire(int size) {
+		if(this.isClosed())
+			throw new IllegalStateException("Pool is closed.");
+
+		final SizeClass sizeClass = this.sizeClassFor(size);
+		final PooledByteBuffer buffer = sizeClass.pop();
+		if(buffer == null) return null;
+
+		if(!buffer.markInUse())
+			throw new IllegalStateException("Buffer " + buffer + " is already in use.");
+
+		buffer.requestedSize = size;
+		sizeClass.requestedBytes.addAndGet(size);
+		// Cast keeps the Java 8 Buffer method signatures
+		final Buffer view = buffer.buffer();
+		view.clear();
+		view.limit(size);
+		return buffer;
+	}
+
+	/**
+	 * Returns the buffer back to its size class.
+	 *
+	 * @param buffer Handle acquired from this pool.
+	 */
+	public void release(PooledByteBuffer buffer) {
+		if(!buffer.markFree())
+			throw new IllegalStateException("Buffer " + buffer + " has already been returned.");
+
+		final SizeClass sizeClass = buffer.sizeClass;
+		sizeClass.requestedBytes.addAndGet(-buffer.requestedSize);
+		if(!this.isClosed()) sizeClass.push(buffer.slot);
+	}
+
+	/**
+	 * @return Statistics for each size class ordered by the size.
+	 */
+	public List<SizeClassStatistics> getStatistics() {
+		final SizeClass[] classes = this.sizeClasses;
+		final List<SizeClassStatistics> statistics = new ArrayList<>(classes.length);
+		for(SizeClass sizeClass : classes) {
+			statistics.add(sizeClass.statistics());
+		}
+		return statistics;
+	}
+
+	/**
+	 * Releases all slabs. Buffers which are still in use must not be accessed after closing the pool.
+	 */
+	public void close() {
+		if(this.prepared.compareAndSet(true, false)) {
+			this.sizeClasses = new SizeClass[0];
+		}
+	}
+
+	public final boolean isClosed() {
+		return !this.prepared.get();
+	}
+
+	private SizeClass sizeClassFor(int size) {
+		final SizeClass[] classes = this.sizeClasses;
+		for(int i = 0; i < classes.length; i++) {
+			if(classes[i].slotSize >= size) return classes[i];
+		}
+		throw new IllegalArgumentException("Requested size " + size + " exceeds the biggest size class.");
+	}
+
+	private ByteBuffer allocateSlab(int slotSize) throws IOException {
+		final int slabSize = this.config.getSlabSize();
+		switch(this.config.getSlabAllocation()) {
+		case MAPPED:
+			final Path file = Files.createTempFile(this.config.getMappedDirectory(), "slab-" + slotSize + "-", ".bin");
+			// Mapping stays valid after closing the channel, file is removed once closed
+			try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+					StandardOpenOption.DELETE_ON_CLOSE)) {
+				return channel.map(FileChannel.MapMode.READ_WRITE, 0, slabSize);
+			}
+		case DIRECT:
+		default:
+			return ByteBuffer.allocateDirect(slabSize);
+		}
+	}
+
+	private void newEvent(Severity severity, String format, Object... objects) {
+		this.config.getEventHandler().newEvent(severity, format, objects);
+	}
+
+	/**
+	 * Buffers of a single size. Slot index {@code i} lives in slab {@code i / slotsPerSlab}
+	 * at offset {@code (i % slotsPerSlab) * slotSize}.
+	 *
+	 * @author jurajkubinyi
+	 */
+	static final class SizeClass {
+		private final ByteBufferPool pool;
+		final int slotSize;
+		private final int slotsPerSlab;
+		private final int maxSlabs;
+		private final PooledByteBuffer[] handles;
+		/** Stack of free slot indexes guarded by the class monitor. **/
+		private final int[] freeSlots;
+		private int numOfFreeSlots = 0;
+		private int numOfSlabs = 0;
+		/** Flag whether a slab is being allocated outside the monitor, guarded by the class monitor. **/
+		private boolean growing = false;
+		private final AtomicLong requestedBytes = new AtomicLong(0);
+
+		private SizeClass(ByteBufferPool pool, int slotSize, int slotsPerSlab, int maxSlabs) {
+			this.pool = pool;
+			this.slotSize = slotSize;
+			this.slotsPerSlab = slotsPerSlab;
+			this.maxSlabs = maxSlabs;
+			this.handles = new PooledByteBuffer[slotsPerSlab * maxSlabs];
+			this.freeSlots = new int[slotsPerSlab * maxSlabs];
+		}
+
+		/**
+		 * Takes a free slot. When there is none, the caller allocates a new slab without holding the
+		 * monitor, so allocation and mapping of the slab do not block releases. Callers arriving
+		 * meanwhile wait for that slab instead of allocating another one.
+		 */
+		private PooledByteBuffer pop() {
+			final int slabIndex;
+			synchronized(this) {
+				boolean interrupted = false;
+				while(this.numOfFreeSlots == 0 && this.growing) {
+					try {
+						this.wait();
+					} catch(final InterruptedException e) {
+						interrupted = true;
+					}
+				}
+				if(interrupted) Thread.currentThread().interrupt();
+
+				if(this.numOfFreeSlots > 0) return this.handles[this.freeSlots[--this.numOfFreeSlots]];
+				if(this.numOfSlabs >= this.maxSlabs) return null;
+				this.growing = true;
+				slabIndex = this.numOfSlabs;
+			}
+
+			final boolean grown = this.grow(slabIndex);
+			synchronized(this) {
+				if(grown) {
+					// Push in reverse so lower slots are handed out first
+					final int firstSlot = slabIndex * this.slotsPerSlab;
+					for(int i = this.slotsPerSlab - 1; i >= 0; i--) {
+						this.freeSlots[this.numOfFreeSlots++] = firstSlot + i;
+					}
+					this.numOfSlabs++;
+				}
+				this.growing = false;
+				this.notifyAll();
+				return grown ? this.handles[this.freeSlots[--this.numOfFreeSlots]] : null;
+			}
+		}
+
+		private synchronized void push(int slot) {
+			this.freeSlots[this.numOfFreeSlots++] = slot;
+		}
+
+		/**
+		 * Allocates a new slab and carves it into handles of its slots. Called without the monitor by
+		 * the only growing thread, the handles are published by the monitor taken afterwards.
+		 */
+		private boolean grow(int slabIndex) {
+			final ByteBuffer slab;
+			try {
+				slab = this.pool.allocateSlab(this.slotSize);
+			} catch(final IOException e) {
+				this.pool.newEvent(Severity.error, "Slab for size class {} could not be allocated: ", this.slotSize, e);
+				return false;
+			}
+
+			final int firstSlot = slabIndex * this.slotsPerSlab;
+			for(int i = 0; i < this.slotsPerSlab; i++) {
+				final ByteBuffer duplicate = slab.duplicate();
+				((Buffer) duplicate).position(i * this.slotSize);
+				((Buffer) duplicate).limit((i + 1) * this.slotSize);
+				this.handles[firstSlot + i] = new PooledByteBuffer(this.pool, this, firstSlot + i, duplicate.slice());
+			}
+			this.pool.newEvent(Severity.debug, "Allocated slab #{} for size class {}.", slabIndex + 1, this.slotSize);
+			return true;
+		}
+
+		private synchronized SizeClassStatistics statistics() {
+			final int totalSlots = this.numOfSlabs * this.slotsPerSlab;
+			return new SizeClassStatistics(this.slotSize, this.numOfSlabs, totalSlots,
+					totalSlots - this.numOfFreeSlots, this.requestedBytes.get());
+		}
+	}
+}
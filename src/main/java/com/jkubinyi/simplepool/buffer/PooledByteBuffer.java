@@ -0,0 +1,77 @@
+package com.jkubinyi.simplepool.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * <p>Handle of a buffer borrowed from the {@link ByteBufferPool}. The handle is preallocated together
+ * with its slab and carries the slot index, so returning it is plain index arithmetic.</p>
+ * <p>{@link #buffer()} is a zero-copy view into the slab. The view must not be used after
+ * returning the handle. Suitable for try-with-resources use.</p>
+ * 
+ * @author jurajkubinyi
+ */
+public final class PooledByteBuffer implements AutoCloseable {
+
+	private static final AtomicIntegerFieldUpdater<PooledByteBuffer> IN_USE_UPDATER =
+			AtomicIntegerFieldUpdater.newUpdater(PooledByteBuffer.class, "inUse");
+
+	private final ByteBufferPool pool;
+	final ByteBufferPool.SizeClass sizeClass;
+	/** Index of the slot across all slabs of the size class. **/
+	final int slot;
+	private final ByteBuffer view;
+	private volatile int inUse = 0;
+	int requestedSize;
+
+	PooledByteBuffer(ByteBufferPool pool, ByteBufferPool.SizeClass sizeClass, int slot, ByteBuffer view) {
+		this.pool = pool;
+		this.sizeClass = sizeClass;
+		this.slot = slot;
+		this.view = view;
+	}
+
+	/**
+	 * @return Zero-copy view into the slab. Position is 0 and limit is the requested size,
+	 * capacity is the size of the size class.
+	 */
+	public ByteBuffer buffer() {
+		return this.view;
+	}
+
+	/**
+	 * @return Size requested during acquiring the buffer.
+	 */
+	public int getRequestedSize() {
+		return this.requestedSize;
+	}
+
+	/**
+	 * Returns the buffer back to the pool.
+	 */
+	@Override
+	public void close() {
+		this.pool.release(this);
+	}
+
+	boolean markInUse() {
+		return IN_USE_UPDATER.compareAndSet(this, 0, 1);
+	}
+
+	boolean markFree() {
+		return IN_USE_UPDATER.compareAndSet(this, 1, 0);
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder();
+		builder.append("PooledByteBuffer [size class: ");
+		builder.append(this.sizeClass.slotSize);
+		builder.append("; slot: ");
+		builder.append(this.slot);
+		builder.append("; requested: ");
+		builder.append(this.requestedSize);
+		builder.append("]");
+		return builder.toString();
+	}
+}
@@ -0,0 +1,91 @@
+package com.jkubinyi.simplepool.buffer;
+
+/**
+ * Point-in-time statistics of a single size class of the {@link ByteBufferPool}.
+ * 
+ * @author jurajkubinyi
+ */
+public final class SizeClassStatistics {
+
+	private final int slotSize;
+	private final int numOfSlabs;
+	private final int totalSlots;
+	private final int usedSlots;
+	private final long requestedBytes;
+
+	SizeClassStatistics(int slotSize, int numOfSlabs, int totalSlots, int usedSlots, long requestedBytes) {
+		this.slotSize = slotSize;
+		this.numOfSlabs = numOfSlabs;
+		this.totalSlots = totalSlots;
+		this.usedSlots = usedSlots;
+		this.requestedBytes = requestedBytes;
+	}
+
+	/**
+	 * @return Size of a single buffer of the class in bytes.
+	 */
+	public int getSlotSize() {
+		return slotSize;
+	}
+
+	/**
+	 * @return Number of slabs allocated for the class.
+	 */
+	public int getNumOfSlabs() {
+		return numOfSlabs;
+	}
+
+	/**
+	 * @return Number of buffers carved out of allocated slabs.
+	 */
+	public int getTotalSlots() {
+		return totalSlots;
+	}
+
+	/**
+	 * @return Number of buffers currently in use.
+	 */
+	public int getUsedSlots() {
+		return usedSlots;
+	}
+
+	/**
+	 * @return Sum of the sizes requested by the holders of the used buffers.
+	 */
+	public long getRequestedBytes() {
+		return requestedBytes;
+	}
+
+	/**
+	 * @return Ratio of used buffers to all carved buffers between 0 and 1.
+	 */
+	public double getOccupancy() {
+		return this.totalSlots == 0 ? 0 : (double) this.usedSlots / this.totalSlots;
+	}
+
+	/**
+	 * @return Internal fragmentation between 0 and 1. Part of the used buffers' memory which
+	 * was not requested by the holders (wasted by rounding up to the size class).
+	 */
+	public double getFragmentation() {
+		final long usedBytes = (long) this.usedSlots * this.slotSize;
+		return usedBytes == 0 ? 0 : 1 - (double) this.requestedBytes / usedBytes;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder();
+		builder.append("SizeClassStatistics [slot size: ");
+		builder.append(this.slotSize);
+		builder.append("; slabs: ");
+		builder.append(this.numOfSlabs);
+		builder.append("; used: ");
+		builder.append(this.usedSlots);
+		builder.append("/");
+		builder.append(this.totalSlots);
+		builder.append("; fragmentation: ");
+		builder.append(this.getFragmentation());
+		builder.append("]");
+		return builder.toString();
+	}
+}
@@ -0,0 +1,8 @@
+/**
+ * Off-heap {@link java.nio.ByteBuffer} pool carving size-classed slices out of large slabs.
+ */
+/**
+ * @author jurajkubinyi
+ *
+ */
+package com.jkubinyi.simplepool.buffer;
@@ -0,0 +1,219 @@
+package com.jkubinyi.simplepool.common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>Event handler passing events to the delegate on a single background thread, so a slow
+ * delegate (e.g. logging to disk) never stalls the pool.</p>
+ * <p>Events are written to a preallocated ring of slots. Producers claim a slot using CAS and
+ * publish it by writing its sequence, the consumer reads the slots in order. No object is
+ * allocated per event apart from the arguments array created by the caller.</p>
+ * <p>When the ring is full the {@link OverflowPolicy} decides what happens with the event.</p>
+ * 
+ * @author jurajkubinyi
+ */
+public class AsyncEventHandler implements PoolEventHandler {
+
+	/**
+	 * What happens with an event which does not fit into the ring.
+	 * 
+	 * @author jurajkubinyi
+	 */
+	public enum OverflowPolicy {
+		/** Event is dropped. The pool is never slowed down. **/
+		DROP,
+		/** Producer waits till there is a free slot. No event is lost but the pool can be slowed down. **/
+		BLOCK,
+		/**
+		 * Once the ring is half full only every n-th {@code info} and {@code debug} event is accepted,
+		 * warnings and errors are kept while there is a free slot. Events not fitting are dropped.
+		 */
+		SAMPLE
+	}
+
+	private final PoolEventHandler delegate;
+	private final OverflowPolicy overflowPolicy;
+	private final int sampleRate;
+	private final Slot[] slots;
+	private final int mask;
+
+	/** Next sequence to be claimed by a producer. **/
+	private final AtomicLong claimed = new AtomicLong(0);
+	/** Next sequence to be consumed. Written only by the consumer. **/
+	private final AtomicLong consumed = new AtomicLong(0);
+	private final AtomicLong dropped = new AtomicLong(0);
+	private final AtomicLong sampledOut = new AtomicLong(0);
+	private final AtomicLong sampleCounter = new AtomicLong(0);
+
+	private final Thread consumer;
+	private volatile boolean consumerParked = false;
+	private volatile boolean running = true;
+
+	private AsyncEventHandler(PoolEventHandler delegate, int capacity, OverflowPolicy overflowPolicy, int sampleRate) {
+		if(Integer.bitCount(capacity) != 1)
+			throw new IllegalArgumentException("Capacity has to be a power of two.");
+
+		this.delegate = delegate;
+		this.overflowPolicy = overflowPolicy;
+		this.sampleRate = Math.max(1, sampleRate);
+		this.slots = new Slot[capacity];
+		for(int i = 0; i < capacity; i++) {
+			this.slots[i] = new Slot();
+		}
+		this.mask = capacity - 1;
+
+		this.consumer = new Thread(this::consume, "simplepool-events");
+		this.consumer.setDaemon(true);
+		this.consumer.start();
+	}
+
+	@Override
+	public void newEvent(Severity severity, String format, Object... objects) {
+		if(!this.running || Thread.currentThread() == this.consumer) { // Delegate cannot wait for itself
+			if(!this.running) this.dropped.incrementAndGet();
+			else this.delegate.newEvent(severity, format, objects);
+			return;
+		}
+
+		if(this.overflowPolicy == OverflowPolicy.SAMPLE && severity != Severity.warn && severity != Severity.error
+				&& this.occupancy() >= this.slots.length / 2
+				&& this.sampleCounter.getAndIncrement() % this.sampleRate != 0) {
+			this.sampledOut.incrementAndGet();
+			return;
+		}
+
+		long sequence;
+		while(true) {
+			sequence = this.claimed.get();
+			if(sequence - this.consumed.get() >= this.slots.length) { // Ring is full
+				if(this.overflowPolicy != OverflowPolicy.BLOCK || !this.running) {
+					this.dropped.incrementAndGet();
+					return;
+				}
+				LockSupport.unpark(this.consumer);
+				LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+			} else if(this.claimed.compareAndSet(sequence, sequence + 1)) {
+				break;
+			}
+		}
+
+		final Slot slot = this.slots[(int) (sequence & this.mask)];
+		slot.severity = severity;
+		slot.format = format;
+		slot.objects = objects;
+		slot.sequence = sequence; // Volatile write publishes the fields above
+
+		if(this.consumerParked) LockSupport.unpark(this.consumer);
+	}
+
+	private void consume() {
+		long next = this.consumed.get();
+		while(this.running || next < this.claimed.get()) {
+			final Slot slot = this.slots[(int) (next & this.mask)];
+			if(slot.sequence != next) {
+				this.consumerParked = true;
+				if(slot.sequence != next && this.running) // Re-check to not miss the unpark
+					LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+				this.consumerParked = false;
+				continue;
+			}
+
+			final Severity severity = slot.severity;
+			final String format = slot.format;
+			final Object[] objects = slot.objects;
+			slot.objects = null; // Do not keep the arguments reachable
+			this.consumed.lazySet(++next);
+
+			try {
+				this.delegate.newEvent(severity, format, objects);
+			} catch(final RuntimeException e) {
+				// Handler should not throw, nothing else can be done with the failure
+			}
+		}
+	}
+
+	/**
+	 * Stops the dispatching thread after passing all already accepted events to the delegate.
+	 * Later events are dropped.
+	 * 
+	 * @throws InterruptedException If interrupted while waiting for the pending events.
+	 */
+	public void close() throws InterruptedException {
+		this.running = false;
+		LockSupport.unpark(this.consumer);
+		this.consumer.join();
+	}
+
+	/**
+	 * @return Number of events waiting to be passed to the delegate.
+	 */
+	public int occupancy() {
+		return (int) (this.claimed.get() - this.consumed.get());
+	}
+
+	/**
+	 * @return Number of events dropped because the ring was full or the handler was closed.
+	 */
+	public long getNumDropped() {
+		return this.dropped.get();
+	}
+
+	/**
+	 * @return Number of events skipped by sampling under pressure.
+	 */
+	public long getNumSampledOut() {
+		return this.sampledOut.get();
+	}
+
+	/**
+	 * Preallocated slot of the ring. Fields are published by the volatile write of the sequence.
+	 */
+	private static final class Slot {
+		private volatile long sequence = -1;
+		private Severity severity;
+		private String format;
+		private Object[] objects;
+	}
+
+	public static class Builder {
+		private final PoolEventHandler delegate;
+		private int capacity = 1024;
+		private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+		private int sampleRate = 10;
+
+		/**
+		 * @param delegate Handler receiving the events on the background thread.
+		 */
+		public Builder(PoolEventHandler delegate) {
+			this.delegate = delegate;
+		}
+		/**
+		 * @param capacity Number of slots in the ring, has to be a power of two.
+		 * @return Builder instance.
+		 */
+		public Builder setCapacity(int capacity) {
+			this.capacity = capacity;
+			return this;
+		}
+		public Builder setOverflowPolicy(OverflowPolicy overflowPolicy) {
+			this.overflowPolicy = overflowPolicy;
+			return this;
+		}
+		/**
+		 * @param sampleRate Every n-th event is kept by the {@link OverflowPolicy#SAMPLE} policy under pressure.
+		 * @return Builder instance.
+		 */
+		public Builder setSampleRate(int sampleRate) {
+			this.sampleRate = sampleRate;
+			return this;
+		}
+		/**
+		 * @return Handler with the dispatching thread already started.
+		 */
+		public AsyncEventHandler build() {
+			return new AsyncEventHandler(this.delegate, this.capacity, this.overflowPolicy, this.sampleRate);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package com.jkubinyi.simplepool.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>Backs the {@link PreparedStatement} returned by {@link Connection#prepareCachedStatement(String, String...)}.
+ * {@code executeQuery()} is served from the {@link QueryResultCache} when possible.</p>
+ * <p>The physical statement is prepared lazily, so a statement answered only from the cache never
+ * reaches the server. Parameters bound before are replayed on the physical statement.</p>
+ *
+ * @author jurajkubinyi
+ */
+final class CachingStatementHandler implements InvocationHandler {
+
+	private final QueryResultCache cache;
+	private final java.sql.Connection connection;
+	private final String sql;
+	private final String[] tableTags;
+
+	private final List<Object> parameters = new ArrayList<>();
+	/** Parameter setters called before the physical statement was prepared. **/
+	private final List<Object[]> pendingCalls = new ArrayList<>();
+	private PreparedStatement statement;
+	private boolean closed = false;
+
+	CachingStatementHandler(QueryResultCache cache, java.sql.Connection connection, String sql, String[] tableTags) {
+		this.cache = cache;
+		this.connection = connection;
+		this.sql = sql;
+		this.tableTags = tableTags.clone();
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		final String name = method.getName();
+		if(isParameterSetter(name, args)) {
+			this.bind(name, (Integer) args[0], args);
+			if(this.statement == null) {
+				this.pendingCalls.add(new Object[] { method, args });
+				return null;
+			}
+		} else if(name.equals("clearParameters")) {
+			this.parameters.clear();
+			this.pendingCalls.clear();
+			if(this.statement == null) return null;
+		} else if(name.equals("executeQuery") && args == null) {
+			return this.executeQuery();
+		} else if(name.equals("close")) {
+			this.closed = true;
+			if(this.statement != null) this.statement.close();
+			return null;
+		} else if(name.equals("isClosed")) {
+			return this.closed;
+		} else if(name.equals("getConnection")) {
+			return this.connection;
+		} else if(name.equals("hashCode") && args == null) { // Object methods must not prepare the statement
+			return System.identityHashCode(proxy);
+		} else if(name.equals("equals") && args != null && args.length == 1) {
+			return proxy == args[0];
+		} else if(name.equals("toString") && args == null) {
+			return "CachedStatement [" + this.sql + "]";
+		}
+
+		try {
+			return method.invoke(this.statement(), args);
+		} catch(InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private java.sql.ResultSet executeQuery() throws SQLException {
+		if(this.parameters.contains(QueryResultCache.UNCACHEABLE))
+			return this.statement().executeQuery();
+
+		final QueryResultCache.Key key = new QueryResultCache.Key(this.sql, this.parameters.toArray());
+		final java.sql.ResultSet cached = this.cache.get(key);
+		if(cached != null) return cached;
+
+		final long[] versions = this.cache.versions(this.tableTags);
+		return this.cache.put(key, this.tableTags, versions, this.statement().executeQuery());
+	}
+
+	private void bind(String name, int index, Object[] args) {
+		final Object parameter = QueryResultCache.parameter(args[1]);
+		final Object value;
+		if(name.equals("setNull")) // SQL type must not collide with an integer value
+			value = Arrays.asList(name, Arrays.asList(Arrays.copyOfRange(args, 1, args.length)));
+		else if(args.length == 2 || parameter == QueryResultCache.UNCACHEABLE)
+			value = parameter;
+		else
+			value = Arrays.asList(parameter, Arrays.asList(Arrays.copyOfRange(args, 2, args.length)));
+		while(this.parameters.size() < index) this.parameters.add(null);
+		this.parameters.set(index - 1, value);
+	}
+
+	private PreparedStatement statement() throws SQLException {
+		if(this.closed)
+			throw new SQLException("Statement is closed.");
+		if(this.statement == null) {
+			final PreparedStatement statement = this.connection.prepareStatement(this.sql);
+			try {
+				for(Object[] call : this.pendingCalls) {
+					((Method) call[0]).invoke(statement, (Object[]) call[1]);
+				}
+			} catch(ReflectiveOperationException e) {
+				statement.close();
+				throw new SQLException("Bound parameters could not be replayed.", e instanceof InvocationTargetException ? e.getCause() : e);
+			}
+			this.pendingCalls.clear();
+			this.statement = statement;
+		}
+		return this.statement;
+	}
+
+	/**
+	 * @return {@code true} for {@code setXxx(int parameterIndex, value, ...)} methods of {@link PreparedStatement}.
+	 */
+	private static boolean isParameterSetter(String name, Object[] args) {
+		return name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer;
+	}
+}
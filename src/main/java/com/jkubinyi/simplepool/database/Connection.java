@@ -1,5 +1,7 @@
 package com.jkubinyi.simplepool.database;
 
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Proxy;
 import java.sql.Array;
 import java.sql.Blob;
 import java.sql.CallableStatement;
@@ -14,6 +16,8 @@ import java.sql.SQLXML;
 import java.sql.Savepoint;
 import java.sql.Statement;
 import java.sql.Struct;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Executor;
@@ -45,15 +49,39 @@ public class Connection implements java.sql.Connection {
 	private java.sql.Connection connection;
 	private final GenericPool<Connection> pool;
 	private final JDBCUrl jdbcUrl;
+	private final QueryResultCache resultCache;
+	private final SqlStatistics sqlStatistics;
+	private final boolean trackStatements;
 	
-	private Connection(java.sql.Connection connection, GenericPool<Connection> pool, JDBCUrl jdbcUrl) {
+	/** Statements created through this connection which may still be open. Guarded by its monitor. **/
+	private final List<WeakReference<Statement>> statements = new ArrayList<>();
+	/** Size of {@link #statements} at which closed statements are pruned. **/
+	private int pruneThreshold = 16;
+	/** Scope the connection is bound to, {@link #close()} does not return it while bound. **/
+	private volatile ConnectionScope scope;
+	
+	private Connection(java.sql.Connection connection, GenericPool<Connection> pool, JDBCUrl jdbcUrl, QueryResultCache resultCache, SqlStatistics sqlStatistics, boolean trackStatements) {
 		this.connection = connection;
 		this.pool = pool;
 		this.jdbcUrl = jdbcUrl;
+		this.resultCache = resultCache;
+		this.sqlStatistics = sqlStatistics;
+		this.trackStatements = trackStatements;
 	}
 	
 	public static Connection of(java.sql.Connection connection, GenericPool<Connection> pool, JDBCUrl jdbcUrl) {
-		return new Connection(connection, pool, jdbcUrl);
+		return new Connection(connection, pool, jdbcUrl, null, null, true);
+	}
+	
+	/**
+	 * @param connection Connection created by the driver.
+	 * @param pool Pool owning the connection.
+	 * @param jdbcUrl URL the connection was created for.
+	 * @param config Configuration providing the result cache and SQL statistics.
+	 * @return Pooled connection.
+	 */
+	public static Connection of(java.sql.Connection connection, GenericPool<Connection> pool, JDBCUrl jdbcUrl, ConnectionPoolConfiguration config) {
+		return new Connection(connection, pool, jdbcUrl, config.getResultCache(), config.getSqlStatistics(), config.isTrackStatements());
 	}
 	
 	protected JDBCUrl getJdbcUrl() {
@@ -75,9 +103,11 @@ public class Connection implements java.sql.Connection {
 	 * {@link java.sql.Connection}.</b></p>
 	 * <p>However, it will return the object back to the pool, making it going
 	 * through its lifecycle.</p>
+	 * <p>Does nothing while the connection is bound to a {@link ConnectionScope}.</p>
 	 */
 	@Override
 	public void close() throws SQLException {
+		if(this.scope != null) return;
 		try {
 			this.pool.returnObject(this);
 		} catch(Exception e) {
@@ -91,6 +121,13 @@ public class Connection implements java.sql.Connection {
 		}
 	}
 
+	/**
+	 * @param scope Scope the connection is bound to or {@code null} to unbind.
+	 */
+	void bind(ConnectionScope scope) {
+		this.scope = scope;
+	}
+
 	/**
 	 * <p><b>This method should not be called directly, but rather automatically by
 	 * {@link ConnectionPoolFactory}. </b>Calling this method directly without returning
@@ -101,7 +138,7 @@ public class Connection implements java.sql.Connection {
 	 * @throws SQLException Underlying {@code close()} method Exception.
 	 */
 	public void superClose() throws SQLException {
-		this.close();
+		this.connection.close();
 	}
 
 	@Override
@@ -116,17 +153,89 @@ public class Connection implements java.sql.Connection {
 
 	@Override
 	public Statement createStatement() throws SQLException {
-		return this.connection.createStatement();
+		return this.track(Statement.class, this.connection.createStatement(), null);
 	}
 
 	@Override
 	public PreparedStatement prepareStatement(String sql) throws SQLException {
-		return this.connection.prepareStatement(sql);
+		return this.track(PreparedStatement.class, this.connection.prepareStatement(sql), sql);
+	}
+
+	/**
+	 * <p>Prepares a statement whose {@code executeQuery()} is served from the {@link QueryResultCache}
+	 * of the pool. Results are cached by the SQL and the bound parameters. The physical statement is
+	 * prepared only when the result is not cached.</p>
+	 * <p>Behaves as {@link #prepareStatement(String)} when no cache is configured.</p>
+	 * 
+	 * @param sql Idempotent query.
+	 * @param tableTags Tags of the tables read by the query, used by {@link QueryResultCache#invalidate(String)}.
+	 * @return Prepared statement.
+	 * @throws SQLException When the statement cannot be prepared.
+	 */
+	public PreparedStatement prepareCachedStatement(String sql, String... tableTags) throws SQLException {
+		if(this.resultCache == null) return this.prepareStatement(sql);
+		return (PreparedStatement) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { PreparedStatement.class },
+				new CachingStatementHandler(this.resultCache, this, sql, tableTags));
+	}
+
+	/**
+	 * Registers the statement to be closed on return and instruments it when {@link SqlStatistics} are configured.
+	 */
+	private <S extends Statement> S track(Class<S> type, S statement, String sql) {
+		if(this.trackStatements) {
+			synchronized(this.statements) {
+				if(this.statements.size() >= this.pruneThreshold) {
+					this.statements.removeIf(Connection::isClosed);
+					this.pruneThreshold = Math.max(16, this.statements.size() * 2);
+				}
+				this.statements.add(new WeakReference<>(statement));
+			}
+		}
+		if(this.sqlStatistics == null) return statement;
+		return InstrumentedStatementHandler.instrument(type, statement, this.sqlStatistics, sql);
+	}
+
+	private static boolean isClosed(WeakReference<Statement> reference) {
+		final Statement statement = reference.get();
+		try {
+			return statement == null || statement.isClosed();
+		} catch(SQLException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * <p>Closes statements created through this connection which were left open by the borrower.
+	 * Closing a statement closes its current {@link java.sql.ResultSet} too. Called by the
+	 * {@link ConnectionPoolFactory} before the connection is reused.</p>
+	 * 
+	 * @return Number of statements which had to be closed.
+	 */
+	int closeStatements() {
+		final List<WeakReference<Statement>> tracked;
+		synchronized(this.statements) {
+			if(this.statements.isEmpty()) return 0;
+			tracked = new ArrayList<>(this.statements);
+			this.statements.clear();
+			this.pruneThreshold = 16;
+		}
+		int closed = 0;
+		for(WeakReference<Statement> reference : tracked) {
+			final Statement statement = reference.get();
+			if(statement == null) continue; // Unreachable, the driver cleans it up
+			try {
+				if(!statement.isClosed()) {
+					statement.close();
+					closed++;
+				}
+			} catch(SQLException e) { } // Connection is validated before the reuse anyway
+		}
+		return closed;
 	}
 
 	@Override
 	public CallableStatement prepareCall(String sql) throws SQLException {
-		return this.connection.prepareCall(sql);
+		return this.track(CallableStatement.class, this.connection.prepareCall(sql), sql);
 	}
 
 	@Override
@@ -206,18 +315,18 @@ public class Connection implements java.sql.Connection {
 
 	@Override
 	public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
-		return this.connection.createStatement();
+		return this.track(Statement.class, this.connection.createStatement(resultSetType, resultSetConcurrency), null);
 	}
 
 	@Override
 	public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency)
 			throws SQLException {
-		return this.connection.prepareStatement(sql, resultSetType, resultSetConcurrency);
+		return this.track(PreparedStatement.class, this.connection.prepareStatement(sql, resultSetType, resultSetConcurrency), sql);
 	}
 
 	@Override
 	public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
-		return this.connection.prepareCall(sql, resultSetType, resultSetConcurrency);
+		return this.track(CallableStatement.class, this.connection.prepareCall(sql, resultSetType, resultSetConcurrency), sql);
 	}
 
 	@Override
@@ -264,34 +373,34 @@ public class Connection implements java.sql.Connection {
 	@Override
 	public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability)
 			throws SQLException {
-		return this.connection.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
+		return this.track(Statement.class, this.connection.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability), null);
 	}
 
 	@Override
 	public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency,
 			int resultSetHoldability) throws SQLException {
-		return this.connection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+		return this.track(PreparedStatement.class, this.connection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability), sql);
 	}
 
 	@Override
 	public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency,
 			int resultSetHoldability) throws SQLException {
-		return this.connection.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+		return this.track(CallableStatement.class, this.connection.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability), sql);
 	}
 
 	@Override
 	public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
-		return this.connection.prepareStatement(sql, autoGeneratedKeys);
+		return this.track(PreparedStatement.class, this.connection.prepareStatement(sql, autoGeneratedKeys), sql);
 	}
 
 	@Override
 	public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
-		return this.connection.prepareStatement(sql, columnIndexes);
+		return this.track(PreparedStatement.class, this.connection.prepareStatement(sql, columnIndexes), sql);
 	}
 
 	@Override
 	public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
-		return this.connection.prepareStatement(sql, columnNames);
+		return this.track(PreparedStatement.class, this.connection.prepareStatement(sql, columnNames), sql);
 	}
 
 	@Override
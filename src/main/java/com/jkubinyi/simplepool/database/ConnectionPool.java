@@ -1,10 +1,16 @@
 package com.jkubinyi.simplepool.database;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
 import com.jkubinyi.simplepool.GenericPoolImpl;
 import com.jkubinyi.simplepool.PoolConfiguration;
 
 public class ConnectionPool extends GenericPoolImpl<Connection> {
 
+	/** Outer scope bound to the thread. **/
+	private final ThreadLocal<ConnectionScope> boundScope = new ThreadLocal<>();
+
 	public ConnectionPool(ConnectionPoolFactory factory, PoolConfiguration config) {
 		super(factory, config);
 	}
@@ -14,15 +20,76 @@ public class ConnectionPool extends GenericPoolImpl<Connection> {
 	}
 	
 	/**
+	 * Returns the connection bound to the {@link ConnectionScope} of the thread or borrows a new one.
+	 * {@link #borrowObject()} always borrows, ignoring the scope.
+	 * 
 	 * @see #borrowObject()
 	 * 
 	 * @return Pooled instance of {@link Connection}. Suitable for try-with-resources use.
 	 * @throws Exception When unrecoverable error pops up during getting Connection from the pool.
 	 */
 	public Connection getConnection() throws Exception {
+		final ConnectionScope scope = this.boundScope.get();
+		if(scope != null) return scope.connection();
 		return this.borrowObject();
 	}
 	
+	/**
+	 * Opens a unit of work sharing a single connection within the current thread. Joins the
+	 * scope which is already open in the thread.
+	 * 
+	 * @return Scope to be closed by the thread, preferably using try-with-resources.
+	 */
+	public ConnectionScope openScope() {
+		final ConnectionScope outer = this.boundScope.get();
+		final ConnectionScope scope = new ConnectionScope(this, outer);
+		if(outer == null) this.boundScope.set(scope);
+		return scope;
+	}
+	
+	void unbind(ConnectionScope scope) {
+		if(this.boundScope.get() == scope) this.boundScope.remove();
+	}
+	
+	/**
+	 * Executes an idempotent query through the {@link QueryResultCache}. A connection is borrowed
+	 * only when the result is not cached.
+	 * 
+	 * @param sql Idempotent query.
+	 * @param tableTags Tags of the tables read by the query, used by {@link QueryResultCache#invalidate(String)}.
+	 * @param parameters Parameters bound using {@link PreparedStatement#setObject(int, Object)}.
+	 * @return Materialized result.
+	 * @throws IllegalStateException When no cache is configured.
+	 * @throws Exception When the connection cannot be borrowed or the query fails.
+	 */
+	public ResultSet executeCachedQuery(String sql, String[] tableTags, Object... parameters) throws Exception {
+		final QueryResultCache cache = this.getFactory().getResultCache();
+		if(cache == null)
+			throw new IllegalStateException("No result cache is configured.");
+		
+		boolean cacheable = true;
+		final Object[] values = new Object[parameters.length];
+		for(int i = 0; i < parameters.length; i++) {
+			values[i] = QueryResultCache.parameter(parameters[i]);
+			cacheable &= values[i] != QueryResultCache.UNCACHEABLE;
+		}
+		final QueryResultCache.Key key = new QueryResultCache.Key(sql, values);
+		if(cacheable) {
+			final ResultSet cached = cache.get(key);
+			if(cached != null) return cached;
+		}
+		
+		final long[] versions = cache.versions(tableTags);
+		try(Connection connection = this.getConnection();
+				PreparedStatement statement = connection.getConnection().prepareStatement(sql)) {
+			for(int i = 0; i < parameters.length; i++) {
+				statement.setObject(i + 1, parameters[i]);
+			}
+			if(!cacheable) return cache.materialize(statement.executeQuery());
+			return cache.put(key, tableTags, versions, statement.executeQuery());
+		}
+	}
+	
 	public ConnectionPoolFactory getFactory() {
 		return (ConnectionPoolFactory) this.factory;
 	}
@@ -5,6 +5,9 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
+import com.jkubinyi.simplepool.database.dialect.SessionResetStrategy;
+import com.jkubinyi.simplepool.database.dialect.ValidationStrategy;
+
 /**
  * <p>Configuration class for the {@link ConnectionPoolFactory}. Includes possibility to have multiple
  * fail-over JDBC URLs and one main JDBC URL defined.</p>
@@ -15,8 +18,8 @@ import java.util.Objects;
 public final class ConnectionPoolConfiguration {
 	
 	/**
-	 * Used to one time configure freshly made {@link Connection}. Useful
-	 * for setting {@link Connection}'s properties like autocommit, etc.
+	 * Used to configure freshly made {@link Connection}. Useful for setting {@link Connection}'s
+	 * properties like autocommit, etc. Applied again after each session reset on return.
 	 * 
 	 * @author jurajkubinyi
 	 */
@@ -45,9 +48,27 @@ public final class ConnectionPoolConfiguration {
 	
 	private final ReturnStrategy returnStrategy;
 	
+	private final ValidationStrategy validationStrategy;
+	
+	private final SessionResetStrategy sessionResetStrategy;
+	
 	private final ConnectionConfiguration connectionConfiguration;
 	
-	private ConnectionPoolConfiguration(JDBCUrl mainJdbcUrl, List<JDBCUrl> fallbackJdbcUrls, int numOfFailsToFallback, int waitTimeBetweenRetryInS, int maxValidationTimeoutInS, boolean eagerRetry, ReturnStrategy returnStrategy, ConnectionConfiguration connectionConfiguration) {
+	private final int maxCreationsPerSec;
+	
+	private final int maxConcurrentCreations;
+	
+	private final int creationBackoffInMs;
+	
+	private final int maxCreationWaitInMs;
+	
+	private final QueryResultCache resultCache;
+	
+	private final SqlStatistics sqlStatistics;
+	
+	private final boolean trackStatements;
+	
+	private ConnectionPoolConfiguration(JDBCUrl mainJdbcUrl, List<JDBCUrl> fallbackJdbcUrls, int numOfFailsToFallback, int waitTimeBetweenRetryInS, int maxValidationTimeoutInS, boolean eagerRetry, ReturnStrategy returnStrategy, ValidationStrategy validationStrategy, SessionResetStrategy sessionResetStrategy, ConnectionConfiguration connectionConfiguration, int maxCreationsPerSec, int maxConcurrentCreations, int creationBackoffInMs, int maxCreationWaitInMs, QueryResultCache resultCache, SqlStatistics sqlStatistics, boolean trackStatements) {
 		this.mainJdbcUrl = mainJdbcUrl;
 		this.fallbackJdbcUrls = Collections.unmodifiableList(fallbackJdbcUrls);
 		this.numOfFailsToFallback = numOfFailsToFallback;
@@ -55,7 +76,16 @@ public final class ConnectionPoolConfiguration {
 		this.maxValidationTimeoutInS = maxValidationTimeoutInS;
 		this.eagerRetry = eagerRetry;
 		this.returnStrategy = returnStrategy;
+		this.validationStrategy = validationStrategy;
+		this.sessionResetStrategy = sessionResetStrategy;
 		this.connectionConfiguration = connectionConfiguration;
+		this.maxCreationsPerSec = maxCreationsPerSec;
+		this.maxConcurrentCreations = maxConcurrentCreations;
+		this.creationBackoffInMs = creationBackoffInMs;
+		this.maxCreationWaitInMs = maxCreationWaitInMs;
+		this.resultCache = resultCache;
+		this.sqlStatistics = sqlStatistics;
+		this.trackStatements = trackStatements;
 	}
 
 	/**
@@ -109,6 +139,20 @@ public final class ConnectionPoolConfiguration {
 		return returnStrategy;
 	}
 
+	/**
+	 * @return Strategy used to verify the connection is alive.
+	 */
+	public ValidationStrategy getValidationStrategy() {
+		return validationStrategy;
+	}
+
+	/**
+	 * @return Strategy used to reset the session after the return strategy was applied.
+	 */
+	public SessionResetStrategy getSessionResetStrategy() {
+		return sessionResetStrategy;
+	}
+
 	/**
 	 * @return {@link ConnectionConfiguration} which is applied to each {@link Connection} by
 	 * {@link ConnectionPoolFactory} right after creating a new {@link java.sql.Connection}.
@@ -117,6 +161,57 @@ public final class ConnectionPoolConfiguration {
 		return connectionConfiguration;
 	}
 
+	/**
+	 * @return Maximum number of connections created per second, non-positive for unlimited.
+	 */
+	public int getMaxCreationsPerSec() {
+		return maxCreationsPerSec;
+	}
+
+	/**
+	 * @return Maximum number of connections being created at once, non-positive for unlimited.
+	 * Callers over the limit wait for the creations in flight.
+	 */
+	public int getMaxConcurrentCreations() {
+		return maxConcurrentCreations;
+	}
+
+	/**
+	 * @return Backoff in miliseconds after the first failed creation. Doubles with each following
+	 * failure up to {@link #getWaitTimeBetweenRetryInS()}.
+	 */
+	public int getCreationBackoffInMs() {
+		return creationBackoffInMs;
+	}
+
+	/**
+	 * @return Maximum number of miliseconds to wait for a creation permit.
+	 */
+	public int getMaxCreationWaitInMs() {
+		return maxCreationWaitInMs;
+	}
+
+	/**
+	 * @return Cache of query results shared by the connections or {@code null} if caching is disabled.
+	 */
+	public QueryResultCache getResultCache() {
+		return resultCache;
+	}
+
+	/**
+	 * @return Statistics the statements of the connections record into or {@code null} if the statements are not instrumented.
+	 */
+	public SqlStatistics getSqlStatistics() {
+		return sqlStatistics;
+	}
+
+	/**
+	 * @return If true statements left open by the borrower are closed before the connection is reused.
+	 */
+	public boolean isTrackStatements() {
+		return trackStatements;
+	}
+
 	public static class Builder {
 		private final JDBCUrl mainJdbcUrl;
 		
@@ -132,8 +227,26 @@ public final class ConnectionPoolConfiguration {
 		
 		private ReturnStrategy returnStrategy = ReturnStrategy.ROLLBACK;
 		
+		private ValidationStrategy validationStrategy = ValidationStrategy.CHEAPEST;
+		
+		private SessionResetStrategy sessionResetStrategy = SessionResetStrategy.NONE;
+		
 		private ConnectionConfiguration connectionConfiguration = Builder.defaultConnectionConfiguration;
 		
+		private int maxCreationsPerSec = 20;
+		
+		private int maxConcurrentCreations = 4;
+		
+		private int creationBackoffInMs = 100;
+		
+		private int maxCreationWaitInMs = 1000;
+		
+		private QueryResultCache resultCache;
+		
+		private SqlStatistics sqlStatistics;
+		
+		private boolean trackStatements = true;
+		
 		private static ConnectionConfiguration defaultConnectionConfiguration = new ConnectionConfiguration() {
 			@Override
 			public void configure(Connection connection) {
@@ -206,6 +319,24 @@ public final class ConnectionPoolConfiguration {
 			return this;
 		}
 		
+		/**
+		 * @param validationStrategy Strategy used to verify the connection is alive.
+		 * @return Builder instance.
+		 */
+		public Builder setValidationStrategy(ValidationStrategy validationStrategy) {
+			this.validationStrategy = validationStrategy;
+			return this;
+		}
+		
+		/**
+		 * @param sessionResetStrategy Strategy used to reset the session before the connection is reused.
+		 * @return Builder instance.
+		 */
+		public Builder setSessionResetStrategy(SessionResetStrategy sessionResetStrategy) {
+			this.sessionResetStrategy = sessionResetStrategy;
+			return this;
+		}
+		
 		/**
 		 * @param connectionConfiguration {@link ConnectionConfiguration} which is applied to each {@link Connection} by
 		 * {@link ConnectionPoolFactory} right after creating a new {@link java.sql.Connection}.
@@ -216,11 +347,74 @@ public final class ConnectionPoolConfiguration {
 			return this;
 		}
 		
+		/**
+		 * @param maxCreationsPerSec Maximum number of connections created per second, non-positive for unlimited.
+		 * @return Builder instance.
+		 */
+		public Builder setMaxCreationsPerSec(int maxCreationsPerSec) {
+			this.maxCreationsPerSec = maxCreationsPerSec;
+			return this;
+		}
+		
+		/**
+		 * @param maxConcurrentCreations Maximum number of connections being created at once, non-positive for unlimited.
+		 * @return Builder instance.
+		 */
+		public Builder setMaxConcurrentCreations(int maxConcurrentCreations) {
+			this.maxConcurrentCreations = maxConcurrentCreations;
+			return this;
+		}
+		
+		/**
+		 * @param creationBackoffInMs Backoff in miliseconds after the first failed creation.
+		 * @return Builder instance.
+		 */
+		public Builder setCreationBackoffInMs(int creationBackoffInMs) {
+			this.creationBackoffInMs = creationBackoffInMs;
+			return this;
+		}
+		
+		/**
+		 * @param maxCreationWaitInMs Maximum number of miliseconds to wait for a creation permit.
+		 * @return Builder instance.
+		 */
+		public Builder setMaxCreationWaitInMs(int maxCreationWaitInMs) {
+			this.maxCreationWaitInMs = maxCreationWaitInMs;
+			return this;
+		}
+		
+		/**
+		 * @param resultCache Cache of query results shared by the connections, {@code null} to disable caching.
+		 * @return Builder instance.
+		 */
+		public Builder setResultCache(QueryResultCache resultCache) {
+			this.resultCache = resultCache;
+			return this;
+		}
+		
+		/**
+		 * @param sqlStatistics Statistics the statements of the connections record into, {@code null} to disable instrumentation.
+		 * @return Builder instance.
+		 */
+		public Builder setSqlStatistics(SqlStatistics sqlStatistics) {
+			this.sqlStatistics = sqlStatistics;
+			return this;
+		}
+		
+		/**
+		 * @param trackStatements If true statements left open by the borrower are closed before the connection is reused.
+		 * @return Builder instance.
+		 */
+		public Builder setTrackStatements(boolean trackStatements) {
+			this.trackStatements = trackStatements;
+			return this;
+		}
+		
 		/**
 		 * @return Creates the {@link ConnectionPoolConfiguration} instance.
 		 */
 		public ConnectionPoolConfiguration build() {
-			return new ConnectionPoolConfiguration(this.mainJdbcUrl, this.fallbackJdbcUrls, this.numOfFailsToFallback, this.waitTimeBetweenRetryInS, this.maxValidationTimeoutInS, this.eagerRetry, this.returnStrategy, this.connectionConfiguration);
+			return new ConnectionPoolConfiguration(this.mainJdbcUrl, this.fallbackJdbcUrls, this.numOfFailsToFallback, this.waitTimeBetweenRetryInS, this.maxValidationTimeoutInS, this.eagerRetry, this.returnStrategy, this.validationStrategy, this.sessionResetStrategy, this.connectionConfiguration, this.maxCreationsPerSec, this.maxConcurrentCreations, this.creationBackoffInMs, this.maxCreationWaitInMs, this.resultCache, this.sqlStatistics, this.trackStatements);
 		}
 	}
 }
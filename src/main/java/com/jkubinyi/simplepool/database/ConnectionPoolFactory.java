@@ -1,14 +1,13 @@
 package com.jkubinyi.simplepool.database;
 
-import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.jkubinyi.simplepool.GenericPool;
 import com.jkubinyi.simplepool.ObjectPoolFactory;
 import com.jkubinyi.simplepool.PoolObject;
+import com.jkubinyi.simplepool.misc.CreationThrottle;
 
 /**
  * <p>An {@link ObjectPoolFactory} implementation used to create {@link Connection}
@@ -22,26 +21,63 @@ public class ConnectionPoolFactory implements ObjectPoolFactory<Connection> {
 	private final ConnectionPoolConfiguration config;
 	private AtomicInteger failureCount = new AtomicInteger(0);
 	private volatile boolean inFallback = false;
+	private final CreationThrottle throttle;
+	private final AtomicLong closedStatements = new AtomicLong(0);
 	
 	public ConnectionPoolFactory(ConnectionPoolConfiguration config) {
 		this.config = config;
+		this.throttle = new CreationThrottle(config.getMaxCreationsPerSec(), config.getMaxConcurrentCreations(),
+				config.getCreationBackoffInMs(), config.getWaitTimeBetweenRetryInS() * 1000L, config.getMaxCreationWaitInMs());
 	}
 	
 	@Override
 	public PoolObject<Connection> produceObject(GenericPool<Connection> pool) throws Exception {
+		return this.produceObject(pool, -1);
+	}
+
+	/**
+	 * Creation is throttled, so a borrower finding an empty pool during a server outage waits for a
+	 * creation permit, at most till its deadline, or fails fast during backoff. Each handshake takes
+	 * its own permit, including the failed attempts to the main server before failing over.
+	 */
+	@Override
+	public PoolObject<Connection> produceObject(GenericPool<Connection> pool, long deadline) throws Exception {
+		while(true) {
+			this.throttle.acquire(deadline);
+			final Connection connection;
+			try {
+				connection = this.createConnection(pool);
+				if(connection != null) this.config.getConnectionConfiguration().configure(connection);
+			} catch(Exception e) {
+				this.throttle.release(e);
+				throw e;
+			}
+			if(connection == null) { // Main server failed, next attempt may fail over
+				this.throttle.releaseForRetry();
+				continue;
+			}
+			this.throttle.release(null);
+			return new PoolObject<Connection>(connection);
+		}
+	}
+	
+	/**
+	 * Makes a single attempt to connect.
+	 * 
+	 * @return Connection or {@code null} if the main server failed and another attempt should be made.
+	 */
+	private Connection createConnection(GenericPool<Connection> pool) throws Exception {
+		if(!this.inFallback && this.failureCount.get() >= this.config.getNumOfFailsToFallback())
+			this.inFallback = true;
+
 		Connection connection = null;
 		if(!this.inFallback) {
-			if(this.failureCount.get() < this.config.getNumOfFailsToFallback()) {
-				try {
-					connection = this.createMainConnection(pool);
-				} catch(SQLException e) { } // TODO: do logging
-				if(connection == null || connection.isClosed()) {
-					this.failureCount.incrementAndGet();
-					return this.produceObject(pool);
-				}
-			} else {
-				this.inFallback = true;
-				return this.produceObject(pool);
+			try {
+				connection = this.createMainConnection(pool);
+			} catch(SQLException e) { } // TODO: do logging
+			if(connection == null || connection.isClosed()) {
+				this.failureCount.incrementAndGet();
+				return null;
 			}
 		} else {
 			if(this.config.getFallbackJdbcUrls().size() == 0) throw new IllegalStateException("Main server is unreachable. No fallback servers are configured.");
@@ -59,9 +95,7 @@ public class ConnectionPoolFactory implements ObjectPoolFactory<Connection> {
 			}
 		}
 		if(connection == null) throw new IllegalStateException("Cannot obtain Connection.");
-		
-		this.config.getConnectionConfiguration().configure(connection);
-		return new PoolObject<Connection>(connection);
+		return connection;
 	}
 
 	@Override
@@ -93,6 +127,9 @@ public class ConnectionPoolFactory implements ObjectPoolFactory<Connection> {
 
 	@Override
 	public void sleepObject(PoolObject<Connection> object) throws Exception {
+		final int leaked = object.getObject().closeStatements();
+		if(leaked > 0) this.closedStatements.addAndGet(leaked);
+		
 		switch (this.config.getReturnStrategy()) {
 		case ROLLBACK:
 			object.getObject().rollback();
@@ -104,6 +141,10 @@ public class ConnectionPoolFactory implements ObjectPoolFactory<Connection> {
 		default:
 			break;
 		}
+		
+		final Connection connection = object.getObject();
+		if(connection.getJdbcUrl().getDialect().resetSession(connection.getConnection(), this.config.getSessionResetStrategy()))
+			this.config.getConnectionConfiguration().configure(connection); // Reset dropped the settings applied on creation
 	}
 	
 	// Methods directly connected to the ConnectionPoolFactory logic
@@ -115,6 +156,27 @@ public class ConnectionPoolFactory implements ObjectPoolFactory<Connection> {
 		return this.inFallback;
 	}
 	
+	/**
+	 * @return Throttle limiting creation of the connections.
+	 */
+	public CreationThrottle getCreationThrottle() {
+		return this.throttle;
+	}
+	
+	/**
+	 * @return Number of statements left open by the borrowers which had to be closed on return.
+	 */
+	public long getNumClosedStatements() {
+		return this.closedStatements.get();
+	}
+	
+	/**
+	 * @return Cache of query results or {@code null} if caching is disabled.
+	 */
+	public QueryResultCache getResultCache() {
+		return this.config.getResultCache();
+	}
+	
 	private synchronized Connection createFallbackConnection(GenericPool<Connection> pool) throws SQLException {
 		Connection connection = null;
 		for(JDBCUrl jdbcUrl : this.config.getFallbackJdbcUrls()) {
@@ -139,17 +201,7 @@ public class ConnectionPoolFactory implements ObjectPoolFactory<Connection> {
 	private boolean validateConnection(java.sql.Connection connection, JDBCUrl jdbcUrl) {
 		try {
 			if(!connection.isClosed()) {
-				boolean result;
-				Optional<String> optionalLinkValidityQuery = jdbcUrl.getDialect().getLinkValidityQuery();
-				
-				if(optionalLinkValidityQuery.isPresent()) {
-					try(Statement st = connection.createStatement()) {
-						st.setQueryTimeout(this.config.getMaxValidationTimeoutInS());
-						result = st.execute(optionalLinkValidityQuery.get());
-					}
-				} else
-					result = connection.isValid(this.config.getMaxValidationTimeoutInS());
-				return result;
+				return jdbcUrl.getDialect().validate(connection, this.config.getValidationStrategy(), this.config.getMaxValidationTimeoutInS());
 			}
 		} catch(SQLException e) {
 			return false;
@@ -164,16 +216,9 @@ public class ConnectionPoolFactory implements ObjectPoolFactory<Connection> {
 	 * @return {@code true} if it can be reached and the link is working.
 	 */
 	private boolean tryConnectivity(JDBCUrl jdbcUrl) {
-		String url = jdbcUrl.getUrl();
-		Optional<String> optionalUsername = jdbcUrl.getUsername();
-		Optional<String> optionalPassword = jdbcUrl.getPassword();
-		
 		java.sql.Connection connection = null;
 		try {
-			if(optionalUsername.isPresent())
-				connection = DriverManager.getConnection(url, optionalUsername.get(), optionalPassword.orElse(null));
-			else
-				connection = DriverManager.getConnection(url);
+			connection = jdbcUrl.connect();
 			
 			if(this.validateConnection(connection, jdbcUrl)) {
 				try {
@@ -191,17 +236,9 @@ public class ConnectionPoolFactory implements ObjectPoolFactory<Connection> {
 	}
 	
 	private Connection createConnection(JDBCUrl jdbcUrl, GenericPool<Connection> pool) throws SQLException {
-		String url = jdbcUrl.getUrl();
-		Optional<String> optionalUsername = jdbcUrl.getUsername();
-		Optional<String> optionalPassword = jdbcUrl.getPassword();
-		
-		java.sql.Connection connection;
-		if(optionalUsername.isPresent())
-			connection = DriverManager.getConnection(url, optionalUsername.get(), optionalPassword.orElse(null));
-		else
-			connection = DriverManager.getConnection(url);
+		java.sql.Connection connection = jdbcUrl.connect();
 		
-		if(connection != null) return Connection.of(connection, pool, jdbcUrl);
+		if(connection != null) return Connection.of(connection, pool, jdbcUrl, this.config);
 		
 		return null;
 	}
@@ -0,0 +1,98 @@
+package com.jkubinyi.simplepool.database;
+
+import java.sql.SQLException;
+
+/**
+ * <p>Unit of work binding a single {@link Connection} to the current thread. Within the scope
+ * {@link ConnectionPool#getConnection()} returns the same connection and {@link Connection#close()}
+ * does not return it to the pool, so DAO methods borrowing their own connection share one borrow,
+ * one validation and, with auto-commit disabled, one transaction.</p>
+ * <p>The connection is borrowed lazily on the first {@link ConnectionPool#getConnection()}. Scopes
+ * opened while another scope is bound join the outer one: their {@link #commit()} and {@link #close()}
+ * do nothing and the connection is returned once the outer scope is closed.</p>
+ * <p>Binding relies on a {@link ThreadLocal}, so it works the same for platform and virtual threads.
+ * A scope has to be closed by the thread which opened it.</p>
+ * <pre>
+ * try(ConnectionScope scope = pool.openScope()) {
+ *     dao.insert(...); // Each calls pool.getConnection()
+ *     dao.update(...);
+ *     scope.commit();
+ * }
+ * </pre>
+ *
+ * @author jurajkubinyi
+ */
+public final class ConnectionScope implements AutoCloseable {
+
+	private final ConnectionPool pool;
+	/** Scope this one joined or {@code null} for the outer scope. **/
+	private final ConnectionScope outer;
+	private final Thread owner = Thread.currentThread();
+	private Connection connection;
+	private boolean closed = false;
+
+	ConnectionScope(ConnectionPool pool, ConnectionScope outer) {
+		this.pool = pool;
+		this.outer = outer;
+	}
+
+	/**
+	 * @return Connection of the outer scope, borrowed on the first call.
+	 */
+	Connection connection() throws Exception {
+		if(this.outer != null) return this.outer.connection();
+		this.checkOwner();
+		if(this.closed)
+			throw new IllegalStateException("Scope is closed.");
+		if(this.connection == null) {
+			final Connection connection = this.pool.borrowObject();
+			connection.bind(this);
+			this.connection = connection;
+		}
+		return this.connection;
+	}
+
+	/**
+	 * Commits the work done in the outer scope. Does nothing in a joined scope, when no connection was
+	 * borrowed yet or when the connection is in auto-commit mode.
+	 *
+	 * @throws SQLException When the commit fails.
+	 */
+	public void commit() throws SQLException {
+		if(this.outer != null || this.connection == null) return;
+		this.checkOwner();
+		if(!this.connection.getAutoCommit()) this.connection.commit();
+	}
+
+	/**
+	 * @return {@code true} if the scope joined another scope.
+	 */
+	public boolean isJoined() {
+		return this.outer != null;
+	}
+
+	/**
+	 * Unbinds the scope. Closing the outer scope returns the connection to the pool, applying
+	 * its return strategy to the work which was not committed.
+	 */
+	@Override
+	public void close() throws SQLException {
+		if(this.closed) return;
+		this.checkOwner();
+		this.closed = true;
+		if(this.outer != null) return;
+
+		this.pool.unbind(this);
+		final Connection connection = this.connection;
+		this.connection = null;
+		if(connection != null) {
+			connection.bind(null);
+			connection.close();
+		}
+	}
+
+	private void checkOwner() {
+		if(Thread.currentThread() != this.owner)
+			throw new IllegalStateException("Scope can be used only by the thread which opened it.");
+	}
+}
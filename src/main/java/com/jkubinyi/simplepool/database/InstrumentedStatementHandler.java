@@ -0,0 +1,130 @@
+package com.jkubinyi.simplepool.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * <p>Records latency and row counts of the statements created by a {@link Connection} into
+ * {@link SqlStatistics}. Prepared and callable statements are attributed to the SQL they were
+ * prepared with, plain statements to the SQL passed to each execution.</p>
+ * <p>Rows of a {@link ResultSet} are counted while it is iterated.</p>
+ *
+ * @author jurajkubinyi
+ */
+final class InstrumentedStatementHandler implements InvocationHandler {
+
+	private final Statement statement;
+	private final SqlStatistics statistics;
+	/** Normalized prepared SQL or {@code null} for plain statements. **/
+	private final String preparedSql;
+	/** Entry of the prepared SQL, looked up again once it is replaced in the statistics. **/
+	private SqlStatistics.Entry preparedEntry;
+	/** First SQL added to the batch of a plain statement. **/
+	private String batchSql;
+
+	private InstrumentedStatementHandler(Statement statement, SqlStatistics statistics, String preparedSql) {
+		this.statement = statement;
+		this.statistics = statistics;
+		this.preparedSql = preparedSql == null ? null : SqlStatistics.normalize(preparedSql);
+		this.preparedEntry = this.preparedSql == null ? null : statistics.entry(this.preparedSql);
+	}
+
+	/**
+	 * @param type Interface of the statement.
+	 * @param statement Statement created by the driver.
+	 * @param statistics Statistics to record into.
+	 * @param preparedSql SQL of a prepared or callable statement, {@code null} for plain statements.
+	 * @return Instrumented statement.
+	 */
+	static <S extends Statement> S instrument(Class<S> type, S statement, SqlStatistics statistics, String preparedSql) {
+		return type.cast(Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { type },
+				new InstrumentedStatementHandler(statement, statistics, preparedSql)));
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		final String name = method.getName();
+		if(name.equals("addBatch") && args != null && this.batchSql == null) {
+			this.batchSql = (String) args[0];
+		} else if(name.equals("clearBatch")) {
+			this.batchSql = null;
+		} else if(name.startsWith("execute")) {
+			return this.execute(method, args, name);
+		}
+
+		try {
+			return method.invoke(this.statement, args);
+		} catch(InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private Object execute(Method method, Object[] args, String name) throws Throwable {
+		final SqlStatistics.Entry entry = this.entry(args, name);
+		final long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			final Object result = method.invoke(this.statement, args);
+			failed = false;
+			if(result instanceof ResultSet) {
+				return ResultSetCounter.count((ResultSet) result, entry);
+			} else if(result instanceof Number && !name.equals("execute")) {
+				entry.recordRows(((Number) result).longValue());
+			} else if(result instanceof int[]) {
+				for(int count : (int[]) result) entry.recordRows(count);
+			} else if(result instanceof long[]) {
+				for(long count : (long[]) result) entry.recordRows(count);
+			}
+			return result;
+		} catch(InvocationTargetException e) {
+			throw e.getCause();
+		} finally {
+			entry.record(System.nanoTime() - start, failed);
+			if(name.startsWith("executeBatch") || name.startsWith("executeLargeBatch")) this.batchSql = null;
+		}
+	}
+
+	private SqlStatistics.Entry entry(Object[] args, String name) {
+		if(this.preparedSql != null) {
+			if(this.preparedEntry.isEvicted()) this.preparedEntry = this.statistics.entry(this.preparedSql);
+			return this.preparedEntry;
+		}
+		if(args != null && args.length > 0 && args[0] instanceof String)
+			return this.statistics.entryForSql((String) args[0]);
+		return this.batchSql == null ? this.statistics.entry("<" + name + ">") : this.statistics.entryForSql(this.batchSql);
+	}
+
+	/**
+	 * Counts rows of a result as they are iterated.
+	 */
+	private static final class ResultSetCounter implements InvocationHandler {
+		private final ResultSet result;
+		private final SqlStatistics.Entry entry;
+
+		private ResultSetCounter(ResultSet result, SqlStatistics.Entry entry) {
+			this.result = result;
+			this.entry = entry;
+		}
+
+		static ResultSet count(ResultSet result, SqlStatistics.Entry entry) {
+			return (ResultSet) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+					new ResultSetCounter(result, entry));
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			final Object value;
+			try {
+				value = method.invoke(this.result, args);
+			} catch(InvocationTargetException e) {
+				throw e.getCause();
+			}
+			if(Boolean.TRUE.equals(value) && method.getName().equals("next")) this.entry.recordRows(1);
+			return value;
+		}
+	}
+}
@@ -1,7 +1,12 @@
 package com.jkubinyi.simplepool.database;
 
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Properties;
 
 import com.jkubinyi.simplepool.database.dialect.ImmutableDriverDialect;
 
@@ -11,8 +16,17 @@ public class JDBCUrl {
 	private final String url;
 	private final String username;
 	private final String password;
+	private final Duration connectTimeout;
+	private final Duration loginTimeout;
 	
-	private JDBCUrl(ImmutableDriverDialect dialect, String url, String username, String password) {
+	/** Connection properties built once and passed to the driver on each connect. Never modified after construction. **/
+	private final Properties properties;
+	
+	/** Driver resolved on the first connect, so {@link DriverManager} is not scanned on each connect. **/
+	private volatile Driver driver;
+	
+	private JDBCUrl(ImmutableDriverDialect dialect, String url, String username, String password,
+			Duration connectTimeout, Duration loginTimeout) {
 		Objects.requireNonNull(dialect, "Dialect cannot be null.");
 		Objects.requireNonNull(url, "Url cannot be null.");
 		
@@ -20,6 +34,13 @@ public class JDBCUrl {
 		this.url = url;
 		this.username = username;
 		this.password = password;
+		this.connectTimeout = connectTimeout;
+		this.loginTimeout = loginTimeout;
+		
+		this.properties = new Properties();
+		if(username != null) this.properties.setProperty("user", username);
+		if(password != null) this.properties.setProperty("password", password);
+		dialect.applyTimeouts(this.properties, this.getConnectTimeout(), this.getLoginTimeout());
 	}
 	
 	/**
@@ -29,7 +50,7 @@ public class JDBCUrl {
 	 * @return Anonymous JDBCUrl
 	 */
 	public static JDBCUrl fromAnonymous(ImmutableDriverDialect dialect, String url) {
-		return new JDBCUrl(dialect, url, null, null);
+		return new JDBCUrl(dialect, url, null, null, null, null);
 	}
 	
 	/**
@@ -42,7 +63,43 @@ public class JDBCUrl {
 	 * @return JDBCUrl with authentication during connection
 	 */
 	public static JDBCUrl from(ImmutableDriverDialect dialect, String url, String username, String password) {
-		return new JDBCUrl(dialect, url, username, password);
+		return new JDBCUrl(dialect, url, username, password, null, null);
+	}
+	
+	/**
+	 * Returns a copy of the JDBCUrl with connect and login timeouts applied only to the connections
+	 * of this URL. Timeouts are translated to the driver properties by the dialect.
+	 * @param connectTimeout Timeout of establishing the network connection or {@code null}.
+	 * @param loginTimeout Timeout of the whole login or {@code null}.
+	 * @return JDBCUrl with the timeouts
+	 */
+	public JDBCUrl withTimeouts(Duration connectTimeout, Duration loginTimeout) {
+		return new JDBCUrl(this.dialect, this.url, this.username, this.password, connectTimeout, loginTimeout);
+	}
+	
+	/**
+	 * Opens a new connection directly through the cached {@link Driver}.
+	 * @return Connection created by the driver.
+	 * @throws SQLException When the driver cannot be found or the connection cannot be established.
+	 */
+	public java.sql.Connection connect() throws SQLException {
+		final java.sql.Connection connection = this.getDriver().connect(this.url, this.properties);
+		if(connection == null)
+			throw new SQLException("Driver does not accept the url " + this.url + ".");
+		return connection;
+	}
+	
+	/**
+	 * @return Driver accepting the url, resolved using {@link DriverManager} only once.
+	 * @throws SQLException When no registered driver accepts the url.
+	 */
+	public Driver getDriver() throws SQLException {
+		Driver driver = this.driver;
+		if(driver == null) {
+			driver = DriverManager.getDriver(this.url); // Benign race, any thread can resolve it
+			this.driver = driver;
+		}
+		return driver;
 	}
 
 	/**
@@ -69,4 +126,18 @@ public class JDBCUrl {
 	protected Optional<String> getPassword() {
 		return Optional.ofNullable(password);
 	}
+
+	/**
+	 * @return Gets the timeout of establishing the network connection.
+	 */
+	public Optional<Duration> getConnectTimeout() {
+		return Optional.ofNullable(connectTimeout);
+	}
+
+	/**
+	 * @return Gets the timeout of the whole login.
+	 */
+	public Optional<Duration> getLoginTimeout() {
+		return Optional.ofNullable(loginTimeout);
+	}
 }
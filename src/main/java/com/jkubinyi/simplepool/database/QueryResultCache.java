@@ -0,0 +1,280 @@
+package com.jkubinyi.simplepool.database;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetFactory;
+import javax.sql.rowset.RowSetProvider;
+
+/**
+ * <p>Read-through cache of query results shared by the connections of a {@link ConnectionPool}.
+ * Results are keyed by the SQL and the bound parameters and materialized into a {@link CachedRowSet}.
+ * A hit hands out a {@link CachedRowSet#createCopy() copy} of the rows, so a caller closing or
+ * moving through its result never affects the cached rows or other callers.</p>
+ * <p>Entries expire after the time to live and the least recently used entry is evicted once the
+ * cache is full. Results with more rows than allowed are not cached at all.</p>
+ * <p>Each entry is tagged with the tables it reads. {@link #invalidate(String)} bumps the version of
+ * the tag, making all entries of the tag stale, including the ones being filled at the moment.</p>
+ * <p><b>Only idempotent queries should be cached. Writes are not detected, the application has to
+ * invalidate the affected tables.</b></p>
+ *
+ * @author jurajkubinyi
+ */
+public final class QueryResultCache {
+
+	private final int maxEntries;
+	private final int maxRowsPerEntry;
+	private final long ttlMillis;
+	private final RowSetFactory rowSetFactory;
+
+	/** LRU of the entries guarded by its own monitor. **/
+	private final LinkedHashMap<Key, CachedResult> entries;
+	private final ConcurrentHashMap<String, AtomicLong> tagVersions = new ConcurrentHashMap<>();
+
+	private final AtomicLong hits = new AtomicLong(0);
+	private final AtomicLong misses = new AtomicLong(0);
+
+	private QueryResultCache(int maxEntries, int maxRowsPerEntry, Duration ttl) {
+		this.maxEntries = maxEntries;
+		this.maxRowsPerEntry = maxRowsPerEntry;
+		this.ttlMillis = ttl.toMillis();
+		try {
+			this.rowSetFactory = RowSetProvider.newFactory();
+		} catch(SQLException e) {
+			throw new IllegalStateException("No RowSetFactory is available.", e);
+		}
+		this.entries = new LinkedHashMap<Key, CachedResult>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, CachedResult> eldest) {
+				return this.size() > QueryResultCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Marks all cached results of the table as stale.
+	 *
+	 * @param tableTag Tag of the table.
+	 */
+	public void invalidate(String tableTag) {
+		this.version(tableTag).incrementAndGet();
+	}
+
+	/**
+	 * Removes all cached results.
+	 */
+	public void invalidateAll() {
+		synchronized(this.entries) {
+			this.entries.clear();
+		}
+	}
+
+	/**
+	 * @return Number of queries served from the cache.
+	 */
+	public long getNumHits() {
+		return this.hits.get();
+	}
+
+	/**
+	 * @return Number of queries which had to be executed.
+	 */
+	public long getNumMisses() {
+		return this.misses.get();
+	}
+
+	/**
+	 * @return Number of cached results including the stale ones not evicted yet.
+	 */
+	public int getNumEntries() {
+		synchronized(this.entries) {
+			return this.entries.size();
+		}
+	}
+
+	/**
+	 * @return Fresh result of the key or {@code null}. Counts a hit or a miss.
+	 */
+	ResultSet get(Key key) throws SQLException {
+		CachedResult entry;
+		synchronized(this.entries) {
+			entry = this.entries.get(key);
+			if(entry != null && !this.isFresh(entry)) {
+				this.entries.remove(key);
+				entry = null;
+			}
+		}
+		if(entry == null) {
+			this.misses.incrementAndGet();
+			return null;
+		}
+		this.hits.incrementAndGet();
+		return entry.rows.createCopy(); // Shared views would clear the cached rows on close
+	}
+
+	/**
+	 * Captures versions of the tags. Has to be called before executing the query, so an invalidation
+	 * during the execution is not lost.
+	 */
+	long[] versions(String[] tableTags) {
+		final long[] versions = new long[tableTags.length];
+		for(int i = 0; i < tableTags.length; i++) {
+			versions[i] = this.version(tableTags[i]).get();
+		}
+		return versions;
+	}
+
+	/**
+	 * Materializes the result and caches it if it is small enough.
+	 *
+	 * @param result Result of the executed query, closed by this method.
+	 * @return Result to be handed to the caller.
+	 */
+	ResultSet put(Key key, String[] tableTags, long[] versions, ResultSet result) throws SQLException {
+		final CachedRowSet rows = this.materialize(result);
+		if(rows.size() > this.maxRowsPerEntry) // Too big, caller still gets the whole result
+			return rows;
+
+		final CachedResult entry = new CachedResult(rows, System.currentTimeMillis() + this.ttlMillis, tableTags, versions);
+		synchronized(this.entries) {
+			this.entries.put(key, entry);
+		}
+		return rows.createCopy();
+	}
+
+	/**
+	 * @param value Bound parameter.
+	 * @return Parameter with value equality, {@link #UNCACHEABLE} for streams and LOBs.
+	 */
+	static Object parameter(Object value) {
+		if(value instanceof byte[]) return ByteBuffer.wrap(((byte[]) value).clone());
+		if(value instanceof InputStream || value instanceof Reader || value instanceof Blob || value instanceof Clob)
+			return UNCACHEABLE;
+		return value;
+	}
+
+	/** Marks a parameter without value equality. Queries with such a parameter are never cached. **/
+	static final Object UNCACHEABLE = new Object();
+
+	/**
+	 * @param result Result to be read, closed by this method.
+	 * @return Read-only copy of the result detached from the connection.
+	 */
+	CachedRowSet materialize(ResultSet result) throws SQLException {
+		final CachedRowSet rows = this.rowSetFactory.createCachedRowSet();
+		try {
+			rows.populate(result);
+		} finally {
+			result.close();
+		}
+		rows.setReadOnly(true);
+		return rows;
+	}
+
+	private boolean isFresh(CachedResult entry) {
+		if(System.currentTimeMillis() >= entry.expiresAt) return false;
+		for(int i = 0; i < entry.tableTags.length; i++) {
+			if(this.version(entry.tableTags[i]).get() != entry.versions[i]) return false;
+		}
+		return true;
+	}
+
+	private AtomicLong version(String tableTag) {
+		return this.tagVersions.computeIfAbsent(tableTag, tag -> new AtomicLong(0));
+	}
+
+	/**
+	 * SQL with the bound parameters. Parameters have to implement value equality.
+	 */
+	static final class Key {
+		private final String sql;
+		private final Object[] parameters;
+		private final int hash;
+
+		Key(String sql, Object[] parameters) {
+			this.sql = sql;
+			this.parameters = parameters;
+			this.hash = 31 * sql.hashCode() + Arrays.hashCode(parameters);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(this == obj) return true;
+			if(!(obj instanceof Key)) return false;
+			final Key other = (Key) obj;
+			return this.hash == other.hash && this.sql.equals(other.sql) && Arrays.equals(this.parameters, other.parameters);
+		}
+	}
+
+	private static final class CachedResult {
+		private final CachedRowSet rows;
+		private final long expiresAt;
+		private final String[] tableTags;
+		private final long[] versions;
+
+		private CachedResult(CachedRowSet rows, long expiresAt, String[] tableTags, long[] versions) {
+			this.rows = rows;
+			this.expiresAt = expiresAt;
+			this.tableTags = tableTags;
+			this.versions = versions;
+		}
+	}
+
+	public static class Builder {
+		private int maxEntries = 1000;
+		private int maxRowsPerEntry = 1000;
+		private Duration ttl = Duration.ofSeconds(60);
+
+		/**
+		 * @param maxEntries Maximum number of cached results.
+		 * @return Builder instance.
+		 */
+		public Builder setMaxEntries(int maxEntries) {
+			this.maxEntries = maxEntries;
+			return this;
+		}
+
+		/**
+		 * @param maxRowsPerEntry Results with more rows are not cached.
+		 * @return Builder instance.
+		 */
+		public Builder setMaxRowsPerEntry(int maxRowsPerEntry) {
+			this.maxRowsPerEntry = maxRowsPerEntry;
+			return this;
+		}
+
+		/**
+		 * @param ttl Time after which a cached result expires.
+		 * @return Builder instance.
+		 */
+		public Builder setTtl(Duration ttl) {
+			this.ttl = ttl;
+			return this;
+		}
+
+		public QueryResultCache build() {
+			if(this.maxEntries <= 0 || this.maxRowsPerEntry <= 0)
+				throw new IllegalArgumentException("Cache has to hold at least one entry with one row.");
+			return new QueryResultCache(this.maxEntries, this.maxRowsPerEntry, this.ttl);
+		}
+	}
+}
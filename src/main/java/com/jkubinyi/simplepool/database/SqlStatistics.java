@@ -0,0 +1,276 @@
+package com.jkubinyi.simplepool.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Execution statistics of the SQL run on the connections of a {@link ConnectionPool}, grouped by
+ * the normalized SQL text. Literals are replaced by {@code ?} and whitespace is collapsed, so the
+ * same query with different values shares a single entry.</p>
+ * <p>The table holds at most the configured number of entries. Once it is full, a new SQL replaces
+ * the entry with the least executions out of a random sample and inherits its count (approximate
+ * space-saving top-N), so frequent queries stay in the table while rare ones cycle through the
+ * least used slots.</p>
+ * <p>Recording an already tracked SQL takes no lock: the normalized text of each raw SQL is cached,
+ * entries are looked up in a {@link ConcurrentHashMap} and counted by {@link LongAdder}s and a CAS for
+ * the maximum. Only a new SQL takes the lock of the table. Statements are not instrumented at all
+ * when no statistics are configured.</p>
+ *
+ * @author jurajkubinyi
+ */
+public final class SqlStatistics {
+
+	private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+	private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+	private static final Pattern IN_LIST = Pattern.compile("(?i)\\bIN\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	/** Number of entries compared when choosing the entry to be replaced. **/
+	private static final int EVICTION_SAMPLE = 8;
+
+	private final int maxEntries;
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+	/** Entries by their slot, used to sample the entry to be replaced. Guarded by the table lock. **/
+	private final Entry[] slots;
+	/** Normalized text of the raw SQL, cleared once it holds {@link #maxCachedSql} texts. **/
+	private final ConcurrentHashMap<String, String> normalizedSql = new ConcurrentHashMap<>();
+	private final int maxCachedSql;
+
+	/**
+	 * @param maxEntries Maximum number of tracked SQL texts.
+	 */
+	public SqlStatistics(int maxEntries) {
+		if(maxEntries <= 0)
+			throw new IllegalArgumentException("Statistics have to track at least one SQL.");
+		this.maxEntries = maxEntries;
+		this.slots = new Entry[maxEntries];
+		this.maxCachedSql = Math.max(1024, maxEntries * 4);
+	}
+
+	/**
+	 * @param sql SQL as sent to the driver.
+	 * @return SQL with literals replaced by {@code ?}, lists of parameters collapsed and whitespace normalized.
+	 */
+	public static String normalize(String sql) {
+		String normalized = STRING_LITERAL.matcher(sql).replaceAll("?");
+		normalized = NUMBER_LITERAL.matcher(normalized).replaceAll("?");
+		normalized = IN_LIST.matcher(normalized).replaceAll("IN (?)");
+		return WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+	}
+
+	/**
+	 * @param sql SQL as sent to the driver.
+	 * @return Entry of the SQL normalized using the cache of normalized texts.
+	 */
+	Entry entryForSql(String sql) {
+		String normalized = this.normalizedSql.get(sql);
+		if(normalized == null) {
+			normalized = normalize(sql);
+			if(this.normalizedSql.size() >= this.maxCachedSql) this.normalizedSql.clear(); // Literals not bound as parameters
+			this.normalizedSql.put(sql, normalized);
+		}
+		return this.entry(normalized);
+	}
+
+	/**
+	 * @param normalizedSql SQL normalized by {@link #normalize(String)}.
+	 * @return Entry of the SQL, created if it is not tracked yet.
+	 */
+	Entry entry(String normalizedSql) {
+		final Entry entry = this.entries.get(normalizedSql);
+		if(entry != null) return entry;
+		return this.track(normalizedSql);
+	}
+
+	private synchronized Entry track(String normalizedSql) {
+		Entry entry = this.entries.get(normalizedSql);
+		if(entry != null) return entry;
+
+		final int size = this.entries.size();
+		int slot = size;
+		long inheritedExecutions = 0;
+		if(size >= this.maxEntries) {
+			slot = this.leastUsedSlot();
+			final Entry least = this.slots[slot];
+			least.evicted = true;
+			this.entries.remove(least.sql);
+			inheritedExecutions = least.executions.sum();
+		}
+		entry = new Entry(normalizedSql, inheritedExecutions);
+		this.slots[slot] = entry;
+		this.entries.put(normalizedSql, entry);
+		return entry;
+	}
+
+	/**
+	 * @return Slot of the entry with the least executions out of a random sample. Called with the lock held.
+	 */
+	private int leastUsedSlot() {
+		final boolean sampled = this.maxEntries > EVICTION_SAMPLE;
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		int least = -1;
+		long leastExecutions = Long.MAX_VALUE;
+		for(int i = 0; i < Math.min(EVICTION_SAMPLE, this.maxEntries); i++) {
+			final int candidate = sampled ? random.nextInt(this.maxEntries) : i;
+			final long executions = this.slots[candidate].executions.sum();
+			if(executions < leastExecutions) {
+				least = candidate;
+				leastExecutions = executions;
+			}
+		}
+		return least;
+	}
+
+	/**
+	 * @param limit Maximum number of returned entries.
+	 * @return Entries ordered by the total execution time, the most expensive first.
+	 */
+	public List<Entry> getTop(int limit) {
+		final List<Entry> top = new ArrayList<>(this.entries.values());
+		top.sort(Comparator.comparingLong(Entry::getTotalNanos).reversed());
+		return top.subList(0, Math.min(limit, top.size()));
+	}
+
+	/**
+	 * @param sql SQL, normalized before the lookup.
+	 * @return Entry of the SQL or {@code null} if it is not tracked.
+	 */
+	public Entry get(String sql) {
+		return this.entries.get(normalize(sql));
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public synchronized void reset() {
+		for(Entry entry : this.entries.values()) entry.evicted = true;
+		this.entries.clear();
+		Arrays.fill(this.slots, null);
+	}
+
+	/**
+	 * Statistics of a single normalized SQL. Values are live and read without coordination.
+	 *
+	 * @author jurajkubinyi
+	 */
+	public static final class Entry {
+		private final String sql;
+		/** Lower bound of the executions missed before the entry replaced another one. **/
+		private final long inheritedExecutions;
+		private final LongAdder executions = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final LongAdder rows = new LongAdder();
+		private final AtomicLong maxNanos = new AtomicLong(0);
+		/** Set once the entry is replaced, holders have to look the SQL up again. **/
+		private volatile boolean evicted = false;
+
+		private Entry(String sql, long inheritedExecutions) {
+			this.sql = sql;
+			this.inheritedExecutions = inheritedExecutions;
+			this.executions.add(inheritedExecutions);
+		}
+
+		void record(long nanos, boolean failed) {
+			this.executions.increment();
+			this.totalNanos.add(nanos);
+			if(failed) this.errors.increment();
+			long max;
+			while(nanos > (max = this.maxNanos.get()) && !this.maxNanos.compareAndSet(max, nanos)) {
+				// Retry until the maximum is at least the latency
+			}
+		}
+
+		void recordRows(long count) {
+			if(count > 0) this.rows.add(count);
+		}
+
+		boolean isEvicted() {
+			return this.evicted;
+		}
+
+		/**
+		 * @return Normalized SQL.
+		 */
+		public String getSql() {
+			return sql;
+		}
+
+		/**
+		 * @return Number of executions. May overestimate by {@link #getMaxError()} for SQL which
+		 * replaced another entry.
+		 */
+		public long getExecutions() {
+			return this.executions.sum();
+		}
+
+		/**
+		 * @return Maximum overestimation of {@link #getExecutions()}.
+		 */
+		public long getMaxError() {
+			return this.inheritedExecutions;
+		}
+
+		/**
+		 * @return Number of executions which threw an exception.
+		 */
+		public long getErrors() {
+			return this.errors.sum();
+		}
+
+		/**
+		 * @return Sum of the execution latencies in nanoseconds.
+		 */
+		public long getTotalNanos() {
+			return this.totalNanos.sum();
+		}
+
+		/**
+		 * @return Average execution latency in nanoseconds of the recorded executions.
+		 */
+		public long getAverageNanos() {
+			final long recorded = this.executions.sum() - this.inheritedExecutions;
+			return recorded <= 0 ? 0 : this.totalNanos.sum() / recorded;
+		}
+
+		/**
+		 * @return Maximum execution latency in nanoseconds.
+		 */
+		public long getMaxNanos() {
+			return this.maxNanos.get();
+		}
+
+		/**
+		 * @return Rows updated or read. Rows of a result are counted as the result is iterated.
+		 */
+		public long getRows() {
+			return this.rows.sum();
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder builder = new StringBuilder();
+			builder.append("[sql: ");
+			builder.append(this.sql);
+			builder.append("; executions: ");
+			builder.append(this.getExecutions());
+			builder.append("; errors: ");
+			builder.append(this.getErrors());
+			builder.append("; average: ");
+			builder.append(this.getAverageNanos());
+			builder.append(" ns; max: ");
+			builder.append(this.getMaxNanos());
+			builder.append(" ns; rows: ");
+			builder.append(this.getRows());
+			builder.append("]");
+			return builder.toString();
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package com.jkubinyi.simplepool.database.dialect;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Calls driver specific methods reflectively, so the dialects do not need the drivers on
+ * the compile class path. Looked up methods are cached per connection class. Methods are resolved
+ * on a public class or interface of the driver, as drivers often implement them in non-public classes.
+ * 
+ * @author jurajkubinyi
+ */
+final class DriverMethods {
+
+	private static final Map<String, Optional<Method>> METHODS = new ConcurrentHashMap<>();
+	private static final Logger LOGGER = Logger.getLogger(DriverMethods.class.getName());
+
+	private DriverMethods() {
+	}
+
+	/**
+	 * @param connection Connection created by the driver (not the pool wrapper).
+	 * @param methodName Name of the public method without parameters.
+	 * @return {@code false} if the connection does not have such method.
+	 * @throws SQLException Exception thrown by the method.
+	 */
+	static boolean invoke(Connection connection, String methodName) throws SQLException {
+		final Class<?> type = connection.getClass();
+		final Optional<Method> method = METHODS.computeIfAbsent(type.getName() + '#' + methodName, key -> lookUp(type, methodName));
+		if(!method.isPresent()) return false;
+
+		try {
+			method.get().invoke(connection);
+			return true;
+		} catch(InvocationTargetException e) {
+			if(e.getCause() instanceof SQLException) throw (SQLException) e.getCause();
+			throw new SQLException("Driver method " + methodName + " failed.", e.getCause());
+		} catch(IllegalAccessException e) {
+			LOGGER.log(Level.WARNING, "Driver method " + methodName + " of " + type.getName()
+					+ " is not accessible, falling back to the generic implementation.", e);
+			METHODS.put(type.getName() + '#' + methodName, Optional.empty());
+			return false;
+		}
+	}
+
+	/**
+	 * @return Method declared by the first public class or interface of the hierarchy, empty if there is none.
+	 */
+	static Optional<Method> lookUp(Class<?> type, String methodName) {
+		final Deque<Class<?>> candidates = new ArrayDeque<>();
+		candidates.add(type);
+		while(!candidates.isEmpty()) {
+			final Class<?> candidate = candidates.poll();
+			if(Modifier.isPublic(candidate.getModifiers())) {
+				try {
+					final Method method = candidate.getMethod(methodName);
+					if(Modifier.isPublic(method.getDeclaringClass().getModifiers())) return Optional.of(method);
+				} catch(NoSuchMethodException e) {
+					continue; // Neither its supertypes declare it
+				}
+			}
+			if(candidate.getSuperclass() != null) candidates.add(candidate.getSuperclass());
+			for(Class<?> implemented : candidate.getInterfaces()) candidates.add(implemented);
+		}
+		LOGGER.fine(() -> "Driver method " + methodName + " not found on a public type of " + type.getName() + ".");
+		return Optional.empty();
+	}
+}
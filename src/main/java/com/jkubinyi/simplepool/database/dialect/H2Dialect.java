@@ -0,0 +1,22 @@
+package com.jkubinyi.simplepool.database.dialect;
+
+import java.util.Optional;
+
+/**
+ * Dialect for the H2 database. Embedded connections are validated by the driver without any
+ * round trip. H2 has no statement resetting the session.
+ * 
+ * @author jurajkubinyi
+ */
+public class H2Dialect implements ImmutableDriverDialect {
+
+	@Override
+	public Optional<String> getLinkValidityQuery() {
+		return Optional.of("SELECT 1");
+	}
+
+	@Override
+	public ValidationStrategy getCheapestValidationStrategy() {
+		return ValidationStrategy.DRIVER;
+	}
+}
@@ -2,7 +2,11 @@ package com.jkubinyi.simplepool.database.dialect;
 
 import java.sql.Connection;
 import java.sql.Driver;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
 import java.util.Optional;
+import java.util.Properties;
 
 /**
  * Used to implement {@link Driver} specific configuration for the connection.
@@ -18,4 +22,95 @@ public interface ImmutableDriverDialect {
 	 * @return Representation of the query or empty optional in case of default driver test.
 	 */
 	public Optional<String> getLinkValidityQuery();
+
+	/**
+	 * Translates the timeouts to the driver specific connection properties, so they apply only to the
+	 * connections of a single URL instead of the JVM-wide {@link java.sql.DriverManager#setLoginTimeout(int)}.
+	 * Drivers without such properties ignore the timeouts.
+	 * 
+	 * @param properties Connection properties to be filled.
+	 * @param connectTimeout Timeout of establishing the network connection.
+	 * @param loginTimeout Timeout of the whole login including authentication.
+	 */
+	public default void applyTimeouts(Properties properties, Optional<Duration> connectTimeout, Optional<Duration> loginTimeout) {
+	}
+
+	/**
+	 * @return Engine specific query resetting the session state or empty optional if there is none.
+	 */
+	public default Optional<String> getSessionResetQuery() {
+		return Optional.empty();
+	}
+
+	/**
+	 * @return Validation strategy with the lowest overhead for the driver. By default the
+	 * query if there is one, otherwise the driver.
+	 */
+	public default ValidationStrategy getCheapestValidationStrategy() {
+		return this.getLinkValidityQuery().isPresent() ? ValidationStrategy.QUERY : ValidationStrategy.DRIVER;
+	}
+
+	/**
+	 * @return Session reset strategy with the lowest overhead for the driver. By default the
+	 * query if there is one, otherwise none.
+	 */
+	public default SessionResetStrategy getCheapestSessionResetStrategy() {
+		return this.getSessionResetQuery().isPresent() ? SessionResetStrategy.QUERY : SessionResetStrategy.NONE;
+	}
+
+	/**
+	 * Resets the session using the driver specific API.
+	 * 
+	 * @param connection Connection created by the driver.
+	 * @return {@code false} if the driver does not provide such API.
+	 * @throws SQLException When the reset fails.
+	 */
+	public default boolean resetSessionNatively(Connection connection) throws SQLException {
+		return false;
+	}
+
+	/**
+	 * @param connection Connection created by the driver.
+	 * @param strategy Strategy to be used. Query strategy without a query falls back to the driver.
+	 * @param timeoutInS Maximum number of seconds to wait for the result.
+	 * @return {@code true} if the connection is alive.
+	 * @throws SQLException When the validation fails.
+	 */
+	public default boolean validate(Connection connection, ValidationStrategy strategy, int timeoutInS) throws SQLException {
+		if(strategy == ValidationStrategy.CHEAPEST) strategy = this.getCheapestValidationStrategy();
+
+		final Optional<String> query = this.getLinkValidityQuery();
+		if(strategy == ValidationStrategy.QUERY && query.isPresent()) {
+			try(Statement st = connection.createStatement()) {
+				st.setQueryTimeout(timeoutInS);
+				st.execute(query.get());
+				return true;
+			}
+		}
+		return connection.isValid(timeoutInS);
+	}
+
+	/**
+	 * Resets the session. A reset also drops the settings applied when the connection was created
+	 * (autocommit, isolation level, catalog), the caller has to apply them again.
+	 * 
+	 * @param connection Connection created by the driver.
+	 * @param strategy Strategy to be used.
+	 * @return {@code true} if the session was reset.
+	 * @throws SQLException When the reset fails.
+	 */
+	public default boolean resetSession(Connection connection, SessionResetStrategy strategy) throws SQLException {
+		if(strategy == SessionResetStrategy.CHEAPEST) strategy = this.getCheapestSessionResetStrategy();
+		if(strategy == SessionResetStrategy.NONE) return false;
+		if(strategy == SessionResetStrategy.DRIVER && this.resetSessionNatively(connection)) return true;
+
+		final Optional<String> query = this.getSessionResetQuery();
+		if(query.isPresent()) {
+			try(Statement st = connection.createStatement()) {
+				st.execute(query.get());
+			}
+			return true;
+		}
+		return false;
+	}
 }
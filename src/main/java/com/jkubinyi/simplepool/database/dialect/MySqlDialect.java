@@ -1,12 +1,43 @@
 package com.jkubinyi.simplepool.database.dialect;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
 import java.util.Optional;
+import java.util.Properties;
 
+/**
+ * Dialect for MySQL Connector/J. The validity query starts with the {@code ping} comment which
+ * makes the driver send a protocol level ping instead of parsing and executing the query.
+ * Session is reset natively using {@code COM_RESET_CONNECTION} via {@code resetServerState()}, which
+ * also resets the autocommit, isolation level and catalog of the session.
+ * 
+ * @author jurajkubinyi
+ */
 public class MySqlDialect implements ImmutableDriverDialect {
 	
 	@Override
 	public Optional<String> getLinkValidityQuery() {
-		return Optional.of("SELECT 1");
+		return Optional.of("/* ping */ SELECT 1");
+	}
+
+	/**
+	 * Connector/J has only the connect timeout, the longer of both timeouts is used.
+	 */
+	@Override
+	public void applyTimeouts(Properties properties, Optional<Duration> connectTimeout, Optional<Duration> loginTimeout) {
+		final long timeout = Math.max(connectTimeout.orElse(Duration.ZERO).toMillis(), loginTimeout.orElse(Duration.ZERO).toMillis());
+		if(timeout > 0) properties.setProperty("connectTimeout", Long.toString(timeout));
+	}
+
+	@Override
+	public SessionResetStrategy getCheapestSessionResetStrategy() {
+		return SessionResetStrategy.DRIVER;
+	}
+
+	@Override
+	public boolean resetSessionNatively(Connection connection) throws SQLException {
+		return DriverMethods.invoke(connection, "resetServerState");
 	}
 
 }
@@ -0,0 +1,33 @@
+package com.jkubinyi.simplepool.database.dialect;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Dialect for the Oracle JDBC driver. Validation uses the driver which performs a light-weight
+ * ping instead of executing the query against {@code DUAL}.
+ * 
+ * @author jurajkubinyi
+ */
+public class OracleDialect implements ImmutableDriverDialect {
+
+	@Override
+	public Optional<String> getLinkValidityQuery() {
+		return Optional.of("SELECT 1 FROM DUAL");
+	}
+
+	/**
+	 * The Oracle driver has only the network connect timeout, the longer of both timeouts is used.
+	 */
+	@Override
+	public void applyTimeouts(Properties properties, Optional<Duration> connectTimeout, Optional<Duration> loginTimeout) {
+		final long timeout = Math.max(connectTimeout.orElse(Duration.ZERO).toMillis(), loginTimeout.orElse(Duration.ZERO).toMillis());
+		if(timeout > 0) properties.setProperty("oracle.net.CONNECT_TIMEOUT", Long.toString(timeout));
+	}
+
+	@Override
+	public ValidationStrategy getCheapestValidationStrategy() {
+		return ValidationStrategy.DRIVER;
+	}
+}
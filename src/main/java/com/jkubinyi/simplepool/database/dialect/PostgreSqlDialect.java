@@ -0,0 +1,53 @@
+package com.jkubinyi.simplepool.database.dialect;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Dialect for the PostgreSQL JDBC driver. Validation uses the driver which sends an empty query,
+ * the session is reset using {@code DISCARD ALL} which the driver recognizes and drops its cache
+ * of server prepared statements accordingly. As {@code DISCARD ALL} cannot run inside a transaction
+ * block, connections not in autocommit mode are switched to it for the time of the reset.
+ * 
+ * @author jurajkubinyi
+ */
+public class PostgreSqlDialect implements ImmutableDriverDialect {
+
+	@Override
+	public Optional<String> getLinkValidityQuery() {
+		return Optional.of("SELECT 1");
+	}
+
+	@Override
+	public Optional<String> getSessionResetQuery() {
+		return Optional.of("DISCARD ALL");
+	}
+
+	@Override
+	public boolean resetSession(Connection connection, SessionResetStrategy strategy) throws SQLException {
+		if(strategy == SessionResetStrategy.NONE || connection.getAutoCommit())
+			return ImmutableDriverDialect.super.resetSession(connection, strategy);
+
+		connection.rollback(); // Work left by the borrower must not be committed by switching to autocommit
+		connection.setAutoCommit(true);
+		try {
+			return ImmutableDriverDialect.super.resetSession(connection, strategy);
+		} finally {
+			connection.setAutoCommit(false);
+		}
+	}
+
+	@Override
+	public void applyTimeouts(Properties properties, Optional<Duration> connectTimeout, Optional<Duration> loginTimeout) {
+		connectTimeout.ifPresent(timeout -> properties.setProperty("connectTimeout", Long.toString(Math.max(1, timeout.getSeconds()))));
+		loginTimeout.ifPresent(timeout -> properties.setProperty("loginTimeout", Long.toString(Math.max(1, timeout.getSeconds()))));
+	}
+
+	@Override
+	public ValidationStrategy getCheapestValidationStrategy() {
+		return ValidationStrategy.DRIVER;
+	}
+}
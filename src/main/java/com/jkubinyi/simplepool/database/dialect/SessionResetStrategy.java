@@ -0,0 +1,18 @@
+package com.jkubinyi.simplepool.database.dialect;
+
+/**
+ * How the session state (variables, temporary tables, prepared statements, etc.) is reset before
+ * the connection is reused by another borrower.
+ * 
+ * @author jurajkubinyi
+ */
+public enum SessionResetStrategy {
+	/** Session is kept as it is. **/
+	NONE,
+	/** Executes {@link ImmutableDriverDialect#getSessionResetQuery()}. **/
+	QUERY,
+	/** Uses the driver specific API, falls back to the query if the driver does not provide one. **/
+	DRIVER,
+	/** Uses {@link ImmutableDriverDialect#getCheapestSessionResetStrategy()}. **/
+	CHEAPEST
+}
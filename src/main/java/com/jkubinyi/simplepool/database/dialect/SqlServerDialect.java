@@ -0,0 +1,41 @@
+package com.jkubinyi.simplepool.database.dialect;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Dialect for the Microsoft JDBC driver. Session is reset natively using {@code resetPooledConnection()}
+ * which makes the driver run {@code sp_reset_connection} with the next request, without a round trip.
+ * 
+ * @author jurajkubinyi
+ */
+public class SqlServerDialect implements ImmutableDriverDialect {
+
+	@Override
+	public Optional<String> getLinkValidityQuery() {
+		return Optional.of("SELECT 1");
+	}
+
+	/**
+	 * The Microsoft driver covers connecting and login by a single timeout, the longer of both timeouts is used.
+	 */
+	@Override
+	public void applyTimeouts(Properties properties, Optional<Duration> connectTimeout, Optional<Duration> loginTimeout) {
+		final long timeout = Math.max(connectTimeout.orElse(Duration.ZERO).getSeconds(), loginTimeout.orElse(Duration.ZERO).getSeconds());
+		if(connectTimeout.isPresent() || loginTimeout.isPresent())
+			properties.setProperty("loginTimeout", Long.toString(Math.max(1, timeout)));
+	}
+
+	@Override
+	public SessionResetStrategy getCheapestSessionResetStrategy() {
+		return SessionResetStrategy.DRIVER;
+	}
+
+	@Override
+	public boolean resetSessionNatively(Connection connection) throws SQLException {
+		return DriverMethods.invoke(connection, "resetPooledConnection");
+	}
+}
@@ -0,0 +1,15 @@
+package com.jkubinyi.simplepool.database.dialect;
+
+/**
+ * How the liveness of a connection is verified.
+ * 
+ * @author jurajkubinyi
+ */
+public enum ValidationStrategy {
+	/** Executes {@link ImmutableDriverDialect#getLinkValidityQuery()}. **/
+	QUERY,
+	/** Uses {@link java.sql.Connection#isValid(int)} which is a native ping for most drivers. **/
+	DRIVER,
+	/** Uses {@link ImmutableDriverDialect#getCheapestValidationStrategy()}. **/
+	CHEAPEST
+}
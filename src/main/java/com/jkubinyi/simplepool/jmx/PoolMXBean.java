@@ -0,0 +1,66 @@
+package com.jkubinyi.simplepool.jmx;
+
+/**
+ * Management interface of the {@link com.jkubinyi.simplepool.GenericPoolImpl}. All attributes are
+ * read from a snapshot refreshed at most once per refresh interval, so polling by monitoring
+ * tools does not touch the borrow path. Latencies are in microseconds.
+ * 
+ * @author jurajkubinyi
+ */
+public interface PoolMXBean {
+
+	public int getNumActive();
+
+	public int getNumIdle();
+
+	public long getNumCreated();
+
+	public long getNumDestroyed();
+
+	public int getNumWaiters();
+
+	public long getNumTimeouts();
+
+	public long getNumShed();
+
+	public long getNumWaited();
+
+	public int getNumPendingDestruction();
+
+	public long getAverageHoldTimeMicros();
+
+	public long getBorrowLatencyP50Micros();
+
+	public long getBorrowLatencyP95Micros();
+
+	public long getBorrowLatencyP99Micros();
+
+	public long getBorrowLatencyMaxMicros();
+
+	/**
+	 * @return Timestamp in miliseconds of the snapshot the attributes are read from.
+	 */
+	public long getSnapshotTimestamp();
+
+	public int getMinPoolIdleSize();
+
+	public int getMaxPoolSize();
+
+	public boolean isValidationEnabled();
+
+	/**
+	 * @param validationEnabled {@code false} to hand out idle objects without validating them.
+	 */
+	public void setValidationEnabled(boolean validationEnabled);
+
+	/**
+	 * Destroys all idle objects and recreates the minimum idle objects.
+	 */
+	public void clear();
+
+	/**
+	 * @param minPoolIdleSize New minimum of idle objects.
+	 * @param maxPoolSize New maximum of all objects.
+	 */
+	public void resize(int minPoolIdleSize, int maxPoolSize);
+}
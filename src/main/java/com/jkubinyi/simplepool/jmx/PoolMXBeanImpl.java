@@ -0,0 +1,203 @@
+package com.jkubinyi.simplepool.jmx;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanRegistration;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.jkubinyi.simplepool.GenericPoolImpl;
+import com.jkubinyi.simplepool.PoolStatistics;
+
+/**
+ * Exposes the {@link GenericPoolImpl} over JMX. Statistics are cached for the refresh interval,
+ * concurrent readers of an expired snapshot may refresh it twice which is cheaper than locking.
+ * The pool is referenced weakly, so a registered bean does not keep an unclosed pool alive. Once the pool
+ * is collected, the bean unregisters itself on the next access or {@link #unregisterIfCollected()}.
+ * 
+ * @author jurajkubinyi
+ */
+public class PoolMXBeanImpl implements PoolMXBean, MBeanRegistration {
+
+	private final WeakReference<GenericPoolImpl<?>> pool;
+	private final long refreshIntervalNanos;
+	private volatile PoolStatistics snapshot;
+	private volatile long snapshotTime;
+	private volatile MBeanServer server;
+	private volatile ObjectName name;
+
+	/**
+	 * @param pool Pool to be exposed.
+	 * @param refreshIntervalMillis Minimum interval between two snapshots.
+	 */
+	public PoolMXBeanImpl(GenericPoolImpl<?> pool, long refreshIntervalMillis) {
+		this.pool = new WeakReference<>(pool);
+		this.refreshIntervalNanos = TimeUnit.MILLISECONDS.toNanos(refreshIntervalMillis);
+	}
+
+	@Override
+	public ObjectName preRegister(MBeanServer server, ObjectName name) {
+		this.server = server;
+		this.name = name;
+		return name;
+	}
+
+	@Override
+	public void postRegister(Boolean registrationDone) {}
+
+	@Override
+	public void preDeregister() {}
+
+	@Override
+	public void postDeregister() {
+		this.server = null;
+		this.name = null;
+	}
+
+	/**
+	 * Unregisters the bean if the pool was garbage collected without being closed.
+	 *
+	 * @return {@code true} if the pool is gone.
+	 */
+	public boolean unregisterIfCollected() {
+		if(this.pool.get() != null) return false;
+
+		final MBeanServer server = this.server;
+		final ObjectName name = this.name;
+		if(server != null && name != null) {
+			try {
+				server.unregisterMBean(name);
+			} catch(JMException e) {
+				// Already unregistered concurrently
+			}
+		}
+		return true;
+	}
+
+	private GenericPoolImpl<?> pool() {
+		final GenericPoolImpl<?> pool = this.pool.get();
+		if(pool == null) {
+			this.unregisterIfCollected();
+			throw new IllegalStateException("Pool has been garbage collected.");
+		}
+		return pool;
+	}
+
+	private PoolStatistics snapshot() {
+		final long now = System.nanoTime();
+		PoolStatistics statistics = this.snapshot;
+		if(statistics == null || now - this.snapshotTime >= this.refreshIntervalNanos) {
+			statistics = this.pool().getStatistics();
+			this.snapshot = statistics;
+			this.snapshotTime = now;
+		}
+		return statistics;
+	}
+
+	@Override
+	public int getNumActive() {
+		return this.snapshot().getNumActive();
+	}
+
+	@Override
+	public int getNumIdle() {
+		return this.snapshot().getNumIdle();
+	}
+
+	@Override
+	public long getNumCreated() {
+		return this.snapshot().getNumCreated();
+	}
+
+	@Override
+	public long getNumDestroyed() {
+		return this.snapshot().getNumDestroyed();
+	}
+
+	@Override
+	public int getNumWaiters() {
+		return this.snapshot().getNumWaiters();
+	}
+
+	@Override
+	public long getNumTimeouts() {
+		return this.snapshot().getNumTimeouts();
+	}
+
+	@Override
+	public long getNumShed() {
+		return this.snapshot().getNumShed();
+	}
+
+	@Override
+	public long getNumWaited() {
+		return this.snapshot().getNumWaited();
+	}
+
+	@Override
+	public int getNumPendingDestruction() {
+		return this.snapshot().getNumPendingDestruction();
+	}
+
+	@Override
+	public long getAverageHoldTimeMicros() {
+		return TimeUnit.NANOSECONDS.toMicros(this.snapshot().getAverageHoldTime());
+	}
+
+	@Override
+	public long getBorrowLatencyP50Micros() {
+		return TimeUnit.NANOSECONDS.toMicros(this.snapshot().getBorrowLatencyP50());
+	}
+
+	@Override
+	public long getBorrowLatencyP95Micros() {
+		return TimeUnit.NANOSECONDS.toMicros(this.snapshot().getBorrowLatencyP95());
+	}
+
+	@Override
+	public long getBorrowLatencyP99Micros() {
+		return TimeUnit.NANOSECONDS.toMicros(this.snapshot().getBorrowLatencyP99());
+	}
+
+	@Override
+	public long getBorrowLatencyMaxMicros() {
+		return TimeUnit.NANOSECONDS.toMicros(this.snapshot().getBorrowLatencyMax());
+	}
+
+	@Override
+	public long getSnapshotTimestamp() {
+		return this.snapshot().getTimestamp();
+	}
+
+	@Override
+	public int getMinPoolIdleSize() {
+		return this.pool().getConfiguration().getMinPoolIdleSize();
+	}
+
+	@Override
+	public int getMaxPoolSize() {
+		return this.pool().getConfiguration().getMaxPoolSize();
+	}
+
+	@Override
+	public boolean isValidationEnabled() {
+		return this.pool().isValidationEnabled();
+	}
+
+	@Override
+	public void setValidationEnabled(boolean validationEnabled) {
+		this.pool().setValidationEnabled(validationEnabled);
+	}
+
+	@Override
+	public void clear() {
+		this.pool().clear();
+	}
+
+	@Override
+	public void resize(int minPoolIdleSize, int maxPoolSize) {
+		this.pool().resize(minPoolIdleSize, maxPoolSize);
+	}
+}
@@ -0,0 +1,8 @@
+/**
+ * JMX instrumentation of the pools. Attributes are served from periodically refreshed snapshots.
+ */
+/**
+ * @author jurajkubinyi
+ *
+ */
+package com.jkubinyi.simplepool.jmx;
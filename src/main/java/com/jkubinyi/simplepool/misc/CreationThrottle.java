@@ -0,0 +1,205 @@
+package com.jkubinyi.simplepool.misc;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Limits how fast and how many objects a factory creates at once. Used by factories of
+ * objects backed by a remote resource, so a recovering server is not hit by a handshake from
+ * every borrower which found an empty pool.</p>
+ * <ul>
+ * <li><b>Rate</b> is limited by a token bucket refilled at the configured rate. Burst equals the rate
+ * per second.</li>
+ * <li><b>Concurrency</b> is limited by the number of creations in flight. A caller over the limit
+ * waits for an in-flight creation to complete and then makes its own creation, so a server sees at
+ * most the limit of concurrent handshakes, not fewer handshakes in total. If the creation waited for
+ * fails the caller fails with the same cause without trying itself. A caller waiting only for a token
+ * waits for the token, regardless of the creations in flight.</li>
+ * <li><b>Backoff</b> starts after a failed creation and doubles with each following failure up to the
+ * maximum. Callers fail fast during backoff. The first successful creation resets it.</li>
+ * </ul>
+ * <p>Creations made of several attempts (e.g. failing over to another server) take a permit for
+ * each attempt using {@link #acquire(long)}, {@link #releaseForRetry()} and {@link #release(Exception)}.</p>
+ * <p>No caller waits past the configured maximum wait nor past the deadline of its borrower.</p>
+ *
+ * @author jurajkubinyi
+ */
+public final class CreationThrottle {
+
+	private final double permitsPerNano;
+	private final double burst;
+	private final int maxConcurrent;
+	private final long initialBackoffNanos;
+	private final long maxBackoffNanos;
+	private final long maxWaitNanos;
+
+	// Guarded by the monitor of this instance
+	private double tokens;
+	private long lastRefill = System.nanoTime();
+	private int inFlight = 0;
+	private long completions = 0;
+	private long failures = 0;
+	private long backoffNanos = 0;
+	private long backoffUntil = 0;
+	private boolean backingOff = false;
+	private Exception lastFailure;
+
+	private final AtomicLong rejected = new AtomicLong(0);
+	private final AtomicLong waitedForInFlight = new AtomicLong(0);
+
+	/**
+	 * @param permitsPerSecond Maximum creations per second, non-positive for unlimited.
+	 * @param maxConcurrent Maximum creations in flight, non-positive for unlimited.
+	 * @param initialBackoff Backoff after the first failure in miliseconds.
+	 * @param maxBackoff Maximum backoff in miliseconds.
+	 * @param maxWait Maximum time in miliseconds a caller waits for a permit.
+	 */
+	public CreationThrottle(int permitsPerSecond, int maxConcurrent, long initialBackoff, long maxBackoff, long maxWait) {
+		this.permitsPerNano = permitsPerSecond > 0 ? permitsPerSecond / 1e9 : 0;
+		this.burst = permitsPerSecond > 0 ? permitsPerSecond : 0;
+		this.tokens = this.burst;
+		this.maxConcurrent = maxConcurrent > 0 ? maxConcurrent : Integer.MAX_VALUE;
+		this.initialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, initialBackoff));
+		this.maxBackoffNanos = Math.max(this.initialBackoffNanos, TimeUnit.MILLISECONDS.toNanos(maxBackoff));
+		this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWait));
+	}
+
+	/**
+	 * Runs the creator once a permit is available.
+	 *
+	 * @param creator Creates the object.
+	 * @return Object returned by the creator.
+	 * @throws IllegalStateException When throttled: during backoff, after the creation waited for failed
+	 * or when no permit is available in time. Cause is the last failure if there is any.
+	 * @throws Exception Thrown by the creator.
+	 */
+	public <T> T create(Callable<T> creator) throws Exception {
+		this.acquire(-1);
+
+		Exception failure = null;
+		try {
+			return creator.call();
+		} catch(Exception e) {
+			failure = e;
+			throw e;
+		} finally {
+			this.release(failure);
+		}
+	}
+
+	/**
+	 * Takes a permit for a single attempt. Has to be followed by {@link #releaseForRetry()} or
+	 * {@link #release(Exception)}.
+	 *
+	 * @param borrowDeadline Deadline of the borrower in {@link System#nanoTime()} or negative if there is none.
+	 * The caller waits till the earlier of it and the configured maximum wait.
+	 * @throws IllegalStateException When throttled, see {@link #create(Callable)}.
+	 * @throws InterruptedException When interrupted while waiting for a permit.
+	 */
+	public synchronized void acquire(long borrowDeadline) throws InterruptedException {
+		long deadline = System.nanoTime() + this.maxWaitNanos;
+		if(borrowDeadline >= 0 && borrowDeadline - deadline < 0) deadline = borrowDeadline;
+		while(true) {
+			final long now = System.nanoTime();
+			if(this.backingOff && now - this.backoffUntil < 0)
+				throw this.rejected("Creation is backing off after a failure.");
+
+			this.refill(now);
+			final boolean hasToken = this.permitsPerNano == 0 || this.tokens >= 1;
+			if(hasToken && this.inFlight < this.maxConcurrent) {
+				if(this.permitsPerNano > 0) this.tokens -= 1;
+				this.inFlight++;
+				return;
+			}
+
+			final long remaining = deadline - now;
+			if(remaining <= 0)
+				throw this.rejected("No creation permit available in time.");
+
+			if(this.inFlight >= this.maxConcurrent) { // Wait for a creation in flight, fail with it
+				final long completions = this.completions;
+				final long failures = this.failures;
+				this.waitedForInFlight.incrementAndGet();
+				TimeUnit.NANOSECONDS.timedWait(this, remaining);
+				if(this.failures != failures)
+					throw this.rejected("Creation in flight failed.");
+				if(this.completions == completions) continue; // Timeout, spurious wakeup
+			} else { // Wait for the next token
+				final long tokenNanos = (long) Math.ceil((1 - this.tokens) / this.permitsPerNano);
+				TimeUnit.NANOSECONDS.timedWait(this, Math.min(remaining, Math.max(1, tokenNanos)));
+			}
+		}
+	}
+
+	/**
+	 * Releases the permit of an attempt which is followed by another attempt of the same creation.
+	 * Does not affect the backoff.
+	 */
+	public synchronized void releaseForRetry() {
+		this.inFlight--;
+		this.completions++;
+		this.notifyAll();
+	}
+
+	/**
+	 * Releases the permit of the last attempt of a creation.
+	 *
+	 * @param failure Failure of the creation which starts the backoff or {@code null} on success.
+	 */
+	public synchronized void release(Exception failure) {
+		this.inFlight--;
+		this.completions++;
+		if(failure == null) {
+			this.backingOff = false;
+			this.backoffNanos = 0;
+			this.lastFailure = null;
+		} else {
+			this.failures++;
+			this.backoffNanos = this.backoffNanos == 0 ? this.initialBackoffNanos : Math.min(this.backoffNanos * 2, this.maxBackoffNanos);
+			this.backoffUntil = System.nanoTime() + this.backoffNanos;
+			this.backingOff = this.backoffNanos > 0;
+			this.lastFailure = failure;
+		}
+		this.notifyAll();
+	}
+
+	private void refill(long now) {
+		if(this.permitsPerNano == 0) return;
+		this.tokens = Math.min(this.burst, this.tokens + (now - this.lastRefill) * this.permitsPerNano);
+		this.lastRefill = now;
+	}
+
+	private IllegalStateException rejected(String message) {
+		this.rejected.incrementAndGet();
+		return new IllegalStateException(message, this.lastFailure);
+	}
+
+	/**
+	 * @return Number of creations currently in flight.
+	 */
+	public synchronized int getInFlight() {
+		return this.inFlight;
+	}
+
+	/**
+	 * @return Number of callers rejected without creating.
+	 */
+	public long getNumRejected() {
+		return this.rejected.get();
+	}
+
+	/**
+	 * @return Number of times a caller over the concurrency limit waited for a creation in flight.
+	 */
+	public long getNumWaitedForInFlight() {
+		return this.waitedForInFlight.get();
+	}
+
+	/**
+	 * @return Current backoff in miliseconds, 0 when the last creation succeeded.
+	 */
+	public synchronized long getCurrentBackoff() {
+		return TimeUnit.NANOSECONDS.toMillis(this.backoffNanos);
+	}
+}
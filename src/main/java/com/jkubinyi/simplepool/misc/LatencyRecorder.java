@@ -0,0 +1,117 @@
+package com.jkubinyi.simplepool.misc;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Ring of the most recent latency samples. The ring is split into stripes picked by the recording
+ * thread, so recording is an atomic increment of a stripe counter shared only by a fraction of the
+ * threads and a plain array write. It can be called on the hot path without any lock.</p>
+ * <p>Every sample carries the time it was recorded at. A stripe written by a busy thread wraps sooner
+ * than the others, so the snapshot only keeps the samples not older than the oldest sample still held
+ * by any wrapped stripe. Stale samples of quiet stripes therefore do not mix into fresh percentiles.</p>
+ * <p>Readers copy the stripes without coordination with writers. A sample being overwritten during the
+ * copy is either the old or the new value, which is acceptable for statistical purposes.</p>
+ *
+ * @author jurajkubinyi
+ */
+public final class LatencyRecorder {
+
+	/** Maximum number of stripes, enough to spread the writers of a single pool. **/
+	private static final int MAX_STRIPES = 16;
+
+	private final Stripe[] stripes;
+	private final int mask;
+
+	/**
+	 * @param capacity Number of the most recent samples kept.
+	 */
+	public LatencyRecorder(int capacity) {
+		if(capacity <= 0)
+			throw new IllegalArgumentException("Capacity has to be positive.");
+
+		int count = 1;
+		final int wanted = Math.min(Math.min(MAX_STRIPES, Runtime.getRuntime().availableProcessors()), capacity);
+		while(count < wanted) count <<= 1;
+		if(count > capacity) count >>= 1;
+
+		this.stripes = new Stripe[count];
+		for(int i = 0; i < count; i++) {
+			this.stripes[i] = new Stripe(capacity / count + (i < capacity % count ? 1 : 0));
+		}
+		this.mask = count - 1;
+	}
+
+	/**
+	 * @param nanos Latency of a single operation in nanoseconds.
+	 */
+	public void record(long nanos) {
+		final Stripe stripe = this.stripes[(int) Thread.currentThread().getId() & this.mask];
+		final int index = (int) (stripe.position.getAndIncrement() % stripe.samples.length);
+		stripe.samples[index] = nanos;
+		stripe.times[index] = System.nanoTime();
+	}
+
+	/**
+	 * @return Copy of the recent samples sorted in ascending order.
+	 */
+	public long[] sortedSnapshot() {
+		final long[][] samples = new long[this.stripes.length][];
+		final long[][] times = new long[this.stripes.length][];
+		int total = 0;
+		boolean wrapped = false;
+		long cutoff = 0;
+		for(int i = 0; i < this.stripes.length; i++) {
+			final Stripe stripe = this.stripes[i];
+			final long position = stripe.position.get();
+			final int size = (int) Math.min(position, stripe.samples.length);
+			samples[i] = Arrays.copyOf(stripe.samples, size);
+			times[i] = Arrays.copyOf(stripe.times, size);
+			total += size;
+			if(position > size && size > 0) {
+				long oldest = times[i][0];
+				for(long time : times[i]) {
+					if(time - oldest < 0) oldest = time;
+				}
+				if(!wrapped || oldest - cutoff > 0) cutoff = oldest;
+				wrapped = true;
+			}
+		}
+
+		int size = 0;
+		final long[] snapshot = new long[total];
+		for(int i = 0; i < samples.length; i++) {
+			for(int j = 0; j < samples[i].length; j++) {
+				if(!wrapped || times[i][j] - cutoff >= 0) snapshot[size++] = samples[i][j];
+			}
+		}
+		Arrays.sort(snapshot, 0, size);
+		return size == snapshot.length ? snapshot : Arrays.copyOf(snapshot, size);
+	}
+
+	/**
+	 * @param sorted Samples sorted in ascending order.
+	 * @param percentile Percentile between 0 and 100.
+	 * @return Sample at the percentile using the nearest-rank method or 0 if there are no samples.
+	 */
+	public static long percentile(long[] sorted, double percentile) {
+		if(sorted.length == 0) return 0;
+		final int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+		return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+	}
+
+	/**
+	 * Part of the ring written by a subset of the threads.
+	 */
+	private static final class Stripe {
+		private final long[] samples;
+		/** {@link System#nanoTime()} of the sample at the same index. **/
+		private final long[] times;
+		private final AtomicLong position = new AtomicLong(0);
+
+		private Stripe(int capacity) {
+			this.samples = new long[capacity];
+			this.times = new long[capacity];
+		}
+	}
+}
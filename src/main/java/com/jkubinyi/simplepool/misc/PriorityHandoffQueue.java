@@ -0,0 +1,208 @@
+package com.jkubinyi.simplepool.misc;
+
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>Queue of threads waiting for an element which is handed directly to the best waiter instead of
+ * being put into a shared collection where any thread could grab it.</p>
+ * <p>Waiters are ordered by a virtual deadline {@code registration time + rank * aging}. A waiter of
+ * a worse rank therefore overtakes better ranked waiters registered more than {@code aging} later
+ * for each rank of difference, so no waiter is starved forever. Waiters of the same virtual
+ * deadline are served in the registration order.</p>
+ *
+ * @author jurajkubinyi
+ *
+ * @param <E> Type of the handed over elements.
+ */
+public final class PriorityHandoffQueue<E> {
+
+	private static final Object CANCELLED = new Object();
+
+	/** Guarded by the queue monitor. **/
+	private final PriorityQueue<Waiter<E>> waiters = new PriorityQueue<>();
+	private final AtomicInteger numOfWaiters = new AtomicInteger(0);
+	private final long agingNanos;
+	private long sequence = 0;
+	private volatile boolean closed = false;
+
+	/**
+	 * @param agingNanos Time after which a waiter gains one rank.
+	 */
+	public PriorityHandoffQueue(long agingNanos) {
+		this.agingNanos = agingNanos;
+	}
+
+	/**
+	 * @return {@code true} if there is at least one registered waiter. Does not take any lock.
+	 */
+	public boolean hasWaiters() {
+		return this.numOfWaiters.get() > 0;
+	}
+
+	/**
+	 * Registers the current thread as a waiter. The caller must either receive an element using
+	 * {@link #await(Waiter, long)} or call {@link #cancel(Waiter)}.
+	 *
+	 * @param rank Rank of the waiter, lower rank is served first.
+	 * @return Registration of the waiter.
+	 */
+	public Waiter<E> register(int rank) {
+		final long virtualDeadline = System.nanoTime() + rank * this.agingNanos;
+		synchronized(this) {
+			final Waiter<E> waiter = new Waiter<>(Thread.currentThread(), rank, virtualDeadline, this.sequence++);
+			this.waiters.add(waiter);
+			this.numOfWaiters.incrementAndGet();
+			return waiter;
+		}
+	}
+
+	/**
+	 * Hands the element over to the best waiter with rank at most {@code maxRank}.
+	 *
+	 * @param element Element to be handed over.
+	 * @param maxRank Worst rank which can receive the element.
+	 * @return {@code false} if there is no such waiter and the caller keeps the element.
+	 */
+	public boolean offer(E element, int maxRank) {
+		if(!this.hasWaiters()) return false;
+
+		synchronized(this) {
+			if(maxRank == Integer.MAX_VALUE) {
+				Waiter<E> waiter;
+				while((waiter = this.waiters.poll()) != null) {
+					this.numOfWaiters.decrementAndGet();
+					if(waiter.complete(element)) return true;
+				}
+				return false;
+			}
+
+			// Restricted offer has to find the best eligible waiter, the heap is not ordered by the rank
+			Waiter<E> best = null;
+			for(Waiter<E> waiter : this.waiters) {
+				if(waiter.rank <= maxRank && (best == null || waiter.compareTo(best) < 0)) best = waiter;
+			}
+			if(best != null) {
+				this.waiters.remove(best);
+				this.numOfWaiters.decrementAndGet();
+				if(best.complete(element)) return true;
+				return this.offer(element, maxRank); // Waiter was cancelled meanwhile
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Parks the current thread until an element is handed over, the deadline passes or the queue is closed.
+	 *
+	 * @param waiter Registration of the current thread.
+	 * @param deadlineNanos Deadline in {@link System#nanoTime()} or negative to wait indefinitely.
+	 * @return Handed over element or {@code null} on timeout or closing the queue.
+	 * @throws InterruptedException If the thread is interrupted while waiting.
+	 */
+	public E await(Waiter<E> waiter, long deadlineNanos) throws InterruptedException {
+		while(true) {
+			final E element = waiter.getElement();
+			if(element != null) return element;
+
+			final boolean interrupted = Thread.interrupted();
+			if(interrupted || this.closed || (deadlineNanos >= 0 && deadlineNanos - System.nanoTime() <= 0)) {
+				if(!this.cancel(waiter)) { // Handed over meanwhile
+					if(interrupted) Thread.currentThread().interrupt();
+					return waiter.getElement();
+				}
+				if(interrupted) throw new InterruptedException();
+				return null;
+			}
+
+			if(deadlineNanos < 0) LockSupport.park(this);
+			else LockSupport.parkNanos(this, deadlineNanos - System.nanoTime());
+		}
+	}
+
+	/**
+	 * Cancels the registration.
+	 *
+	 * @param waiter Registration of the current thread.
+	 * @return {@code false} if an element has already been handed over and has to be taken
+	 * using {@link Waiter#getElement()}.
+	 */
+	public boolean cancel(Waiter<E> waiter) {
+		if(!waiter.slot.compareAndSet(null, CANCELLED)) return false;
+
+		synchronized(this) {
+			if(this.waiters.remove(waiter)) this.numOfWaiters.decrementAndGet();
+		}
+		return true;
+	}
+
+	/**
+	 * Allows waiting again after the queue was closed.
+	 */
+	public void open() {
+		this.closed = false;
+	}
+
+	/**
+	 * Wakes up all waiters which will receive {@code null}.
+	 */
+	public void close() {
+		this.closed = true;
+		synchronized(this) {
+			final Iterator<Waiter<E>> iterator = this.waiters.iterator();
+			while(iterator.hasNext()) {
+				LockSupport.unpark(iterator.next().thread);
+			}
+		}
+	}
+
+	/**
+	 * Registration of a single waiting thread.
+	 *
+	 * @author jurajkubinyi
+	 *
+	 * @param <E>
+	 */
+	public static final class Waiter<E> implements Comparable<Waiter<E>> {
+		private final Thread thread;
+		private final int rank;
+		private final long virtualDeadline;
+		private final long sequence;
+		/** Handed over element, {@code CANCELLED} or {@code null} while waiting. **/
+		private final AtomicReference<Object> slot = new AtomicReference<>();
+
+		private Waiter(Thread thread, int rank, long virtualDeadline, long sequence) {
+			this.thread = thread;
+			this.rank = rank;
+			this.virtualDeadline = virtualDeadline;
+			this.sequence = sequence;
+		}
+
+		private boolean complete(Object element) {
+			if(this.slot.compareAndSet(null, element)) {
+				LockSupport.unpark(this.thread);
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * @return Element handed over to the waiter or {@code null}.
+		 */
+		@SuppressWarnings("unchecked")
+		public E getElement() {
+			final Object element = this.slot.get();
+			return element == CANCELLED ? null : (E) element;
+		}
+
+		@Override
+		public int compareTo(Waiter<E> other) {
+			final long difference = this.virtualDeadline - other.virtualDeadline;
+			if(difference != 0) return difference < 0 ? -1 : 1;
+			return Long.compare(this.sequence, other.sequence);
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package com.jkubinyi.simplepool.simulator;
+
+import java.time.Duration;
+import java.util.Random;
+
+/**
+ * Distribution of durations, such as the time between arrivals or the time an object is held.
+ * 
+ * @author jurajkubinyi
+ */
+@FunctionalInterface
+public interface Distribution {
+
+	/**
+	 * @param random Source of randomness owned by the simulation.
+	 * @return Sampled duration in nanoseconds, never negative.
+	 */
+	long sampleNanos(Random random);
+
+	/**
+	 * @param value Duration returned by each sample.
+	 * @return Distribution without any variance.
+	 */
+	static Distribution constant(Duration value) {
+		final long nanos = value.toNanos();
+		return random -> nanos;
+	}
+
+	/**
+	 * @param mean Mean of the distribution.
+	 * @return Exponential distribution, for inter-arrival times of a Poisson process.
+	 */
+	static Distribution exponential(Duration mean) {
+		final double nanos = mean.toNanos();
+		return random -> (long) (-nanos * Math.log(1 - random.nextDouble()));
+	}
+
+	/**
+	 * @param min Lower bound, inclusive.
+	 * @param max Upper bound, exclusive.
+	 * @return Uniform distribution between the bounds.
+	 */
+	static Distribution uniform(Duration min, Duration max) {
+		final long minNanos = min.toNanos();
+		final double range = max.toNanos() - minNanos;
+		return random -> minNanos + (long) (random.nextDouble() * range);
+	}
+
+	/**
+	 * @param median Median of the distribution.
+	 * @param sigma Standard deviation of the underlying normal distribution. Higher values give longer tails.
+	 * @return Log-normal distribution, typical for query durations.
+	 */
+	static Distribution logNormal(Duration median, double sigma) {
+		final double nanos = median.toNanos();
+		return random -> (long) (nanos * Math.exp(sigma * random.nextGaussian()));
+	}
+}
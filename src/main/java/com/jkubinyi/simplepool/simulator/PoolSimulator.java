@@ -0,0 +1,270 @@
+package com.jkubinyi.simplepool.simulator;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.jkubinyi.simplepool.GenericPool;
+import com.jkubinyi.simplepool.GenericPoolImpl;
+import com.jkubinyi.simplepool.ObjectPoolFactory;
+import com.jkubinyi.simplepool.PoolConfiguration;
+import com.jkubinyi.simplepool.PoolObject;
+import com.jkubinyi.simplepool.misc.LatencyRecorder;
+
+/**
+ * <p>Discrete-event simulator for sizing a pool offline. The real {@link GenericPoolImpl} is driven
+ * by a single thread in virtual time: arrivals and returns are processed in time order, objects are
+ * borrowed without waiting and borrowers which found the pool exhausted queue in FIFO order until
+ * a held object is returned or their {@link PoolConfiguration#getMaxWaitInSec()} elapses.</p>
+ * <p>Creation latency is added to the wait of a borrower which caused a new object to be created.
+ * Time based behaviour of the pool which relies on the wall clock, such as idle eviction and
+ * keepalive, is not simulated.</p>
+ *
+ * @author jurajkubinyi
+ */
+public final class PoolSimulator {
+
+	private final Workload workload;
+	private final Distribution createLatency;
+	private final long seed;
+
+	private PoolSimulator(Workload workload, Distribution createLatency, long seed) {
+		this.workload = workload;
+		this.createLatency = createLatency;
+		this.seed = seed;
+	}
+
+	/**
+	 * @param maxPoolSizes Maximum pool sizes to try.
+	 * @param minPoolIdleSizes Minimum idle sizes to try. Combinations above the maximum size are skipped.
+	 * @param maxWaitsInSec Maximum waits to try.
+	 * @return Configurations of all combinations. Maximum idle size equals the maximum pool size.
+	 */
+	public static List<PoolConfiguration> grid(int[] maxPoolSizes, int[] minPoolIdleSizes, int[] maxWaitsInSec) {
+		final List<PoolConfiguration> configurations = new ArrayList<>();
+		for(int maxPoolSize : maxPoolSizes) {
+			for(int minPoolIdleSize : minPoolIdleSizes) {
+				if(minPoolIdleSize > maxPoolSize) continue;
+				for(int maxWaitInSec : maxWaitsInSec) {
+					configurations.add(new PoolConfiguration.Builder()
+							.setMaxPoolSize(maxPoolSize)
+							.setMaxPoolIdleSize(maxPoolSize)
+							.setMinPoolIdleSize(minPoolIdleSize)
+							.setInitialPoolSize(minPoolIdleSize)
+							.setMaxWaitInSec(maxWaitInSec)
+							.setAutostart(false)
+							.build());
+				}
+			}
+		}
+		return configurations;
+	}
+
+	/**
+	 * Simulates each configuration with the same workload and seed.
+	 *
+	 * @param configurations Configurations to compare.
+	 * @return Results in the order of the configurations.
+	 * @throws Exception Thrown by the pool.
+	 */
+	public List<SimulationResult> run(List<PoolConfiguration> configurations) throws Exception {
+		final List<SimulationResult> results = new ArrayList<>(configurations.size());
+		for(PoolConfiguration configuration : configurations) {
+			results.add(this.run(configuration));
+		}
+		return results;
+	}
+
+	/**
+	 * @param configuration Configuration of the simulated pool.
+	 * @return Result of the simulation.
+	 * @throws Exception Thrown by the pool.
+	 * @throws IllegalArgumentException When the configuration is thread-affine, as the simulation runs in a single thread.
+	 */
+	public SimulationResult run(PoolConfiguration configuration) throws Exception {
+		if(configuration.isThreadAffine())
+			throw new IllegalArgumentException("Thread-affine pools cannot be simulated.");
+
+		final GenericPoolImpl<Object> pool = new GenericPoolImpl<>(new SimulatedObjectPoolFactory(), configuration);
+		if(pool.isClosed()) pool.create();
+		try {
+			return this.simulate(pool, configuration);
+		} finally {
+			pool.close();
+		}
+	}
+
+	private SimulationResult simulate(GenericPoolImpl<Object> pool, PoolConfiguration configuration) throws Exception {
+		final Random random = new Random(this.seed);
+		final Iterator<Workload.Request> requests = this.workload.requests(random);
+		final PriorityQueue<Release> releases = new PriorityQueue<>();
+		final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+		final long maxWaitNanos = configuration.getMaxWaitInSec() < 0 ? -1 : TimeUnit.SECONDS.toNanos(configuration.getMaxWaitInSec());
+		final long createdBefore = pool.getNumCreated();
+		final long destroyedBefore = pool.getNumDestroyed();
+
+		long[] waits = new long[1024];
+		int numWaits = 0;
+		long numRequests = 0;
+		long numTimeouts = 0;
+		long sequence = 0;
+		long now = 0;
+		int active = 0;
+		double activeArea = 0;
+		double sizeArea = 0;
+
+		Workload.Request next = requests.hasNext() ? requests.next() : null;
+		while(next != null || !releases.isEmpty()) {
+			final boolean arrival = next != null && (releases.isEmpty() || next.getArrivalNanos() <= releases.peek().time);
+			final long time = Math.max(now, arrival ? next.getArrivalNanos() : releases.peek().time);
+			activeArea += (double) active * (time - now);
+			sizeArea += (double) (pool.getNumActive() + pool.getNumIdle()) * (time - now);
+			now = time;
+
+			while(!waiters.isEmpty() && waiters.peekFirst().deadline < now) {
+				waiters.pollFirst();
+				numTimeouts++;
+			}
+
+			long wait = -1;
+			if(arrival) {
+				numRequests++;
+				final long created = pool.getNumCreated();
+				final PoolObject<Object> object = pool.tryBorrow(Duration.ZERO);
+				if(object != null) {
+					wait = pool.getNumCreated() > created ? this.createLatency.sampleNanos(random) : 0;
+					active++;
+					releases.add(new Release(now + wait + next.getHoldNanos(), sequence++, object));
+				} else {
+					waiters.addLast(new Waiter(now, maxWaitNanos < 0 ? Long.MAX_VALUE : now + maxWaitNanos, next.getHoldNanos()));
+				}
+				next = requests.hasNext() ? requests.next() : null;
+			} else {
+				final Release release = releases.poll();
+				final Waiter waiter = waiters.pollFirst();
+				if(waiter != null) { // Object is handed over without going through the pool
+					wait = now - waiter.arrival;
+					releases.add(new Release(now + waiter.hold, sequence++, release.object));
+				} else {
+					pool.returnPoolObject(release.object);
+					active--;
+				}
+			}
+
+			if(wait >= 0) {
+				if(numWaits == waits.length) waits = Arrays.copyOf(waits, numWaits * 2);
+				waits[numWaits++] = wait;
+			}
+		}
+		numTimeouts += waiters.size(); // Nothing is held anymore, nobody will be served
+
+		final long[] sorted = Arrays.copyOf(waits, numWaits);
+		Arrays.sort(sorted);
+		return new SimulationResult(configuration, numRequests, numWaits, numTimeouts,
+				pool.getNumCreated() - createdBefore, pool.getNumDestroyed() - destroyedBefore,
+				now == 0 ? 0 : activeArea / now / configuration.getMaxPoolSize(), now == 0 ? 0 : sizeArea / now,
+				LatencyRecorder.percentile(sorted, 50), LatencyRecorder.percentile(sorted, 95),
+				LatencyRecorder.percentile(sorted, 99), sorted.length == 0 ? 0 : sorted[sorted.length - 1]);
+	}
+
+	private static final class Release implements Comparable<Release> {
+		private final long time;
+		private final long sequence;
+		private final PoolObject<Object> object;
+
+		private Release(long time, long sequence, PoolObject<Object> object) {
+			this.time = time;
+			this.sequence = sequence;
+			this.object = object;
+		}
+
+		@Override
+		public int compareTo(Release other) {
+			final int byTime = Long.compare(this.time, other.time);
+			return byTime != 0 ? byTime : Long.compare(this.sequence, other.sequence);
+		}
+	}
+
+	private static final class Waiter {
+		private final long arrival;
+		private final long deadline;
+		private final long hold;
+
+		private Waiter(long arrival, long deadline, long hold) {
+			this.arrival = arrival;
+			this.deadline = deadline;
+			this.hold = hold;
+		}
+	}
+
+	/**
+	 * Factory of plain objects which are always valid. Creation latency is accounted in virtual time.
+	 */
+	private static final class SimulatedObjectPoolFactory implements ObjectPoolFactory<Object> {
+
+		@Override
+		public PoolObject<Object> produceObject(GenericPool<Object> pool) {
+			return new PoolObject<Object>(new Object());
+		}
+
+		@Override
+		public void destroyObject(PoolObject<Object> object) {
+		}
+
+		@Override
+		public boolean validateObject(PoolObject<Object> object) {
+			return true;
+		}
+
+		@Override
+		public void activateObject(PoolObject<Object> object) {
+		}
+
+		@Override
+		public void sleepObject(PoolObject<Object> object) {
+		}
+	}
+
+	public static class Builder {
+		private final Workload workload;
+		private Distribution createLatency = Distribution.constant(Duration.ZERO);
+		private long seed = 42;
+
+		/**
+		 * @param workload Requests arriving to the simulated pool.
+		 */
+		public Builder(Workload workload) {
+			Objects.requireNonNull(workload, "Workload cannot be null.");
+			this.workload = workload;
+		}
+
+		/**
+		 * @param createLatency Time to create a new object.
+		 * @return Builder instance.
+		 */
+		public Builder setCreateLatency(Distribution createLatency) {
+			this.createLatency = createLatency;
+			return this;
+		}
+
+		/**
+		 * @param seed Seed of the randomness, the same seed gives the same results.
+		 * @return Builder instance.
+		 */
+		public Builder setSeed(long seed) {
+			this.seed = seed;
+			return this;
+		}
+
+		public PoolSimulator build() {
+			return new PoolSimulator(this.workload, this.createLatency, this.seed);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package com.jkubinyi.simplepool.simulator;
+
+import com.jkubinyi.simplepool.PoolConfiguration;
+
+/**
+ * Outcome of a single simulation run. Times are in virtual nanoseconds.
+ * 
+ * @author jurajkubinyi
+ */
+public final class SimulationResult {
+
+	private final PoolConfiguration configuration;
+	private final long numRequests;
+	private final long numServed;
+	private final long numTimeouts;
+	private final long numCreated;
+	private final long numDestroyed;
+	private final double utilization;
+	private final double averagePoolSize;
+	private final long waitP50;
+	private final long waitP95;
+	private final long waitP99;
+	private final long waitMax;
+
+	SimulationResult(PoolConfiguration configuration, long numRequests, long numServed, long numTimeouts,
+			long numCreated, long numDestroyed, double utilization, double averagePoolSize,
+			long waitP50, long waitP95, long waitP99, long waitMax) {
+		this.configuration = configuration;
+		this.numRequests = numRequests;
+		this.numServed = numServed;
+		this.numTimeouts = numTimeouts;
+		this.numCreated = numCreated;
+		this.numDestroyed = numDestroyed;
+		this.utilization = utilization;
+		this.averagePoolSize = averagePoolSize;
+		this.waitP50 = waitP50;
+		this.waitP95 = waitP95;
+		this.waitP99 = waitP99;
+		this.waitMax = waitMax;
+	}
+
+	/**
+	 * @return Simulated configuration.
+	 */
+	public PoolConfiguration getConfiguration() {
+		return configuration;
+	}
+
+	public long getNumRequests() {
+		return numRequests;
+	}
+
+	public long getNumServed() {
+		return numServed;
+	}
+
+	public long getNumTimeouts() {
+		return numTimeouts;
+	}
+
+	/**
+	 * @return Share of the requests which timed out, between 0 and 1.
+	 */
+	public double getTimeoutRate() {
+		return this.numRequests == 0 ? 0 : (double) this.numTimeouts / this.numRequests;
+	}
+
+	public long getNumCreated() {
+		return numCreated;
+	}
+
+	public long getNumDestroyed() {
+		return numDestroyed;
+	}
+
+	/**
+	 * @return Time-weighted average of borrowed objects divided by the maximum pool size.
+	 */
+	public double getUtilization() {
+		return utilization;
+	}
+
+	/**
+	 * @return Time-weighted average number of objects in the pool.
+	 */
+	public double getAveragePoolSize() {
+		return averagePoolSize;
+	}
+
+	public long getWaitP50() {
+		return waitP50;
+	}
+
+	public long getWaitP95() {
+		return waitP95;
+	}
+
+	public long getWaitP99() {
+		return waitP99;
+	}
+
+	public long getWaitMax() {
+		return waitMax;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder();
+		builder.append("SimulationResult [max size: ");
+		builder.append(this.configuration.getMaxPoolSize());
+		builder.append("; min idle: ");
+		builder.append(this.configuration.getMinPoolIdleSize());
+		builder.append("; max wait: ");
+		builder.append(this.configuration.getMaxWaitInSec());
+		builder.append("s; requests: ");
+		builder.append(this.numRequests);
+		builder.append("; timeout rate: ");
+		builder.append(String.format("%.4f", this.getTimeoutRate()));
+		builder.append("; utilization: ");
+		builder.append(String.format("%.3f", this.utilization));
+		builder.append("; average size: ");
+		builder.append(String.format("%.1f", this.averagePoolSize));
+		builder.append("; wait p50/p95/p99/max: ");
+		builder.append(this.waitP50).append('/').append(this.waitP95).append('/').append(this.waitP99).append('/').append(this.waitMax);
+		builder.append(" ns]");
+		return builder.toString();
+	}
+}
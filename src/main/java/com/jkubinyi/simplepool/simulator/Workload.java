@@ -0,0 +1,150 @@
+package com.jkubinyi.simplepool.simulator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Requests arriving to the pool during the simulation. Either generated from distributions or
+ * replayed from a recorded trace.
+ * 
+ * @author jurajkubinyi
+ */
+public abstract class Workload {
+
+	/**
+	 * Single borrow of an object.
+	 */
+	public static final class Request {
+		private final long arrivalNanos;
+		private final long holdNanos;
+
+		/**
+		 * @param arrivalNanos Virtual time of the borrow in nanoseconds since the simulation start.
+		 * @param holdNanos How long the object is held once borrowed.
+		 */
+		public Request(long arrivalNanos, long holdNanos) {
+			this.arrivalNanos = arrivalNanos;
+			this.holdNanos = holdNanos;
+		}
+
+		public long getArrivalNanos() {
+			return arrivalNanos;
+		}
+
+		public long getHoldNanos() {
+			return holdNanos;
+		}
+	}
+
+	Workload() {
+	}
+
+	/**
+	 * @param random Source of randomness owned by the simulation.
+	 * @return Requests ordered by the arrival time.
+	 */
+	abstract Iterator<Request> requests(Random random);
+
+	/**
+	 * @param interArrival Time between two following requests.
+	 * @param hold Time each object is held.
+	 * @param length Length of the simulated traffic.
+	 * @return Generated workload.
+	 */
+	public static Workload of(Distribution interArrival, Distribution hold, Duration length) {
+		final long lengthNanos = length.toNanos();
+		return new Workload() {
+			@Override
+			Iterator<Request> requests(Random random) {
+				return new Iterator<Request>() {
+					private long time = interArrival.sampleNanos(random);
+
+					@Override
+					public boolean hasNext() {
+						return this.time < lengthNanos;
+					}
+
+					@Override
+					public Request next() {
+						if(!this.hasNext()) throw new NoSuchElementException();
+						final Request request = new Request(this.time, hold.sampleNanos(random));
+						this.time += interArrival.sampleNanos(random);
+						return request;
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * @param arrivalsPerSec Mean number of requests per second.
+	 * @param hold Time each object is held.
+	 * @param length Length of the simulated traffic.
+	 * @return Workload with Poisson arrivals.
+	 */
+	public static Workload poisson(double arrivalsPerSec, Distribution hold, Duration length) {
+		return Workload.of(Distribution.exponential(Duration.ofNanos((long) (1e9 / arrivalsPerSec))), hold, length);
+	}
+
+	/**
+	 * @param requests Recorded requests in any order.
+	 * @return Workload replaying the requests.
+	 */
+	public static Workload fromTrace(List<Request> requests) {
+		final List<Request> sorted = new ArrayList<>(requests);
+		sorted.sort(Comparator.comparingLong(Request::getArrivalNanos));
+		final List<Request> trace = Collections.unmodifiableList(sorted);
+		return new Workload() {
+			@Override
+			Iterator<Request> requests(Random random) {
+				return trace.iterator();
+			}
+		};
+	}
+
+	/**
+	 * Loads a trace with one request per line in the format {@code arrivalMs,holdMs}. Empty lines and
+	 * lines starting with {@code #} are skipped.
+	 * 
+	 * @param file Trace file.
+	 * @return Workload replaying the trace.
+	 * @throws IOException When the file cannot be read.
+	 * @throws IllegalArgumentException When a line is malformed.
+	 */
+	public static Workload loadTrace(Path file) throws IOException {
+		final List<Request> requests = new ArrayList<>();
+		try(Stream<String> lines = Files.lines(file)) {
+			lines.forEach(line -> {
+				final String trimmed = line.trim();
+				if(trimmed.isEmpty() || trimmed.startsWith("#")) return;
+				final String[] parts = trimmed.split(",");
+				if(parts.length != 2)
+					throw new IllegalArgumentException("Malformed trace line: " + line);
+				try {
+					requests.add(new Request(toNanos(parts[0]), toNanos(parts[1])));
+				} catch(NumberFormatException e) {
+					throw new IllegalArgumentException("Malformed trace line: " + line, e);
+				}
+			});
+		} catch(UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return Workload.fromTrace(requests);
+	}
+
+	private static long toNanos(String millis) {
+		return (long) (Double.parseDouble(millis.trim()) * TimeUnit.MILLISECONDS.toNanos(1));
+	}
+}
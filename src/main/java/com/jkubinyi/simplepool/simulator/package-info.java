@@ -0,0 +1,9 @@
+/**
+ * Offline sizing of the pools. The real {@link com.jkubinyi.simplepool.GenericPoolImpl} is driven
+ * by a discrete-event simulation in virtual time, so hours of traffic run in seconds.
+ */
+/**
+ * @author jurajkubinyi
+ *
+ */
+package com.jkubinyi.simplepool.simulator;
@@ -3,10 +3,26 @@ package com.jkubinyi.simplepool;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.RuntimeMBeanException;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -120,6 +136,651 @@ public class CorePoolTest {
 		this.pool.returnObject(obj);
 	}
 	
+	@Test
+	public void borrowAndReturnBatch() throws Exception {
+		List<Object> batch = this.pool.borrowObjects(3, Duration.ofSeconds(1));
+		assertEquals(3, batch.size());
+		assertEquals(3, this.pool.getNumActive());
+		this.pool.returnObjects(batch);
+		assertEquals(0, this.pool.getNumActive());
+		assertEquals(this.config.getInitialPoolSize(), this.pool.getNumIdle());
+	}
+	
+	@Test
+	public void batchIsAllOrNothing() throws Exception {
+		Object single = this.pool.borrowObject();
+		try {
+			this.pool.borrowObjects(this.config.getMaxPoolSize(), Duration.ofMillis(100));
+			fail("Pool should not return partial batch.");
+		} catch(NoSuchElementException e) {
+			assertEquals(1, this.pool.getNumActive());
+			assertEquals(this.config.getInitialPoolSize() - 1, this.pool.getNumIdle());
+		}
+		this.pool.returnObject(single);
+	}
+	
+	@Test
+	public void returnBatchAfterClosingPool() throws Exception {
+		List<Object> batch = this.pool.borrowObjects(2, Duration.ofSeconds(1));
+		this.pool.close();
+		this.pool.returnObjects(batch);
+		assertEquals(0, this.pool.getNumActive());
+		assertEquals(0, this.pool.getNumIdle());
+	}
+	
+	@Test
+	public void batchWithNegativeTimeoutWaitsIndefinitely() throws Exception {
+		Object single = this.pool.borrowObject();
+		AtomicReference<List<Object>> borrowed = new AtomicReference<>();
+		Thread borrower = new Thread(() -> {
+			try {
+				borrowed.set(this.pool.borrowObjects(this.config.getMaxPoolSize(), Duration.ofSeconds(-1)));
+			} catch(Exception e) {
+				// Test fails on the missing batch
+			}
+		});
+		borrower.start();
+		awaitCondition(() -> this.pool.getNumWaiters() == 1);
+		
+		this.pool.returnObject(single);
+		borrower.join(2000);
+		assertEquals(this.config.getMaxPoolSize(), borrowed.get().size());
+		this.pool.returnObjects(borrowed.get());
+	}
+	
+	@Test
+	public void batchWaiterIsServedThroughHandoff() throws Exception {
+		PoolConfiguration priorityConfig = new PoolConfiguration.Builder()
+				.setInitialPoolSize(2)
+				.setMaxPoolSize(2)
+				.setPrioritizedBorrowing(true)
+				.setPriorityAgingInMillis(60000)
+				.build();
+		GenericPoolImpl<Object> priorityPool = new GenericPoolImpl<>(this.objectFactory, priorityConfig);
+		List<Object> held = priorityPool.borrowObjects(2, Duration.ofSeconds(1));
+		
+		LinkedBlockingDeque<List<Object>> batches = new LinkedBlockingDeque<>();
+		Thread batchBorrower = new Thread(() -> {
+			try {
+				batches.add(priorityPool.borrowObjects(1, Duration.ofSeconds(5)));
+			} catch(Exception e) {
+				// Test fails on the missing batch
+			}
+		});
+		batchBorrower.start();
+		awaitCondition(() -> priorityPool.getNumWaiters() == 1);
+		LinkedBlockingDeque<Object> lowServed = new LinkedBlockingDeque<>();
+		Thread low = new Thread(() -> {
+			try {
+				lowServed.add(priorityPool.borrowObject(Duration.ofSeconds(5), BorrowPriority.LOW)); // Kept till the end
+			} catch(Exception e) {
+				// Test fails on the missing object
+			}
+		});
+		low.start();
+		awaitCondition(() -> priorityPool.getNumWaiters() == 2);
+		
+		priorityPool.returnObject(held.get(0));
+		List<Object> batch = batches.poll(2, TimeUnit.SECONDS);
+		assertNotNull(batch);
+		priorityPool.returnObject(held.get(1));
+		Object lowObject = lowServed.poll(2, TimeUnit.SECONDS);
+		assertNotNull(lowObject);
+		priorityPool.returnObject(lowObject);
+		priorityPool.returnObjects(batch);
+		batchBorrower.join();
+		low.join();
+		priorityPool.close();
+	}
+	
+	@Test
+	public void returnedBatchIsHandedOverToWaiters() throws Exception {
+		PoolConfiguration priorityConfig = new PoolConfiguration.Builder()
+				.setInitialPoolSize(2)
+				.setMaxPoolSize(2)
+				.setPrioritizedBorrowing(true)
+				.build();
+		GenericPoolImpl<Object> priorityPool = new GenericPoolImpl<>(this.objectFactory, priorityConfig);
+		List<Object> held = priorityPool.borrowObjects(2, Duration.ofSeconds(1));
+		
+		LinkedBlockingDeque<BorrowPriority> served = new LinkedBlockingDeque<>();
+		Thread low = startBorrower(priorityPool, BorrowPriority.LOW, served);
+		Thread high = startBorrower(priorityPool, BorrowPriority.HIGH, served);
+		awaitCondition(() -> priorityPool.getNumWaiters() == 2);
+		
+		priorityPool.returnObjects(held);
+		assertNotNull(served.poll(2, TimeUnit.SECONDS));
+		assertNotNull(served.poll(2, TimeUnit.SECONDS));
+		low.join();
+		high.join();
+		assertEquals(2, priorityPool.getNumIdle());
+		priorityPool.close();
+	}
+	
+	@Test
+	public void withObjectReturnsObject() throws Exception {
+		Object result = this.pool.withObject(object -> object);
+		assertNotNull(result);
+		assertEquals(0, this.pool.getNumActive());
+		assertEquals(this.config.getInitialPoolSize(), this.pool.getNumIdle());
+	}
+	
+	@Test
+	public void withObjectInvalidatesOnFailure() throws Exception {
+		try {
+			this.pool.withObject(object -> {
+				throw new IllegalArgumentException();
+			});
+			fail("Exception of the function should be propagated.");
+		} catch(IllegalArgumentException e) {
+			assertEquals(0, this.pool.getNumActive());
+			assertEquals(1, this.pool.getNumDestroyed());
+		}
+	}
+	
+	@Test
+	public void tryBorrowSignalsTimeoutWithNull() throws Exception {
+		List<Object> batch = this.pool.borrowObjects(this.config.getMaxPoolSize(), Duration.ofSeconds(1));
+		assertEquals(null, this.pool.tryBorrow(Duration.ofMillis(10)));
+		this.pool.returnObjects(batch);
+		
+		PoolObject<Object> object = this.pool.tryBorrow(Duration.ofMillis(10));
+		assertNotNull(object);
+		this.pool.returnPoolObject(object);
+		assertEquals(0, this.pool.getNumActive());
+	}
+	
+	@Test
+	public void threadAffineObjectIsReclaimedFromDeadThread() throws Exception {
+		PoolConfiguration affineConfig = new PoolConfiguration.Builder()
+				.setInitialPoolSize(1)
+				.setMaxPoolSize(1)
+				.setMaxWaitInSec(1)
+				.setThreadAffine(true)
+				.build();
+		GenericPoolImpl<Object> affinePool = new GenericPoolImpl<>(this.objectFactory, affineConfig);
+		
+		AtomicReference<Object> borrowed = new AtomicReference<>();
+		Thread thread = new Thread(() -> {
+			try {
+				borrowed.set(affinePool.borrowObject());
+				affinePool.returnObject(borrowed.get());
+				assertSame(borrowed.get(), affinePool.borrowObject());
+				affinePool.returnObject(borrowed.get());
+			} catch(Exception e) {
+				borrowed.set(e);
+			}
+		});
+		thread.start();
+		thread.join();
+		assertEquals(1, affinePool.getNumIdle());
+		
+		// Object cached by the dead thread has to be handed over
+		assertSame(borrowed.get(), affinePool.borrowObject());
+		assertEquals(1, affinePool.getNumActive());
+	}
+	
+	@Test
+	public void threadAffineReturnWakesWaiter() throws Exception {
+		PoolConfiguration affineConfig = new PoolConfiguration.Builder()
+				.setInitialPoolSize(1)
+				.setMaxPoolSize(1)
+				.setThreadAffine(true)
+				.build();
+		GenericPoolImpl<Object> affinePool = new GenericPoolImpl<>(this.objectFactory, affineConfig);
+		Object held = affinePool.borrowObject();
+		
+		LinkedBlockingDeque<BorrowPriority> served = new LinkedBlockingDeque<>();
+		Thread waiter = startBorrower(affinePool, BorrowPriority.NORMAL, served);
+		awaitCondition(() -> affinePool.getNumWaiters() == 1);
+		
+		affinePool.returnObject(held);
+		assertEquals(BorrowPriority.NORMAL, served.poll(2, TimeUnit.SECONDS));
+		waiter.join();
+		affinePool.close();
+	}
+	
+	@Test
+	public void threadAffineObjectsCountAsMinimumIdles() throws Exception {
+		PoolConfiguration affineConfig = new PoolConfiguration.Builder()
+				.setInitialPoolSize(2)
+				.setMaxPoolSize(4)
+				.setMinPoolIdleSize(2)
+				.setThreadAffine(true)
+				.build();
+		GenericPoolImpl<Object> affinePool = new GenericPoolImpl<>(this.objectFactory, affineConfig);
+		Object parked = affinePool.borrowObject();
+		PoolObject<Object> invalid = affinePool.tryBorrow(Duration.ofSeconds(1));
+		affinePool.returnObject(parked);
+		
+		affinePool.invalidatePoolObject(invalid);
+		assertEquals(2, affinePool.getNumIdle());
+		assertEquals(0, affinePool.getNumActive());
+		affinePool.close();
+	}
+	
+	@Test
+	public void warmupProfileIsUsedAfterRestart() throws Exception {
+		Path directory = Files.createTempDirectory("warmup");
+		PoolConfiguration profiledConfig = new PoolConfiguration.Builder()
+				.setInitialPoolSize(1)
+				.setMaxPoolSize(10)
+				.setMaxPoolIdleSize(10)
+				.setPoolName("profiled")
+				.setWarmupProfileDirectory(directory)
+				.build();
+		GenericPoolImpl<Object> profiledPool = new GenericPoolImpl<>(this.objectFactory, profiledConfig);
+		List<Object> batch = profiledPool.borrowObjects(4, Duration.ofSeconds(1));
+		profiledPool.returnObjects(batch);
+		profiledPool.close();
+		
+		GenericPoolImpl<Object> restartedPool = new GenericPoolImpl<>(this.objectFactory, profiledConfig);
+		assertEquals(4 + profiledConfig.getMinPoolIdleSize(), restartedPool.getNumIdle());
+		restartedPool.close();
+		
+		Files.write(WarmupProfile.profileFile(directory, "profiled"), "corrupt".getBytes());
+		GenericPoolImpl<Object> fallbackPool = new GenericPoolImpl<>(this.objectFactory, profiledConfig);
+		assertEquals(profiledConfig.getInitialPoolSize(), fallbackPool.getNumIdle());
+	}
+	
+	@Test
+	public void poolIsExposedOverJmx() throws Exception {
+		PoolConfiguration jmxConfig = new PoolConfiguration.Builder()
+				.setInitialPoolSize(2)
+				.setMaxPoolSize(2)
+				.setMaxPoolIdleSize(2)
+				.setJmxName("com.jkubinyi.simplepool:type=GenericPool,name=test")
+				.build();
+		GenericPoolImpl<Object> jmxPool = new GenericPoolImpl<>(this.objectFactory, jmxConfig);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(jmxConfig.getJmxName());
+		try {
+			jmxPool.borrowObject();
+			jmxPool.borrowObject();
+			assertEquals(null, jmxPool.tryBorrow(Duration.ofMillis(10)));
+			
+			assertEquals(2, server.getAttribute(name, "NumActive"));
+			assertEquals(1L, server.getAttribute(name, "NumTimeouts"));
+			
+			server.setAttribute(name, new Attribute("ValidationEnabled", false));
+			assertEquals(false, jmxPool.isValidationEnabled());
+			server.invoke(name, "resize", new Object[] { 1, 4 }, new String[] { "int", "int" });
+			assertEquals(4, jmxPool.getConfiguration().getMaxPoolSize());
+			assertNotNull(jmxPool.borrowObject());
+		} finally {
+			jmxPool.close();
+		}
+		assertEquals(false, server.isRegistered(name));
+	}
+	
+	@Test
+	public void resizeShrinksIdleFirstAndGrowsInBackground() throws Exception {
+		PoolConfiguration resizableConfig = new PoolConfiguration.Builder()
+				.setInitialPoolSize(4)
+				.setMaxPoolSize(4)
+				.setMaxPoolIdleSize(4)
+				.build();
+		GenericPoolImpl<Object> resizablePool = new GenericPoolImpl<>(this.objectFactory, resizableConfig);
+		Object first = resizablePool.borrowObject();
+		Object second = resizablePool.borrowObject();
+		
+		resizablePool.resize(0, 1);
+		awaitCondition(() -> resizablePool.getNumDestroyed() == 2);
+		assertEquals(0, resizablePool.getNumIdle());
+		assertEquals(2, resizablePool.getNumActive());
+		
+		resizablePool.returnObject(first); // Surplus object is retired on return
+		assertEquals(1, resizablePool.getNumActive());
+		assertEquals(0, resizablePool.getNumIdle());
+		resizablePool.returnObject(second);
+		assertEquals(1, resizablePool.getNumIdle());
+		
+		resizablePool.resize(3, 5);
+		awaitCondition(() -> resizablePool.getNumIdle() == 3);
+		assertEquals(5, resizableConfig.getLimits().getMaxPoolSize());
+		resizablePool.close();
+	}
+	
+	@Test
+	public void overloadedPoolShedsBorrows() throws Exception {
+		PoolConfiguration sheddingConfig = new PoolConfiguration.Builder()
+				.setInitialPoolSize(1)
+				.setMaxPoolSize(1)
+				.setMaxWaiters(0)
+				.build();
+		GenericPoolImpl<Object> sheddingPool = new GenericPoolImpl<>(this.objectFactory, sheddingConfig);
+		Object held = sheddingPool.borrowObject();
+		long start = System.nanoTime();
+		try {
+			sheddingPool.borrowObject(Duration.ofSeconds(5));
+			fail("Borrow should be shed when the waiter queue is full.");
+		} catch(PoolOverloadException e) {
+			assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+		}
+		assertEquals(1, sheddingPool.getNumShed());
+		assertEquals(null, sheddingPool.tryBorrow(Duration.ZERO));
+		assertEquals(1, sheddingPool.getNumShed());
+		sheddingPool.returnObject(held);
+		sheddingPool.close();
+	}
+	
+	@Test
+	public void borrowIsShedWhenProjectedWaitExceedsDeadline() throws Exception {
+		PoolConfiguration sheddingConfig = new PoolConfiguration.Builder()
+				.setInitialPoolSize(1)
+				.setMaxPoolSize(1)
+				.build();
+		GenericPoolImpl<Object> sheddingPool = new GenericPoolImpl<>(this.objectFactory, sheddingConfig);
+		Object held = sheddingPool.borrowObject();
+		Thread.sleep(200);
+		sheddingPool.returnObject(held);
+		
+		held = sheddingPool.borrowObject();
+		try {
+			sheddingPool.borrowObject(Duration.ofMillis(20));
+			fail("Borrow should be shed as objects are held longer than the deadline.");
+		} catch(PoolOverloadException e) {
+			assertEquals(1, sheddingPool.getNumShed());
+			assertEquals(0, sheddingPool.getNumWaited());
+		}
+		try {
+			sheddingPool.tryBorrow(Duration.ofMillis(20));
+			fail("Shed borrow should not look like a timeout.");
+		} catch(PoolOverloadException e) {
+			assertEquals(2, sheddingPool.getNumShed());
+		}
+		assertEquals(null, sheddingPool.tryBorrow(Duration.ZERO));
+		assertEquals(2, sheddingPool.getNumShed());
+		sheddingPool.returnObject(held);
+		sheddingPool.close();
+	}
+	
+	@Test
+	public void returnedObjectGoesToHighestPriorityWaiter() throws Exception {
+		PoolConfiguration priorityConfig = new PoolConfiguration.Builder()
+				.setInitialPoolSize(1)
+				.setMaxPoolSize(1)
+				.setPrioritizedBorrowing(true)
+				.setPriorityAgingInMillis(60000)
+				.build();
+		GenericPoolImpl<Object> priorityPool = new GenericPoolImpl<>(this.objectFactory, priorityConfig);
+		Object held = priorityPool.borrowObject();
+		
+		LinkedBlockingDeque<BorrowPriority> served = new LinkedBlockingDeque<>();
+		Thread low = startBorrower(priorityPool, BorrowPriority.LOW, served);
+		awaitCondition(() -> priorityPool.getNumWaiters() == 1);
+		Thread high = startBorrower(priorityPool, BorrowPriority.HIGH, served);
+		awaitCondition(() -> priorityPool.getNumWaiters() == 2);
+		
+		priorityPool.returnObject(held);
+		assertEquals(BorrowPriority.HIGH, served.poll(2, TimeUnit.SECONDS));
+		assertEquals(BorrowPriority.LOW, served.poll(2, TimeUnit.SECONDS));
+		low.join();
+		high.join();
+		priorityPool.close();
+	}
+	
+	@Test
+	public void prioritizedBorrowersDoNotMissReturnedObjects() throws Exception {
+		PoolConfiguration priorityConfig = new PoolConfiguration.Builder()
+				.setInitialPoolSize(2)
+				.setMaxPoolSize(2)
+				.setMaxPoolIdleSize(2)
+				.setPrioritizedBorrowing(true)
+				.build();
+		GenericPoolImpl<Object> priorityPool = new GenericPoolImpl<>(this.objectFactory, priorityConfig);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread[] borrowers = new Thread[16];
+		for(int i = 0; i < borrowers.length; i++) {
+			BorrowPriority priority = BorrowPriority.values()[i % BorrowPriority.values().length];
+			borrowers[i] = new Thread(() -> {
+				try {
+					for(int j = 0; j < 20000; j++) {
+						priorityPool.returnObject(priorityPool.borrowObject(Duration.ofSeconds(5), priority));
+					}
+				} catch(Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			});
+			borrowers[i].start();
+		}
+		for(Thread borrower : borrowers) borrower.join();
+		
+		assertEquals(null, failure.get());
+		assertEquals(0, priorityPool.getNumTimeouts());
+		assertEquals(2, priorityPool.getNumIdle());
+		priorityPool.close();
+	}
+	
+	@Test
+	public void agedLowPriorityWaiterIsNotStarved() throws Exception {
+		PoolConfiguration priorityConfig = new PoolConfiguration.Builder()
+				.setInitialPoolSize(1)
+				.setMaxPoolSize(1)
+				.setPrioritizedBorrowing(true)
+				.setPriorityAgingInMillis(20)
+				.build();
+		GenericPoolImpl<Object> priorityPool = new GenericPoolImpl<>(this.objectFactory, priorityConfig);
+		Object held = priorityPool.borrowObject();
+		
+		LinkedBlockingDeque<BorrowPriority> served = new LinkedBlockingDeque<>();
+		Thread low = startBorrower(priorityPool, BorrowPriority.LOW, served);
+		awaitCondition(() -> priorityPool.getNumWaiters() == 1);
+		Thread.sleep(200);
+		Thread high = startBorrower(priorityPool, BorrowPriority.HIGH, served);
+		awaitCondition(() -> priorityPool.getNumWaiters() == 2);
+		
+		priorityPool.returnObject(held);
+		assertEquals(BorrowPriority.LOW, served.poll(2, TimeUnit.SECONDS));
+		assertEquals(BorrowPriority.HIGH, served.poll(2, TimeUnit.SECONDS));
+		low.join();
+		high.join();
+		priorityPool.close();
+	}
+	
+	@Test
+	public void reservedCapacityIsKeptForHighPriority() throws Exception {
+		PoolConfiguration priorityConfig = new PoolConfiguration.Builder()
+				.setInitialPoolSize(1)
+				.setMaxPoolSize(2)
+				.setMaxPoolIdleSize(2)
+				.setPrioritizedBorrowing(true)
+				.setHighPriorityReservePercent(10)
+				.build();
+		GenericPoolImpl<Object> priorityPool = new GenericPoolImpl<>(this.objectFactory, priorityConfig);
+		assertNotNull(priorityPool.borrowObject(Duration.ofMillis(10), BorrowPriority.NORMAL));
+		try {
+			priorityPool.borrowObject(Duration.ofMillis(10), BorrowPriority.LOW);
+			fail("Last object is reserved for high priority borrowers.");
+		} catch(PoolTimeoutException e) {
+			assertNotNull(priorityPool.borrowObject(Duration.ofMillis(10), BorrowPriority.HIGH));
+		}
+		priorityPool.close();
+	}
+	
+	@Test
+	public void keepaliveReplacesDeadIdleObjects() throws Exception {
+		AtomicReference<Object> dead = new AtomicReference<>();
+		TestObjectPoolFactory keepaliveFactory = new TestObjectPoolFactory() {
+			@Override
+			public boolean validateObject(PoolObject<Object> object) {
+				return object.getObject() != dead.get();
+			}
+		};
+		PoolConfiguration keepaliveConfig = new PoolConfiguration.Builder()
+				.setInitialPoolSize(3)
+				.setMaxPoolSize(3)
+				.setMaxPoolIdleSize(3)
+				.setKeepaliveIntervalInSec(1)
+				.setKeepaliveBatchSize(3)
+				.setValidationTrustInMillis(60000)
+				.build();
+		GenericPoolImpl<Object> keepalivePool = new GenericPoolImpl<>(keepaliveFactory, keepaliveConfig);
+		Object first = keepalivePool.borrowObject();
+		keepalivePool.returnObject(first);
+		dead.set(first);
+		
+		keepalivePool.keepaliveIdleObjects(); // All objects were validated recently
+		assertEquals(0, keepalivePool.getNumDestroyed());
+		
+		Thread.sleep(1100);
+		keepalivePool.keepaliveIdleObjects(); // Scheduled run may be faster, both cannot take the same object
+		awaitCondition(() -> keepalivePool.getNumDestroyed() == 1 && keepalivePool.getNumIdle() == 3);
+		assertEquals(4, keepalivePool.getNumCreated());
+		assertNotEquals(first, keepalivePool.borrowObject());
+		keepalivePool.close();
+	}
+	
+	private static Thread startBorrower(GenericPoolImpl<Object> pool, BorrowPriority priority, LinkedBlockingDeque<BorrowPriority> served) {
+		Thread borrower = new Thread(() -> {
+			try {
+				Object object = pool.borrowObject(Duration.ofSeconds(5), priority);
+				served.add(priority);
+				pool.returnObject(object);
+			} catch(Exception e) {
+				// Test fails on the missing priority
+			}
+		});
+		borrower.start();
+		return borrower;
+	}
+	
+	@Test
+	public void registrySharesHousekeepingAndClosesAllPools() throws Exception {
+		try(PoolRegistry registry = new PoolRegistry(1)) {
+			PoolConfiguration.Builder builder = new PoolConfiguration.Builder()
+					.setInitialPoolSize(2)
+					.setKeepaliveIntervalInSec(60)
+					.setRegistry(registry);
+			GenericPoolImpl<Object> orders = new GenericPoolImpl<>(new TestObjectPoolFactory(), builder.setPoolName("orders").build());
+			GenericPoolImpl<Object> anonymous = new GenericPoolImpl<>(new TestObjectPoolFactory(), builder.setPoolName(null).build());
+			GenericPoolImpl<Object> otherOrders = new GenericPoolImpl<>(new TestObjectPoolFactory(), builder.setPoolName("orders").build());
+			orders.borrowObject();
+
+			assertEquals(3, registry.getPools().size());
+			assertEquals(3, registry.getNumScheduledTasks());
+			PoolRegistry.Snapshot snapshot = registry.getStatistics();
+			assertEquals(1, snapshot.getPools().get("orders").getNumActive());
+			assertEquals(2, snapshot.getPools().get("orders-2").getNumIdle());
+			assertEquals(2, snapshot.getPools().get("anonymous-1").getNumIdle());
+			assertEquals(1, snapshot.getNumActive());
+			assertEquals(5, snapshot.getNumIdle());
+
+			anonymous.close();
+			otherOrders.close();
+			assertEquals(1, registry.getPools().size());
+			assertEquals(1, registry.getNumScheduledTasks());
+
+			registry.closeAll();
+			assertTrue(orders.isClosed());
+			assertEquals(0, registry.getPools().size());
+			assertEquals(0, registry.getNumScheduledTasks());
+		}
+	}
+
+	@Test
+	public void registryDoesNotKeepDroppedPoolsAlive() throws Exception {
+		try(PoolRegistry registry = new PoolRegistry(1)) {
+			startDroppedPool(registry);
+			long deadline = System.currentTimeMillis() + 5000;
+			while(!registry.getPools().isEmpty() && System.currentTimeMillis() < deadline) {
+				System.gc();
+				Thread.sleep(10);
+			}
+			assertTrue(registry.getPools().isEmpty());
+		}
+	}
+
+	private void startDroppedPool(PoolRegistry registry) throws Exception {
+		GenericPoolImpl<Object> dropped = new GenericPoolImpl<>(new TestObjectPoolFactory(), new PoolConfiguration.Builder()
+				.setKeepaliveIntervalInSec(60)
+				.setRegistry(registry)
+				.build());
+		dropped.resize(1, 2);
+		assertEquals(1, registry.getPools().size());
+	}
+
+	@Test
+	public void mbeanDoesNotKeepDroppedPoolAlive() throws Exception {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName("com.jkubinyi.simplepool:type=GenericPool,name=dropped");
+		try(PoolRegistry registry = new PoolRegistry(1)) {
+			new GenericPoolImpl<>(new TestObjectPoolFactory(), new PoolConfiguration.Builder()
+					.setJmxName(name.toString())
+					.setRegistry(registry)
+					.build());
+			assertTrue(server.isRegistered(name));
+
+			long deadline = System.currentTimeMillis() + 5000;
+			while(server.isRegistered(name) && System.currentTimeMillis() < deadline) {
+				System.gc();
+				try {
+					server.getAttribute(name, "NumIdle"); // Unregisters the bean once the pool is gone
+				} catch(RuntimeMBeanException e) {
+					assertTrue(e.getCause() instanceof IllegalStateException);
+				}
+				Thread.sleep(10);
+			}
+			assertEquals(false, server.isRegistered(name));
+		}
+	}
+
+	@Test
+	public void closedDefaultRegistryIsReplaced() throws Exception {
+		PoolRegistry closed = new PoolRegistry(1);
+		PoolRegistry shared = PoolRegistry.setDefault(closed); // Pools of other tests keep their housekeeping
+		try {
+			assertSame(closed, PoolRegistry.getDefault());
+			closed.close();
+			PoolRegistry replacement = PoolRegistry.getDefault();
+			assertNotSame(closed, replacement);
+
+			GenericPoolImpl<Object> later = new GenericPoolImpl<>(new TestObjectPoolFactory(), new PoolConfiguration.Builder().build());
+			assertSame(replacement, later.getRegistry());
+			assertEquals(1, later.getNumIdle());
+			replacement.close();
+			assertTrue(later.isClosed());
+		} finally {
+			PoolRegistry.setDefault(shared);
+		}
+	}
+
+	@Test
+	public void closeDestroysIdleObjectsInParallel() throws Exception {
+		TestObjectPoolFactory slowFactory = new TestObjectPoolFactory() {
+			@Override
+			public void destroyObject(PoolObject<Object> object) throws Exception {
+				Thread.sleep(200);
+			}
+		};
+		try(PoolRegistry registry = new PoolRegistry(1, 4, 16)) {
+			PoolConfiguration slowConfig = new PoolConfiguration.Builder()
+					.setInitialPoolSize(8)
+					.setRegistry(registry)
+					.build();
+			GenericPoolImpl<Object> slowPool = new GenericPoolImpl<>(slowFactory, slowConfig);
+
+			long start = System.nanoTime();
+			slowPool.close();
+			assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(200));
+			assertEquals(8, slowPool.getNumPendingDestruction());
+			assertEquals(0, slowPool.getNumIdle() + slowPool.getNumActive());
+
+			assertTrue(slowPool.close(Duration.ofSeconds(2)));
+			assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1600)); // Serial destruction takes 1.6 s
+			assertEquals(0, slowPool.getNumPendingDestruction());
+			assertEquals(8, slowPool.getNumDestroyed());
+		}
+	}
+
+	private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 2000;
+		while(!condition.getAsBoolean()) {
+			if(System.currentTimeMillis() > deadline) fail("Condition was not met in time.");
+			Thread.sleep(5);
+		}
+	}
+	
 	class TestObjectPoolFactory implements ObjectPoolFactory<Object> {
 
 		private Object first;
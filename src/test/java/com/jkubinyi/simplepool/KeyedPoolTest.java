@@ -0,0 +1,111 @@
+package com.jkubinyi.simplepool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+
+import java.util.NoSuchElementException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class KeyedPoolTest {
+
+	private KeyedPoolConfiguration config;
+	private GenericKeyedPoolImpl<String, Object> pool;
+
+	@Before
+	public void prepareTest() {
+		this.config = new KeyedPoolConfiguration.Builder()
+		.setMaxTotalSize(3)
+		.setMaxPoolSizePerKey(2)
+		.setMaxPoolIdleSizePerKey(2)
+		.setMinPoolIdleSizePerKey(1)
+		.setMaxWaitInSec(1)
+		.build();
+
+		this.pool = new GenericKeyedPoolImpl<>(new TestKeyedObjectPoolFactory(), this.config);
+	}
+
+	@Test
+	public void preparePoolCreatesMinimumIdles() {
+		this.pool.preparePool("a");
+		assertEquals(1, this.pool.getNumIdle("a"));
+		assertEquals(0, this.pool.getNumIdle("b"));
+	}
+
+	@Test
+	public void objectsArePooledPerKey() throws Exception {
+		Object a = this.pool.borrowObject("a");
+		Object b = this.pool.borrowObject("b");
+		assertNotNull(a);
+		assertNotSame(a, b);
+		assertEquals(1, this.pool.getNumActive("a"));
+		assertEquals(1, this.pool.getNumActive("b"));
+
+		this.pool.returnObject("a", a);
+		assertEquals(0, this.pool.getNumActive("a"));
+		assertEquals(1, this.pool.getNumIdle("a"));
+		assertEquals(a, this.pool.borrowObject("a"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void returnWithWrongKeyFails() throws Exception {
+		Object a = this.pool.borrowObject("a");
+		this.pool.returnObject("b", a);
+	}
+
+	@Test
+	public void perKeyLimitIsEnforced() throws Exception {
+		this.pool.borrowObject("a");
+		this.pool.borrowObject("a");
+		try {
+			this.pool.borrowObject("a");
+			fail("Pool should not allow more objects than configured per key.");
+		} catch(NoSuchElementException e) {
+			assertEquals(2, this.pool.getNumActive("a"));
+		}
+	}
+
+	@Test
+	public void coldKeyIsEvictedForHotKey() throws Exception {
+		Object cold = this.pool.borrowObject("cold");
+		this.pool.returnObject("cold", cold);
+		this.pool.borrowObject("hot");
+		this.pool.borrowObject("hot");
+		assertEquals(1, this.pool.getNumIdle("cold"));
+
+		// Global cap is reached, idle object of the cold key has to make room
+		this.pool.borrowObject("other");
+		assertEquals(0, this.pool.getNumIdle("cold"));
+		assertEquals(1, this.pool.getNumActive("other"));
+		assertEquals(1, this.pool.getNumDestroyed());
+	}
+
+	class TestKeyedObjectPoolFactory implements KeyedObjectPoolFactory<String, Object> {
+
+		@Override
+		public PoolObject<Object> produceObject(GenericKeyedPool<String, Object> pool, String key) {
+			return new PoolObject<Object>(new Object());
+		}
+
+		@Override
+		public void destroyObject(String key, PoolObject<Object> object) throws Exception {
+			//Nothing to cleanup
+		}
+
+		@Override
+		public boolean validateObject(String key, PoolObject<Object> object) {
+			return true;
+		}
+
+		@Override
+		public void activateObject(String key, PoolObject<Object> object) throws Exception {
+		}
+
+		@Override
+		public void sleepObject(String key, PoolObject<Object> object) throws Exception {
+		}
+	}
+}
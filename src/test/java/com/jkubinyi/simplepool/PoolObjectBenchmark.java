@@ -0,0 +1,151 @@
+package com.jkubinyi.simplepool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * <p>Compares the CAS based {@link PoolObject} state machine with the previous monitor based
+ * implementation under contention. Both variants run a full borrow/return cycle
+ * (allocate, returned, deallocate) plus state reads on an object shared by all threads.</p>
+ * <p>The grouped variants split the cycle between borrowing and returning threads working on the same
+ * objects, so every transition races with a transition of another thread.</p>
+ * Run using {@code mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args=PoolObjectBenchmark}.
+ * 
+ * @author jurajkubinyi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class PoolObjectBenchmark {
+
+	/** Number of shared objects, small enough for objects to constantly move between threads. **/
+	private static final int NUM_OF_OBJECTS = 8;
+
+	private final List<PoolObject<Object>> lockFree = new ArrayList<>(NUM_OF_OBJECTS);
+	private final List<SynchronizedPoolObject> synchronizedObjects = new ArrayList<>(NUM_OF_OBJECTS);
+
+	public PoolObjectBenchmark() {
+		for(int i = 0; i < NUM_OF_OBJECTS; i++) {
+			this.lockFree.add(new PoolObject<>(new Object()));
+			this.synchronizedObjects.add(new SynchronizedPoolObject());
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		private int index;
+
+		int next() {
+			return this.index = (this.index + 1) & (NUM_OF_OBJECTS - 1);
+		}
+	}
+
+	@Benchmark
+	public void lockFreeCycle(Cursor cursor, Blackhole blackhole) {
+		final PoolObject<Object> object = this.lockFree.get(cursor.next());
+		blackhole.consume(object.allocate());
+		blackhole.consume(object.getState());
+		blackhole.consume(object.returned());
+		blackhole.consume(object.deallocate());
+	}
+
+	@Benchmark
+	public void synchronizedCycle(Cursor cursor, Blackhole blackhole) {
+		final SynchronizedPoolObject object = this.synchronizedObjects.get(cursor.next());
+		blackhole.consume(object.allocate());
+		blackhole.consume(object.getState());
+		blackhole.consume(object.returned());
+		blackhole.consume(object.deallocate());
+	}
+
+	@Benchmark
+	@Group("lockFreeContended")
+	@GroupThreads(2)
+	public boolean lockFreeBorrow(Cursor cursor) {
+		return this.lockFree.get(cursor.next()).allocate();
+	}
+
+	@Benchmark
+	@Group("lockFreeContended")
+	@GroupThreads(2)
+	public boolean lockFreeReturn(Cursor cursor) {
+		final PoolObject<Object> object = this.lockFree.get(cursor.next());
+		return object.returned() && object.deallocate();
+	}
+
+	@Benchmark
+	@Group("synchronizedContended")
+	@GroupThreads(2)
+	public boolean synchronizedBorrow(Cursor cursor) {
+		return this.synchronizedObjects.get(cursor.next()).allocate();
+	}
+
+	@Benchmark
+	@Group("synchronizedContended")
+	@GroupThreads(2)
+	public boolean synchronizedReturn(Cursor cursor) {
+		final SynchronizedPoolObject object = this.synchronizedObjects.get(cursor.next());
+		return object.returned() && object.deallocate();
+	}
+
+	/**
+	 * Replica of the previous monitor based {@link PoolObject} state handling used as a baseline.
+	 * Records the same timestamps and borrow count so only the locking differs.
+	 */
+	static final class SynchronizedPoolObject {
+		private PoolObject.ObjectState state = PoolObject.ObjectState.IDLE;
+		private long lastBorrowTime;
+		private long lastReturnTime;
+		private long borrowCount;
+
+		synchronized PoolObject.ObjectState getState() {
+			return this.state;
+		}
+
+		synchronized boolean allocate() {
+			if(this.state == PoolObject.ObjectState.IDLE) {
+				this.state = PoolObject.ObjectState.ALLOCATED;
+				this.lastBorrowTime = System.currentTimeMillis();
+				this.borrowCount++;
+				return true;
+			}
+			return false;
+		}
+
+		synchronized boolean deallocate() {
+			if(this.state == PoolObject.ObjectState.RETURNED || this.state == PoolObject.ObjectState.ALLOCATED) {
+				this.state = PoolObject.ObjectState.IDLE;
+				this.lastReturnTime = System.currentTimeMillis();
+				return true;
+			}
+			return false;
+		}
+
+		synchronized boolean returned() {
+			if(this.state == PoolObject.ObjectState.ALLOCATED) {
+				this.state = PoolObject.ObjectState.RETURNED;
+				return true;
+			}
+			return false;
+		}
+	}
+}
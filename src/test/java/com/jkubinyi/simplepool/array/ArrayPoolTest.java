@@ -0,0 +1,103 @@
+package com.jkubinyi.simplepool.array;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ArrayPoolTest {
+
+	private ByteArrayPool pool;
+
+	@Before
+	public void prepareTest() {
+		this.pool = new ByteArrayPool(new ArrayPoolConfiguration.Builder()
+				.setMinArrayLength(16)
+				.setMaxArrayLength(1024)
+				.setMagazineSize(2)
+				.setMaxRetainedBytesPerBucket(256)
+				.build());
+	}
+
+	@Test
+	public void lengthIsRoundedUpToPowerOfTwo() {
+		assertEquals(16, this.pool.acquire(0).length);
+		assertEquals(16, this.pool.acquire(16).length);
+		assertEquals(32, this.pool.acquire(17).length);
+		assertEquals(1024, this.pool.acquire(1000).length);
+		assertEquals(1025, this.pool.acquire(1025).length);
+	}
+
+	@Test
+	public void releasedArrayIsReusedBySameThread() {
+		byte[] array = this.pool.acquire(100);
+		this.pool.release(array);
+		assertSame(array, this.pool.acquire(65));
+	}
+
+	@Test
+	public void foreignArraysAreIgnored() {
+		byte[] array = new byte[100];
+		this.pool.release(array);
+		assertNotSame(array, this.pool.acquire(100));
+	}
+
+	@Test
+	public void arraysSpillToSharedDepot() throws Exception {
+		final byte[][] arrays = new byte[3][];
+		for(int i = 0; i < arrays.length; i++) {
+			arrays[i] = this.pool.acquire(16);
+		}
+		for(byte[] array : arrays) {
+			this.pool.release(array); // Third release spills half of the magazine to the depot
+		}
+
+		final AtomicReference<byte[]> fromOtherThread = new AtomicReference<>();
+		Thread thread = new Thread(() -> fromOtherThread.set(this.pool.acquire(16)));
+		thread.start();
+		thread.join();
+		assertSame(arrays[1], fromOtherThread.get());
+	}
+
+	@Test
+	public void magazinesOfAllThreadsCountAgainstRetainedBytes() throws Exception {
+		ByteArrayPool small = new ByteArrayPool(new ArrayPoolConfiguration.Builder()
+				.setMinArrayLength(16)
+				.setMaxArrayLength(16)
+				.setMagazineSize(2)
+				.setMaxRetainedBytesPerBucket(64)
+				.build());
+		Thread[] threads = new Thread[2];
+		for(int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(() -> {
+				small.release(new byte[16]);
+				small.release(new byte[16]);
+			});
+			threads[i].start();
+		}
+		for(Thread thread : threads) thread.join();
+		assertEquals(4, small.getNumRetained(0)); // 64 bytes of 16 byte arrays in two magazines
+
+		byte[] array = small.acquire(16); // Reclaimed from the magazines of the dead threads
+		assertEquals(3, small.getNumRetained(0));
+		small.release(array);
+		small.release(new byte[16]); // Over the limit
+		assertEquals(4, small.getNumRetained(0));
+	}
+
+	@Test
+	public void otherPrimitiveTypes() {
+		ArrayPoolConfiguration config = new ArrayPoolConfiguration.Builder().build();
+		LongArrayPool longs = new LongArrayPool(config);
+		long[] longArray = longs.acquire(10);
+		longs.release(longArray);
+		assertSame(longArray, longs.acquire(16));
+
+		CharArrayPool chars = new CharArrayPool(config);
+		assertEquals(64, chars.acquire(33).length);
+	}
+}
@@ -0,0 +1,108 @@
+package com.jkubinyi.simplepool.buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ByteBufferPoolTest {
+
+	private ByteBufferPool pool;
+
+	@Before
+	public void prepareTest() {
+		this.pool = new ByteBufferPool(new BufferPoolConfiguration.Builder()
+				.setSizeClasses(1024, 256)
+				.setSlabSize(4096)
+				.setMaxSlabsPerClass(2)
+				.build());
+	}
+
+	@Test
+	public void smallestFittingSizeClassIsUsed() {
+		PooledByteBuffer buffer = this.pool.acquire(200);
+		assertEquals(256, buffer.buffer().capacity());
+		assertEquals(200, buffer.buffer().limit());
+		assertTrue(buffer.buffer().isDirect());
+		buffer.close();
+	}
+
+	@Test
+	public void releasedSlotIsReused() {
+		PooledByteBuffer first = this.pool.acquire(1000);
+		this.pool.release(first);
+		PooledByteBuffer second = this.pool.acquire(512);
+		assertSame(first, second);
+		assertEquals(512, second.buffer().limit());
+	}
+
+	@Test
+	public void buffersAreViewsIntoSameSlab() {
+		PooledByteBuffer first = this.pool.acquire(1024);
+		PooledByteBuffer second = this.pool.acquire(1024);
+		first.buffer().put(0, (byte) 1);
+		assertEquals(0, second.buffer().get(0));
+	}
+
+	@Test
+	public void concurrentAcquiresShareGrownSlab() throws Exception {
+		Thread[] threads = new Thread[4];
+		for(int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(() -> this.pool.acquire(1024));
+			threads[i].start();
+		}
+		for(Thread thread : threads) thread.join();
+		SizeClassStatistics statistics = this.pool.getStatistics().get(1);
+		assertEquals(1, statistics.getNumOfSlabs()); // 4 slots of a single slab
+		assertEquals(4, statistics.getUsedSlots());
+	}
+
+	@Test
+	public void sizeClassIsLimitedBySlabs() {
+		for(int i = 0; i < 8; i++) {
+			this.pool.acquire(1024);
+		}
+		assertNull(this.pool.tryAcquire(1024));
+		SizeClassStatistics statistics = this.pool.getStatistics().get(1);
+		assertEquals(2, statistics.getNumOfSlabs());
+		assertEquals(1.0, statistics.getOccupancy(), 0.0001);
+	}
+
+	@Test
+	public void statisticsReportFragmentation() {
+		this.pool.acquire(128);
+		this.pool.acquire(256);
+		SizeClassStatistics statistics = this.pool.getStatistics().get(0);
+		assertEquals(256, statistics.getSlotSize());
+		assertEquals(2, statistics.getUsedSlots());
+		assertEquals(16, statistics.getTotalSlots());
+		assertEquals(0.25, statistics.getFragmentation(), 0.0001);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void doubleReleaseFails() {
+		PooledByteBuffer buffer = this.pool.acquire(10);
+		buffer.close();
+		buffer.close();
+	}
+
+	@Test
+	public void mappedSlabs() throws Exception {
+		Path directory = Files.createTempDirectory("slabs");
+		ByteBufferPool mapped = new ByteBufferPool(new BufferPoolConfiguration.Builder()
+				.setSizeClasses(512)
+				.setSlabSize(4096)
+				.setMappedSlabs(directory)
+				.build());
+		PooledByteBuffer buffer = mapped.acquire(512);
+		buffer.buffer().putLong(0, 42L);
+		assertEquals(42L, buffer.buffer().getLong(0));
+		mapped.close();
+	}
+}
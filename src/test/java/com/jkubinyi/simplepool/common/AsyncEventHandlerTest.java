@@ -0,0 +1,84 @@
+package com.jkubinyi.simplepool.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.jkubinyi.simplepool.common.AsyncEventHandler.OverflowPolicy;
+import com.jkubinyi.simplepool.common.PoolEventHandler.Severity;
+
+public class AsyncEventHandlerTest {
+
+	@Test
+	public void eventsAreDeliveredInOrder() throws Exception {
+		List<Object> received = new CopyOnWriteArrayList<>();
+		AsyncEventHandler handler = new AsyncEventHandler.Builder((severity, format, objects) -> received.add(objects[0]))
+				.setCapacity(8)
+				.setOverflowPolicy(OverflowPolicy.BLOCK)
+				.build();
+		for(int i = 0; i < 100; i++) {
+			handler.newEvent(Severity.info, "Event {}", i);
+		}
+		handler.close();
+
+		assertEquals(100, received.size());
+		for(int i = 0; i < 100; i++) {
+			assertEquals(i, received.get(i));
+		}
+		assertEquals(0, handler.getNumDropped());
+	}
+
+	@Test
+	public void fullRingDropsEvents() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		List<Object> received = new CopyOnWriteArrayList<>();
+		AsyncEventHandler handler = new AsyncEventHandler.Builder((severity, format, objects) -> {
+			try {
+				release.await();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			received.add(objects[0]);
+		}).setCapacity(4).setOverflowPolicy(OverflowPolicy.DROP).build();
+
+		for(int i = 0; i < 20; i++) {
+			handler.newEvent(Severity.info, "Event {}", i);
+		}
+		// At most one event is being handled and four are waiting in the ring
+		assertTrue(handler.getNumDropped() >= 15);
+		release.countDown();
+		handler.close();
+		assertEquals(20, received.size() + handler.getNumDropped());
+	}
+
+	@Test
+	public void samplingKeepsErrorsUnderPressure() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		List<Severity> received = new CopyOnWriteArrayList<>();
+		AsyncEventHandler handler = new AsyncEventHandler.Builder((severity, format, objects) -> {
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			received.add(severity);
+		}).setCapacity(16).setOverflowPolicy(OverflowPolicy.SAMPLE).setSampleRate(4).build();
+
+		for(int i = 0; i < 12; i++) {
+			handler.newEvent(Severity.info, "Event {}", i);
+		}
+		handler.newEvent(Severity.error, "Failure");
+		release.countDown();
+		handler.close();
+
+		assertTrue(handler.getNumSampledOut() > 0);
+		assertTrue(received.contains(Severity.error));
+		assertEquals(13, received.size() + handler.getNumSampledOut() + handler.getNumDropped());
+	}
+}
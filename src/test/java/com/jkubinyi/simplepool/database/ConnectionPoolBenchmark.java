@@ -0,0 +1,122 @@
+package com.jkubinyi.simplepool.database;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.jkubinyi.simplepool.PoolConfiguration;
+import com.jkubinyi.simplepool.database.dialect.H2Dialect;
+
+/**
+ * <p>Drives the {@link ConnectionPool} against {@link FakeDatabase} servers through scenarios
+ * seen in production. Sampled borrow latency shows the tail each scenario causes.</p>
+ * <ul>
+ * <li><b>STEADY</b> - warm pool, cheap validation.</li>
+ * <li><b>BURST</b> - pool starts empty in each iteration, so borrowers hit the connect latency.</li>
+ * <li><b>FAILOVER</b> - primary goes down and back every 500 ms, connections fail over to the secondary.</li>
+ * <li><b>SLOW_VALIDATION</b> - every borrow pays a validation round trip.</li>
+ * </ul>
+ * Run using {@code mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args=ConnectionPoolBenchmark}.
+ * 
+ * @author jurajkubinyi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class ConnectionPoolBenchmark {
+
+	public enum Scenario {
+		STEADY,
+		BURST,
+		FAILOVER,
+		SLOW_VALIDATION
+	}
+
+	@Param
+	private Scenario scenario;
+
+	private FakeDatabase primary;
+	private FakeDatabase secondary;
+	private ConnectionPool pool;
+	private ScheduledExecutorService outages;
+
+	@Setup(Level.Trial)
+	public void prepareServers() {
+		final Duration validationLatency = this.scenario == Scenario.SLOW_VALIDATION ? Duration.ofMillis(2) : Duration.ofNanos(20_000);
+		this.primary = new FakeDatabase.Builder("benchmark-primary")
+				.setConnectLatency(Duration.ofMillis(5))
+				.setValidationLatency(validationLatency)
+				.setMaxConnections(32)
+				.build();
+		this.secondary = new FakeDatabase.Builder("benchmark-secondary")
+				.setConnectLatency(Duration.ofMillis(10))
+				.setValidationLatency(validationLatency)
+				.build();
+
+		if(this.scenario == Scenario.FAILOVER) {
+			this.outages = Executors.newSingleThreadScheduledExecutor();
+			this.outages.scheduleAtFixedRate(() -> {
+				if(this.primary.isDown()) this.primary.start();
+				else this.primary.stop();
+			}, 500, 500, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void preparePool() {
+		final ConnectionPoolConfiguration connectionConfig = new ConnectionPoolConfiguration.Builder(
+				JDBCUrl.fromAnonymous(new H2Dialect(), this.primary.getUrl()))
+				.addFallbackUrl(JDBCUrl.fromAnonymous(new H2Dialect(), this.secondary.getUrl()))
+				.setNumOfFailsToFallback(2)
+				.setEagerRetry(this.scenario == Scenario.FAILOVER)
+				.build();
+		final PoolConfiguration poolConfig = new PoolConfiguration.Builder()
+				.setInitialPoolSize(this.scenario == Scenario.BURST ? 0 : 8)
+				.setMinPoolIdleSize(0)
+				.setMaxPoolSize(8)
+				.setMaxWaitInSec(5)
+				.build();
+		this.pool = new ConnectionPool(connectionConfig, poolConfig);
+		this.pool.create();
+	}
+
+	@TearDown(Level.Iteration)
+	public void closePool() {
+		this.pool.close();
+	}
+
+	@TearDown(Level.Trial)
+	public void stopServers() {
+		if(this.outages != null) this.outages.shutdownNow();
+		this.primary.drop();
+		this.secondary.drop();
+	}
+
+	@Benchmark
+	public void borrowAndReturn(Blackhole blackhole) throws Exception {
+		try(Connection connection = this.pool.borrowObject(Duration.ofSeconds(1))) {
+			blackhole.consume(connection);
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package com.jkubinyi.simplepool.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jkubinyi.simplepool.PoolConfiguration;
+import com.jkubinyi.simplepool.database.dialect.H2Dialect;
+import com.jkubinyi.simplepool.database.dialect.SessionResetStrategy;
+
+public class FakeConnectionPoolTest {
+
+	private FakeDatabase primary;
+	private FakeDatabase secondary;
+	private ConnectionPool pool;
+
+	@Before
+	public void prepareTest() {
+		this.primary = new FakeDatabase.Builder("primary").setMaxConnections(3).build();
+		this.secondary = new FakeDatabase.Builder("secondary").build();
+
+		ConnectionPoolConfiguration connectionConfig = new ConnectionPoolConfiguration.Builder(
+				JDBCUrl.fromAnonymous(new H2Dialect(), this.primary.getUrl()))
+				.addFallbackUrl(JDBCUrl.fromAnonymous(new H2Dialect(), this.secondary.getUrl()))
+				.setNumOfFailsToFallback(2)
+				.setCreationBackoffInMs(0)
+				.build();
+		PoolConfiguration poolConfig = new PoolConfiguration.Builder()
+				.setInitialPoolSize(2)
+				.setMaxPoolSize(3)
+				.setMaxWaitInSec(1)
+				.build();
+		this.pool = new ConnectionPool(connectionConfig, poolConfig);
+		this.pool.create();
+	}
+
+	@After
+	public void cleanUp() {
+		this.pool.close();
+		this.primary.drop();
+		this.secondary.drop();
+	}
+
+	@Test
+	public void closingPoolClosesPhysicalConnections() throws Exception {
+		try(Connection connection = this.pool.getConnection()) {
+			assertFalse(connection.isClosed());
+		}
+		assertEquals(2, this.primary.getOpenConnections());
+		assertTrue(this.pool.close(Duration.ofSeconds(1)));
+		assertEquals(0, this.pool.getNumPendingDestruction());
+		assertEquals(0, this.primary.getOpenConnections());
+	}
+
+	@Test
+	public void leakedStatementsAreClosedOnReturn() throws Exception {
+		try(Connection connection = this.pool.getConnection()) {
+			connection.prepareStatement("SELECT 1").executeQuery();
+			connection.createStatement();
+			connection.prepareStatement("SELECT 2").close();
+			assertEquals(2, this.primary.getOpenStatements());
+		}
+		assertEquals(0, this.primary.getOpenStatements());
+		assertEquals(2, this.pool.getFactory().getNumClosedStatements());
+	}
+
+	@Test
+	public void outageFailsOverAndRecovers() throws Exception {
+		this.pool.clear();
+		assertTrue(this.pool.awaitDestruction(Duration.ofSeconds(1)));
+		this.primary.stop();
+		Connection connection = this.pool.getConnection();
+		assertTrue(this.pool.getFactory().inFallbackMode());
+		assertEquals(1, this.secondary.getOpenConnections());
+		connection.close();
+
+		// Eager retry finds the primary online during validation and replaces the fallback connection
+		this.primary.start();
+		connection = this.pool.getConnection();
+		assertFalse(this.pool.getFactory().inFallbackMode());
+		assertEquals(0, this.secondary.getOpenConnections());
+		connection.close();
+	}
+
+	@Test
+	public void eachFailoverAttemptTakesCreationPermit() throws Exception {
+		this.primary.stop();
+		ConnectionPoolConfiguration connectionConfig = new ConnectionPoolConfiguration.Builder(
+				JDBCUrl.fromAnonymous(new H2Dialect(), this.primary.getUrl()))
+				.addFallbackUrl(JDBCUrl.fromAnonymous(new H2Dialect(), this.secondary.getUrl()))
+				.setNumOfFailsToFallback(2)
+				.setMaxCreationsPerSec(2)
+				.setMaxCreationWaitInMs(0)
+				.setCreationBackoffInMs(0)
+				.build();
+		ConnectionPool throttled = new ConnectionPool(connectionConfig, new PoolConfiguration.Builder().build());
+		throttled.create(); // Two failed handshakes use the burst, failover is throttled
+		assertEquals(0, throttled.getNumIdle());
+		assertEquals(2, this.primary.getNumFailedConnects());
+		assertEquals(0, this.secondary.getOpenConnections());
+		assertEquals(1, throttled.getFactory().getCreationThrottle().getNumRejected());
+		throttled.close();
+	}
+
+	@Test
+	public void configurationIsReappliedAfterSessionReset() throws Exception {
+		AtomicInteger configured = new AtomicInteger(0);
+		ConnectionPoolConfiguration connectionConfig = new ConnectionPoolConfiguration.Builder(
+				JDBCUrl.fromAnonymous(new H2Dialect() {
+					@Override
+					public Optional<String> getSessionResetQuery() {
+						return Optional.of("RESET");
+					}
+				}, this.secondary.getUrl()))
+				.setSessionResetStrategy(SessionResetStrategy.QUERY)
+				.setConnectionConfiguration(connection -> configured.incrementAndGet())
+				.build();
+		ConnectionPool resettingPool = new ConnectionPool(connectionConfig, new PoolConfiguration.Builder()
+				.setInitialPoolSize(1)
+				.setMaxPoolSize(1)
+				.build());
+		resettingPool.create();
+		try {
+			assertEquals(1, configured.get());
+			for(int i = 0; i < 2; i++) {
+				try(Connection connection = resettingPool.getConnection()) {
+					assertFalse(connection.isClosed());
+				}
+			}
+			assertEquals(3, configured.get());
+		} finally {
+			resettingPool.close();
+		}
+	}
+
+	@Test
+	public void scopeSharesConnectionUntilOuterScopeCloses() throws Exception {
+		try(ConnectionScope scope = this.pool.openScope()) {
+			assertFalse(scope.isJoined());
+			Connection first = this.pool.getConnection();
+			first.close();
+			assertEquals(1, this.pool.getNumActive());
+
+			try(ConnectionScope nested = this.pool.openScope()) {
+				assertTrue(nested.isJoined());
+				assertSame(first, this.pool.getConnection());
+			}
+			assertSame(first, this.pool.getConnection());
+			assertEquals(1, this.pool.getNumActive());
+
+			final AtomicReference<Connection> other = new AtomicReference<>();
+			Thread thread = new Thread(() -> {
+				try(Connection connection = this.pool.getConnection()) {
+					other.set(connection);
+				} catch(Exception e) {
+					throw new IllegalStateException(e);
+				}
+			});
+			thread.start();
+			thread.join();
+			assertNotSame(first, other.get());
+		}
+		assertEquals(0, this.pool.getNumActive());
+
+		try(Connection connection = this.pool.getConnection()) {
+			assertFalse(connection.isClosed());
+			assertEquals(1, this.pool.getNumActive());
+		}
+		assertEquals(0, this.pool.getNumActive());
+	}
+}
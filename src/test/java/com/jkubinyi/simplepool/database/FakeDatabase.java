@@ -0,0 +1,447 @@
+package com.jkubinyi.simplepool.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+
+/**
+ * <p>In-process database server used by the tests and benchmarks of the {@link ConnectionPool}
+ * instead of a live database. Connections are {@link Proxy} instances with configurable connect
+ * and validation latency, failure rates and a server-side connection limit.</p>
+ * <p>Prepared queries return a single row with a single {@code value} column holding the first
+ * bound parameter, or the SQL if there is none.</p>
+ * <p>Each database is reachable under {@code jdbc:fake:<name>} once built. The server can be
+ * taken down and brought back to simulate an outage.</p>
+ *
+ * @author jurajkubinyi
+ */
+public final class FakeDatabase {
+
+	private static final String URL_PREFIX = "jdbc:fake:";
+	private static final Map<String, FakeDatabase> DATABASES = new ConcurrentHashMap<>();
+
+	static {
+		try {
+			DriverManager.registerDriver(new FakeDriver());
+		} catch(SQLException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private final String name;
+	private final long connectLatencyNanos;
+	private final long validationLatencyNanos;
+	private final long queryLatencyNanos;
+	private final double connectFailureRate;
+	private final double validationFailureRate;
+	private final int maxConnections;
+	private volatile boolean down = false;
+
+	private final AtomicInteger openConnections = new AtomicInteger(0);
+	private final AtomicLong connects = new AtomicLong(0);
+	private final AtomicLong failedConnects = new AtomicLong(0);
+	private final AtomicLong validations = new AtomicLong(0);
+	private final AtomicLong queries = new AtomicLong(0);
+	private final AtomicInteger openStatements = new AtomicInteger(0);
+
+	private FakeDatabase(Builder builder) {
+		this.name = builder.name;
+		this.connectLatencyNanos = builder.connectLatency.toNanos();
+		this.validationLatencyNanos = builder.validationLatency.toNanos();
+		this.queryLatencyNanos = builder.queryLatency.toNanos();
+		this.connectFailureRate = builder.connectFailureRate;
+		this.validationFailureRate = builder.validationFailureRate;
+		this.maxConnections = builder.maxConnections;
+	}
+
+	/**
+	 * @return JDBC url of the database.
+	 */
+	public String getUrl() {
+		return URL_PREFIX + this.name;
+	}
+
+	/**
+	 * Takes the server down. Open connections become invalid and new connections are refused.
+	 */
+	public void stop() {
+		this.down = true;
+	}
+
+	/**
+	 * Brings the server back online.
+	 */
+	public void start() {
+		this.down = false;
+	}
+
+	public boolean isDown() {
+		return this.down;
+	}
+
+	/**
+	 * @return Number of physical connections currently open.
+	 */
+	public int getOpenConnections() {
+		return this.openConnections.get();
+	}
+
+	/**
+	 * @return Number of connection attempts including the failed ones.
+	 */
+	public long getNumConnects() {
+		return this.connects.get();
+	}
+
+	/**
+	 * @return Number of refused connection attempts.
+	 */
+	public long getNumFailedConnects() {
+		return this.failedConnects.get();
+	}
+
+	/**
+	 * @return Number of validations of the connections.
+	 */
+	public long getNumValidations() {
+		return this.validations.get();
+	}
+
+	/**
+	 * @return Number of executed prepared queries.
+	 */
+	public long getNumQueries() {
+		return this.queries.get();
+	}
+
+	/**
+	 * @return Number of statements which were not closed yet.
+	 */
+	public int getOpenStatements() {
+		return this.openStatements.get();
+	}
+
+	/**
+	 * Removes the database, so its url is no longer accepted.
+	 */
+	public void drop() {
+		DATABASES.remove(this.name, this);
+	}
+
+	private java.sql.Connection connect() throws SQLException {
+		this.connects.incrementAndGet();
+		pause(this.connectLatencyNanos);
+		if(this.down || fails(this.connectFailureRate)) {
+			this.failedConnects.incrementAndGet();
+			throw new SQLNonTransientConnectionException("Connection to " + this.name + " refused.");
+		}
+
+		int open;
+		do {
+			open = this.openConnections.get();
+			if(this.maxConnections > 0 && open >= this.maxConnections) {
+				this.failedConnects.incrementAndGet();
+				throw new SQLNonTransientConnectionException("Too many connections to " + this.name + ".");
+			}
+		} while(!this.openConnections.compareAndSet(open, open + 1));
+
+		return (java.sql.Connection) Proxy.newProxyInstance(FakeDatabase.class.getClassLoader(),
+				new Class<?>[] { java.sql.Connection.class }, new ConnectionHandler());
+	}
+
+	private boolean validate() {
+		this.validations.incrementAndGet();
+		pause(this.validationLatencyNanos);
+		return !this.down && !fails(this.validationFailureRate);
+	}
+
+	private ResultSet query(String sql, Object value) throws SQLException {
+		this.queries.incrementAndGet();
+		pause(this.queryLatencyNanos);
+		if(this.down)
+			throw new SQLNonTransientConnectionException("Connection to " + this.name + " lost.");
+
+		final RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+		metaData.setColumnCount(1);
+		metaData.setColumnName(1, "value");
+		metaData.setColumnLabel(1, "value");
+		metaData.setColumnType(1, Types.VARCHAR);
+		final CachedRowSet rows = RowSetProvider.newFactory().createCachedRowSet();
+		rows.setMetaData(metaData);
+		rows.moveToInsertRow();
+		rows.updateString(1, String.valueOf(value == null ? sql : value));
+		rows.insertRow();
+		rows.moveToCurrentRow();
+		rows.beforeFirst();
+		return rows;
+	}
+
+	private static void pause(long nanos) {
+		if(nanos <= 0) return;
+		final long deadline = System.nanoTime() + nanos;
+		long remaining;
+		while((remaining = deadline - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(remaining);
+		}
+	}
+
+	private static boolean fails(double rate) {
+		return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+	}
+
+	/**
+	 * @return Default value of the primitive return type, so unhandled proxy calls do not fail.
+	 */
+	private static Object defaultValue(Class<?> type) {
+		if(type == boolean.class) return false;
+		if(type == int.class) return 0;
+		if(type == long.class) return 0L;
+		return null;
+	}
+
+	private final class ConnectionHandler implements InvocationHandler {
+		private volatile boolean closed = false;
+		private volatile boolean autoCommit = true;
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch(method.getName()) {
+			case "close":
+				if(!this.closed) {
+					this.closed = true;
+					FakeDatabase.this.openConnections.decrementAndGet();
+				}
+				return null;
+			case "isClosed":
+				return this.closed;
+			case "isValid":
+				return !this.closed && FakeDatabase.this.validate();
+			case "getAutoCommit":
+				return this.autoCommit;
+			case "setAutoCommit":
+				this.autoCommit = (Boolean) args[0];
+				return null;
+			case "createStatement":
+				this.ensureOpen();
+				return Proxy.newProxyInstance(FakeDatabase.class.getClassLoader(), new Class<?>[] { Statement.class },
+						new StatementHandler(this, null));
+			case "prepareStatement":
+				this.ensureOpen();
+				return Proxy.newProxyInstance(FakeDatabase.class.getClassLoader(), new Class<?>[] { PreparedStatement.class },
+						new StatementHandler(this, (String) args[0]));
+			case "commit":
+			case "rollback":
+				this.ensureOpen();
+				return null;
+			case "toString":
+				return "FakeConnection[" + FakeDatabase.this.name + "]";
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "equals":
+				return proxy == args[0];
+			default:
+				return defaultValue(method.getReturnType());
+			}
+		}
+
+		private void ensureOpen() throws SQLException {
+			if(this.closed)
+				throw new SQLException("Connection is closed.");
+			if(FakeDatabase.this.down)
+				throw new SQLNonTransientConnectionException("Connection to " + FakeDatabase.this.name + " lost.");
+		}
+	}
+
+	/**
+	 * Plain statement executing validation queries or prepared statement of the SQL.
+	 */
+	private final class StatementHandler implements InvocationHandler {
+		private final ConnectionHandler connection;
+		private final String sql;
+		private Object parameter;
+		private boolean closed = false;
+
+		private StatementHandler(ConnectionHandler connection, String sql) {
+			this.connection = connection;
+			this.sql = sql;
+			FakeDatabase.this.openStatements.incrementAndGet();
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			final String name = method.getName();
+			if(name.startsWith("set") && args != null && args.length >= 2 && Integer.valueOf(1).equals(args[0])) {
+				this.parameter = args[1];
+				return null;
+			}
+			switch(name) {
+			case "execute":
+				if(!FakeDatabase.this.validate())
+					throw new SQLNonTransientConnectionException("Connection to " + FakeDatabase.this.name + " lost.");
+				return false;
+			case "executeQuery":
+				this.connection.ensureOpen();
+				return FakeDatabase.this.query(this.sql, this.parameter);
+			case "executeUpdate":
+				this.connection.ensureOpen();
+				FakeDatabase.this.query(this.sql, this.parameter);
+				return 1;
+			case "close":
+				if(!this.closed) {
+					this.closed = true;
+					FakeDatabase.this.openStatements.decrementAndGet();
+				}
+				return null;
+			case "isClosed":
+				return this.closed;
+			default:
+				return defaultValue(method.getReturnType());
+			}
+		}
+	}
+
+	/**
+	 * Driver accepting urls of the built databases.
+	 */
+	static final class FakeDriver implements Driver {
+
+		@Override
+		public java.sql.Connection connect(String url, Properties info) throws SQLException {
+			if(!this.acceptsURL(url)) return null;
+			return DATABASES.get(url.substring(URL_PREFIX.length())).connect();
+		}
+
+		@Override
+		public boolean acceptsURL(String url) {
+			return url.startsWith(URL_PREFIX) && DATABASES.containsKey(url.substring(URL_PREFIX.length()));
+		}
+
+		@Override
+		public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+			return new DriverPropertyInfo[0];
+		}
+
+		@Override
+		public int getMajorVersion() {
+			return 1;
+		}
+
+		@Override
+		public int getMinorVersion() {
+			return 0;
+		}
+
+		@Override
+		public boolean jdbcCompliant() {
+			return false;
+		}
+
+		@Override
+		public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+			throw new SQLFeatureNotSupportedException();
+		}
+	}
+
+	public static class Builder {
+		private final String name;
+		private Duration connectLatency = Duration.ZERO;
+		private Duration validationLatency = Duration.ZERO;
+		private Duration queryLatency = Duration.ZERO;
+		private double connectFailureRate = 0;
+		private double validationFailureRate = 0;
+		private int maxConnections = 0;
+
+		/**
+		 * @param name Name of the database, used in its url.
+		 */
+		public Builder(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * @param connectLatency Time to establish a connection.
+		 * @return Builder instance.
+		 */
+		public Builder setConnectLatency(Duration connectLatency) {
+			this.connectLatency = connectLatency;
+			return this;
+		}
+
+		/**
+		 * @param validationLatency Time to validate a connection either by the driver or by a query.
+		 * @return Builder instance.
+		 */
+		public Builder setValidationLatency(Duration validationLatency) {
+			this.validationLatency = validationLatency;
+			return this;
+		}
+
+		/**
+		 * @param queryLatency Time to execute a prepared statement.
+		 * @return Builder instance.
+		 */
+		public Builder setQueryLatency(Duration queryLatency) {
+			this.queryLatency = queryLatency;
+			return this;
+		}
+
+		/**
+		 * @param connectFailureRate Probability between 0 and 1 a connection attempt is refused.
+		 * @return Builder instance.
+		 */
+		public Builder setConnectFailureRate(double connectFailureRate) {
+			this.connectFailureRate = connectFailureRate;
+			return this;
+		}
+
+		/**
+		 * @param validationFailureRate Probability between 0 and 1 a validation fails.
+		 * @return Builder instance.
+		 */
+		public Builder setValidationFailureRate(double validationFailureRate) {
+			this.validationFailureRate = validationFailureRate;
+			return this;
+		}
+
+		/**
+		 * @param maxConnections Maximum number of open connections, non-positive for unlimited.
+		 * @return Builder instance.
+		 */
+		public Builder setMaxConnections(int maxConnections) {
+			this.maxConnections = maxConnections;
+			return this;
+		}
+
+		/**
+		 * @return Database reachable under its url, replacing a database of the same name.
+		 */
+		public FakeDatabase build() {
+			final FakeDatabase database = new FakeDatabase(this);
+			DATABASES.put(this.name, database);
+			return database;
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package com.jkubinyi.simplepool.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jkubinyi.simplepool.database.dialect.PostgreSqlDialect;
+
+public class JDBCUrlTest {
+
+	private static final String URL = "jdbc:jdbcurltest:db";
+
+	private RecordingDriver driver;
+
+	@Before
+	public void registerDriver() throws SQLException {
+		this.driver = new RecordingDriver();
+		DriverManager.registerDriver(this.driver);
+	}
+
+	@After
+	public void deregisterDriver() throws SQLException {
+		DriverManager.deregisterDriver(this.driver);
+	}
+
+	@Test
+	public void driverIsResolvedOnceAndPropertiesArePrebuilt() throws Exception {
+		JDBCUrl url = JDBCUrl.from(new PostgreSqlDialect(), URL, "user", "secret")
+				.withTimeouts(Duration.ofSeconds(2), Duration.ofSeconds(5));
+
+		assertNotNull(url.connect());
+		Driver resolved = url.getDriver();
+		assertNotNull(url.connect());
+		assertSame(this.driver, resolved);
+		assertSame(resolved, url.getDriver());
+
+		assertEquals(2, this.driver.properties.size());
+		assertSame(this.driver.properties.get(0), this.driver.properties.get(1));
+		Properties properties = this.driver.properties.get(0);
+		assertEquals("user", properties.getProperty("user"));
+		assertEquals("secret", properties.getProperty("password"));
+		assertEquals("2", properties.getProperty("connectTimeout"));
+		assertEquals("5", properties.getProperty("loginTimeout"));
+		assertEquals(0, DriverManager.getLoginTimeout());
+	}
+
+	@Test(expected = SQLException.class)
+	public void unknownUrlFails() throws Exception {
+		JDBCUrl.fromAnonymous(new PostgreSqlDialect(), "jdbc:unknown:db").connect();
+	}
+
+	static class RecordingDriver implements Driver {
+		private final List<Properties> properties = new ArrayList<>();
+
+		@Override
+		public Connection connect(String url, Properties info) throws SQLException {
+			if(!this.acceptsURL(url)) return null;
+			this.properties.add(info);
+			return (Connection) Proxy.newProxyInstance(this.getClass().getClassLoader(), new Class<?>[] { Connection.class },
+					(proxy, method, args) -> null);
+		}
+
+		@Override
+		public boolean acceptsURL(String url) {
+			return url.startsWith("jdbc:jdbcurltest:");
+		}
+
+		@Override
+		public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+			return new DriverPropertyInfo[0];
+		}
+
+		@Override
+		public int getMajorVersion() {
+			return 1;
+		}
+
+		@Override
+		public int getMinorVersion() {
+			return 0;
+		}
+
+		@Override
+		public boolean jdbcCompliant() {
+			return false;
+		}
+
+		@Override
+		public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+			throw new SQLFeatureNotSupportedException();
+		}
+	}
+}
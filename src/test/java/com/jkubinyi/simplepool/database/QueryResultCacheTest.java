@@ -0,0 +1,126 @@
+package com.jkubinyi.simplepool.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jkubinyi.simplepool.PoolConfiguration;
+import com.jkubinyi.simplepool.database.dialect.H2Dialect;
+
+public class QueryResultCacheTest {
+
+	private static final String SQL = "SELECT name FROM users WHERE id = ?";
+
+	private FakeDatabase database;
+	private QueryResultCache cache;
+	private ConnectionPool pool;
+
+	@Before
+	public void prepareTest() {
+		this.database = new FakeDatabase.Builder("cache").build();
+		this.cache = new QueryResultCache.Builder()
+				.setMaxEntries(2)
+				.setTtl(Duration.ofMinutes(1))
+				.build();
+		ConnectionPoolConfiguration connectionConfig = new ConnectionPoolConfiguration.Builder(
+				JDBCUrl.fromAnonymous(new H2Dialect(), this.database.getUrl()))
+				.setResultCache(this.cache)
+				.build();
+		this.pool = new ConnectionPool(connectionConfig, new PoolConfiguration.Builder().build());
+		this.pool.create();
+	}
+
+	@After
+	public void cleanUp() {
+		this.pool.close();
+		this.database.drop();
+	}
+
+	private static String single(ResultSet result) throws SQLException {
+		assertTrue(result.next());
+		final String value = result.getString("value");
+		assertFalse(result.next());
+		return value;
+	}
+
+	@Test
+	public void cachedStatementIsServedFromCacheUntilInvalidated() throws Exception {
+		try(Connection connection = this.pool.getConnection()) {
+			for(int i = 0; i < 3; i++) {
+				try(PreparedStatement statement = connection.prepareCachedStatement(SQL, "users")) {
+					statement.setInt(1, 7);
+					assertEquals("7", single(statement.executeQuery()));
+				}
+			}
+			assertEquals(1, this.database.getNumQueries());
+			assertEquals(2, this.cache.getNumHits());
+
+			this.cache.invalidate("users");
+			try(PreparedStatement statement = connection.prepareCachedStatement(SQL, "users")) {
+				statement.setInt(1, 7);
+				assertEquals("7", single(statement.executeQuery()));
+				statement.setInt(1, 8);
+				assertEquals("8", single(statement.executeQuery()));
+			}
+			assertEquals(3, this.database.getNumQueries());
+		}
+	}
+
+	@Test
+	public void closingCachedResultKeepsCachedRows() throws Exception {
+		String[] tags = { "users" };
+		this.pool.executeCachedQuery(SQL, tags, 5).close();
+		ResultSet hit = this.pool.executeCachedQuery(SQL, tags, 5);
+		hit.close();
+		assertEquals("5", single(this.pool.executeCachedQuery(SQL, tags, 5)));
+		assertEquals(1, this.database.getNumQueries());
+		assertEquals(2, this.cache.getNumHits());
+	}
+
+	@Test
+	public void objectMethodsDoNotPrepareStatement() throws Exception {
+		try(Connection connection = this.pool.getConnection();
+				PreparedStatement statement = connection.prepareCachedStatement(SQL, "users")) {
+			assertEquals(statement.hashCode(), statement.hashCode());
+			assertTrue(statement.equals(statement));
+			assertTrue(statement.toString().contains(SQL));
+			assertEquals(0, this.database.getOpenStatements());
+		}
+	}
+
+	@Test
+	public void hitDoesNotBorrowConnection() throws Exception {
+		String[] tags = { "users" };
+		assertEquals("1", single(this.pool.executeCachedQuery(SQL, tags, 1)));
+		long validations = this.database.getNumValidations();
+
+		this.database.stop();
+		assertEquals("1", single(this.pool.executeCachedQuery(SQL, tags, 1)));
+		assertEquals(validations, this.database.getNumValidations());
+		assertEquals(1, this.database.getNumQueries());
+	}
+
+	@Test
+	public void leastRecentlyUsedEntryIsEvicted() throws Exception {
+		String[] tags = { "users" };
+		this.pool.executeCachedQuery(SQL, tags, 1);
+		this.pool.executeCachedQuery(SQL, tags, 2);
+		this.pool.executeCachedQuery(SQL, tags, 1);
+		this.pool.executeCachedQuery(SQL, tags, 3);
+		assertEquals(2, this.cache.getNumEntries());
+
+		this.pool.executeCachedQuery(SQL, tags, 1);
+		assertEquals(3, this.database.getNumQueries());
+		this.pool.executeCachedQuery(SQL, tags, 2);
+		assertEquals(4, this.database.getNumQueries());
+	}
+}
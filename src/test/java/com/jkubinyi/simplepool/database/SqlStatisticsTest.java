@@ -0,0 +1,105 @@
+package com.jkubinyi.simplepool.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.jkubinyi.simplepool.PoolConfiguration;
+import com.jkubinyi.simplepool.database.dialect.H2Dialect;
+
+public class SqlStatisticsTest {
+
+	@Test
+	public void literalsAreNormalized() {
+		assertEquals("SELECT * FROM t1 WHERE id = ? AND name = ? AND c IN (?)",
+				SqlStatistics.normalize("SELECT *  FROM t1\n WHERE id = 42 AND name = 'x''y' AND c IN (1, 2,3)"));
+	}
+
+	@Test
+	public void statementsRecordLatencyAndRows() throws Exception {
+		FakeDatabase database = new FakeDatabase.Builder("statistics").build();
+		SqlStatistics statistics = new SqlStatistics(10);
+		ConnectionPoolConfiguration connectionConfig = new ConnectionPoolConfiguration.Builder(
+				JDBCUrl.fromAnonymous(new H2Dialect(), database.getUrl()))
+				.setSqlStatistics(statistics)
+				.build();
+		ConnectionPool pool = new ConnectionPool(connectionConfig, new PoolConfiguration.Builder().build());
+		pool.create();
+		try(Connection connection = pool.getConnection()) {
+			for(int i = 0; i < 2; i++) {
+				try(PreparedStatement statement = connection.prepareStatement("SELECT name FROM users WHERE id = ?")) {
+					statement.setInt(1, i);
+					try(ResultSet result = statement.executeQuery()) {
+						while(result.next()) { }
+					}
+				}
+			}
+			try(PreparedStatement statement = connection.prepareStatement("UPDATE users SET name = 'a' WHERE id = 1")) {
+				statement.executeUpdate();
+			}
+		} finally {
+			pool.close();
+			database.drop();
+		}
+
+		List<SqlStatistics.Entry> top = statistics.getTop(10);
+		assertEquals(2, top.size());
+		SqlStatistics.Entry select = statistics.get("SELECT name FROM users WHERE id = ?");
+		assertEquals(2, select.getExecutions());
+		assertEquals(2, select.getRows());
+		assertTrue(select.getMaxNanos() > 0);
+		SqlStatistics.Entry update = statistics.get("UPDATE users SET name = 'b' WHERE id = 2");
+		assertEquals(1, update.getExecutions());
+		assertEquals(1, update.getRows());
+	}
+
+	@Test
+	public void rareSqlIsReplaced() {
+		SqlStatistics statistics = new SqlStatistics(2);
+		for(int i = 0; i < 3; i++) statistics.entry("A").record(10, false);
+		statistics.entry("B").record(10, false);
+		statistics.entry("C").record(10, false);
+
+		assertNull(statistics.get("B"));
+		assertEquals(3, statistics.get("A").getExecutions());
+		assertEquals(2, statistics.get("C").getExecutions());
+		assertEquals(1, statistics.get("C").getMaxError());
+		assertEquals(10, statistics.get("C").getAverageNanos());
+	}
+
+	@Test
+	public void preparedStatementLooksUpReplacedEntryAgain() throws Exception {
+		FakeDatabase database = new FakeDatabase.Builder("statisticsReplaced").build();
+		SqlStatistics statistics = new SqlStatistics(1);
+		ConnectionPoolConfiguration connectionConfig = new ConnectionPoolConfiguration.Builder(
+				JDBCUrl.fromAnonymous(new H2Dialect(), database.getUrl()))
+				.setSqlStatistics(statistics)
+				.build();
+		ConnectionPool pool = new ConnectionPool(connectionConfig, new PoolConfiguration.Builder().build());
+		pool.create();
+		try(Connection connection = pool.getConnection();
+				PreparedStatement prepared = connection.prepareStatement("UPDATE users SET name = ?")) {
+			prepared.setString(1, "a");
+			prepared.executeUpdate();
+			try(Statement statement = connection.createStatement()) {
+				statement.executeUpdate("DELETE FROM users WHERE id = 2");
+			}
+			assertNull(statistics.get("UPDATE users SET name = ?"));
+
+			prepared.executeUpdate();
+		} finally {
+			pool.close();
+			database.drop();
+		}
+
+		assertNull(statistics.get("DELETE FROM users WHERE id = 2"));
+		assertEquals(3, statistics.get("UPDATE users SET name = ?").getExecutions());
+	}
+}
@@ -0,0 +1,105 @@
+package com.jkubinyi.simplepool.database.dialect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class DialectTest {
+
+	private final List<String> calls = new ArrayList<>();
+	private boolean autoCommit = true;
+
+	/**
+	 * @return Connection recording executed queries, {@code isValid} and transaction calls.
+	 */
+	private Connection recordingConnection() {
+		Statement statement = (Statement) Proxy.newProxyInstance(this.getClass().getClassLoader(), new Class<?>[] { Statement.class },
+				(proxy, method, args) -> {
+					if(method.getName().equals("execute")) {
+						this.calls.add((String) args[0]);
+						return true;
+					}
+					return null;
+				});
+		return (Connection) Proxy.newProxyInstance(this.getClass().getClassLoader(), new Class<?>[] { Connection.class },
+				(proxy, method, args) -> {
+					switch(method.getName()) {
+					case "createStatement":
+						return statement;
+					case "isValid":
+						this.calls.add("isValid");
+						return true;
+					case "getAutoCommit":
+						return this.autoCommit;
+					case "setAutoCommit":
+						this.autoCommit = (Boolean) args[0];
+						this.calls.add("autoCommit=" + this.autoCommit);
+						return null;
+					case "rollback":
+						this.calls.add("rollback");
+						return null;
+					default:
+						return null;
+					}
+				});
+	}
+
+	@Test
+	public void cheapestValidationIsUsedByDefault() throws Exception {
+		Connection connection = this.recordingConnection();
+		assertTrue(new MySqlDialect().validate(connection, ValidationStrategy.CHEAPEST, 1));
+		assertTrue(new PostgreSqlDialect().validate(connection, ValidationStrategy.CHEAPEST, 1));
+		assertTrue(new OracleDialect().validate(connection, ValidationStrategy.QUERY, 1));
+		assertEquals(3, this.calls.size());
+		assertEquals("/* ping */ SELECT 1", this.calls.get(0));
+		assertEquals("isValid", this.calls.get(1));
+		assertEquals("SELECT 1 FROM DUAL", this.calls.get(2));
+	}
+
+	@Test
+	public void sessionIsResetUsingQueryOrDriver() throws Exception {
+		Connection connection = this.recordingConnection();
+		new PostgreSqlDialect().resetSession(connection, SessionResetStrategy.CHEAPEST);
+		new H2Dialect().resetSession(connection, SessionResetStrategy.CHEAPEST);
+		// Proxy does not provide the native method and the dialect has no query to fall back to
+		new SqlServerDialect().resetSession(connection, SessionResetStrategy.DRIVER);
+		new PostgreSqlDialect().resetSession(connection, SessionResetStrategy.NONE);
+		assertEquals(1, this.calls.size());
+		assertEquals("DISCARD ALL", this.calls.get(0));
+		assertEquals(SessionResetStrategy.DRIVER, new MySqlDialect().getCheapestSessionResetStrategy());
+	}
+
+	@Test
+	public void discardAllRunsOutsideOfTransaction() throws Exception {
+		Connection connection = this.recordingConnection();
+		this.autoCommit = false;
+		new PostgreSqlDialect().resetSession(connection, SessionResetStrategy.CHEAPEST);
+		assertEquals(4, this.calls.size());
+		assertEquals("rollback", this.calls.get(0));
+		assertEquals("autoCommit=true", this.calls.get(1));
+		assertEquals("DISCARD ALL", this.calls.get(2));
+		assertEquals("autoCommit=false", this.calls.get(3));
+	}
+
+	@Test
+	public void driverMethodIsResolvedOnPublicType() throws Exception {
+		List<String> hidden = Collections.unmodifiableList(new ArrayList<>(Collections.singletonList("a")));
+		assertFalse(Modifier.isPublic(hidden.getClass().getMethod("size").getDeclaringClass().getModifiers()));
+
+		Method size = DriverMethods.lookUp(hidden.getClass(), "size").get();
+		assertTrue(Modifier.isPublic(size.getDeclaringClass().getModifiers()));
+		assertEquals(1, size.invoke(hidden));
+		assertFalse(DriverMethods.lookUp(hidden.getClass(), "resetServerState").isPresent());
+	}
+}
@@ -0,0 +1,147 @@
+package com.jkubinyi.simplepool.misc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class CreationThrottleTest {
+
+	@Test
+	public void failureStartsBackoff() throws Exception {
+		CreationThrottle throttle = new CreationThrottle(0, 0, 10_000, 60_000, 1000);
+		AtomicInteger attempts = new AtomicInteger(0);
+		IllegalArgumentException failure = new IllegalArgumentException("Server down");
+		try {
+			throttle.create(() -> {
+				attempts.incrementAndGet();
+				throw failure;
+			});
+			fail("Failure of the creator should be thrown.");
+		} catch(IllegalArgumentException e) {
+			assertSame(failure, e);
+		}
+
+		try {
+			throttle.create(() -> attempts.incrementAndGet());
+			fail("Creation during backoff should fail fast.");
+		} catch(IllegalStateException e) {
+			assertSame(failure, e.getCause());
+		}
+		assertEquals(1, attempts.get());
+		assertEquals(10_000, throttle.getCurrentBackoff());
+		assertEquals(1, throttle.getNumRejected());
+	}
+
+	@Test
+	public void callerOverLimitFailsWithCreationInFlight() throws Exception {
+		CreationThrottle throttle = new CreationThrottle(0, 1, 0, 0, 5000);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch fail = new CountDownLatch(1);
+		AtomicInteger attempts = new AtomicInteger(0);
+		Thread first = new Thread(() -> {
+			try {
+				throttle.create(() -> {
+					attempts.incrementAndGet();
+					started.countDown();
+					fail.await();
+					throw new IllegalArgumentException("Server down");
+				});
+			} catch(Exception e) { }
+		});
+		first.start();
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		AtomicReference<Exception> waited = new AtomicReference<>();
+		Thread second = new Thread(() -> {
+			try {
+				throttle.create(() -> attempts.incrementAndGet());
+			} catch(Exception e) {
+				waited.set(e);
+			}
+		});
+		second.start();
+		while(throttle.getNumWaitedForInFlight() == 0) Thread.sleep(1);
+		fail.countDown();
+		first.join();
+		second.join();
+
+		assertEquals(1, attempts.get());
+		assertTrue(waited.get() instanceof IllegalStateException);
+		assertTrue(waited.get().getCause() instanceof IllegalArgumentException);
+	}
+
+	@Test
+	public void callerWithoutTokenWaitsForTokenNotForCreationInFlight() throws Exception {
+		CreationThrottle throttle = new CreationThrottle(2, 2, 0, 0, 5000);
+		throttle.create(() -> 0); // Burst of 2 leaves one token
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch fail = new CountDownLatch(1);
+		Thread first = new Thread(() -> {
+			try {
+				throttle.create(() -> {
+					started.countDown();
+					fail.await();
+					throw new IllegalArgumentException("Server down");
+				});
+			} catch(Exception e) { }
+		});
+		first.start();
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		fail.countDown(); // Unrelated failure must not reject the caller waiting for a token
+
+		assertEquals(2, (int) throttle.create(() -> 2));
+		first.join();
+		assertEquals(0, throttle.getNumWaitedForInFlight());
+		assertEquals(0, throttle.getNumRejected());
+	}
+
+	@Test
+	public void callerDoesNotWaitPastBorrowDeadline() throws Exception {
+		CreationThrottle throttle = new CreationThrottle(0, 1, 0, 0, 5000);
+		throttle.acquire(-1);
+		long start = System.nanoTime();
+		try {
+			throttle.acquire(start + TimeUnit.MILLISECONDS.toNanos(50));
+			fail("Creation is in flight till the deadline.");
+		} catch(IllegalStateException e) {
+			assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+		}
+		throttle.release(null);
+	}
+
+	@Test
+	public void eachAttemptTakesPermit() throws Exception {
+		CreationThrottle throttle = new CreationThrottle(2, 0, 0, 0, 0);
+		throttle.acquire(-1);
+		throttle.releaseForRetry();
+		throttle.acquire(-1);
+		throttle.release(null);
+		try {
+			throttle.acquire(-1);
+			fail("Both attempts used a token.");
+		} catch(IllegalStateException e) {
+			assertEquals(1, throttle.getNumRejected());
+		}
+	}
+
+	@Test
+	public void rateIsLimited() throws Exception {
+		CreationThrottle throttle = new CreationThrottle(2, 0, 0, 0, 0);
+		assertEquals(1, (int) throttle.create(() -> 1));
+		assertEquals(2, (int) throttle.create(() -> 2));
+		try {
+			throttle.create(() -> 3);
+			fail("Burst is exhausted.");
+		} catch(IllegalStateException e) {
+			assertEquals(1, throttle.getNumRejected());
+		}
+	}
+}
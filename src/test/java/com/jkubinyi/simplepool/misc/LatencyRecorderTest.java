@@ -0,0 +1,60 @@
+package com.jkubinyi.simplepool.misc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyRecorderTest {
+
+	@Test
+	public void snapshotIsSortedAndBoundedByCapacity() throws Exception {
+		LatencyRecorder recorder = new LatencyRecorder(100);
+		Thread[] writers = new Thread[8];
+		for(int i = 0; i < writers.length; i++) {
+			final long latency = i + 1;
+			writers[i] = new Thread(() -> {
+				for(int j = 0; j < 1000; j++) recorder.record(latency);
+			});
+			writers[i].start();
+		}
+		for(Thread writer : writers) writer.join();
+
+		long[] snapshot = recorder.sortedSnapshot();
+		assertTrue(snapshot.length > 0 && snapshot.length <= 100);
+		for(int i = 1; i < snapshot.length; i++) {
+			assertTrue(snapshot[i - 1] <= snapshot[i]);
+		}
+	}
+
+	@Test
+	public void percentileUsesNearestRank() {
+		LatencyRecorder recorder = new LatencyRecorder(160); // Room for all samples in any stripe
+		for(long latency = 5; latency >= 1; latency--) recorder.record(latency);
+
+		long[] snapshot = recorder.sortedSnapshot();
+		assertArrayEquals(new long[] { 1, 2, 3, 4, 5 }, snapshot);
+		assertEquals(3, LatencyRecorder.percentile(snapshot, 50));
+		assertEquals(5, LatencyRecorder.percentile(snapshot, 99));
+		assertEquals(0, LatencyRecorder.percentile(new long[0], 50));
+	}
+
+	@Test
+	public void snapshotSkipsSamplesOlderThanWrappedStripes() throws Exception {
+		LatencyRecorder recorder = new LatencyRecorder(64);
+		Thread[] writers = new Thread[32]; // Covers every stripe with stale samples
+		for(int i = 0; i < writers.length; i++) {
+			writers[i] = new Thread(() -> recorder.record(1000));
+			writers[i].start();
+		}
+		for(Thread writer : writers) writer.join();
+		Thread.sleep(1);
+
+		for(int i = 0; i < 64; i++) recorder.record(1); // Wraps the stripe of this thread
+
+		long[] snapshot = recorder.sortedSnapshot();
+		assertTrue(snapshot.length > 0);
+		assertEquals(1, snapshot[snapshot.length - 1]);
+	}
+}
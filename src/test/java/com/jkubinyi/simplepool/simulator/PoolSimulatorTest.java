@@ -0,0 +1,55 @@
+package com.jkubinyi.simplepool.simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.jkubinyi.simplepool.PoolConfiguration;
+
+public class PoolSimulatorTest {
+
+	private static Workload.Request request(long arrivalMs, long holdMs) {
+		return new Workload.Request(TimeUnit.MILLISECONDS.toNanos(arrivalMs), TimeUnit.MILLISECONDS.toNanos(holdMs));
+	}
+
+	@Test
+	public void traceIsReplayedInVirtualTime() throws Exception {
+		Workload trace = Workload.fromTrace(Arrays.asList(request(100, 100), request(0, 3000), request(3500, 100)));
+		PoolConfiguration config = new PoolConfiguration.Builder()
+				.setInitialPoolSize(0)
+				.setMinPoolIdleSize(0)
+				.setMaxPoolSize(1)
+				.setMaxPoolIdleSize(1)
+				.setMaxWaitInSec(1)
+				.build();
+
+		SimulationResult result = new PoolSimulator.Builder(trace).build().run(config);
+		assertEquals(3, result.getNumRequests());
+		assertEquals(2, result.getNumServed());
+		assertEquals(1, result.getNumTimeouts());
+		assertEquals(1, result.getNumCreated());
+		assertEquals(0, result.getWaitMax());
+		assertEquals(3100.0 / 3600, result.getUtilization(), 1e-9);
+	}
+
+	@Test
+	public void gridComparesConfigurations() throws Exception {
+		Workload workload = Workload.poisson(100, Distribution.constant(Duration.ofMillis(50)), Duration.ofSeconds(60));
+		PoolSimulator simulator = new PoolSimulator.Builder(workload)
+				.setCreateLatency(Distribution.constant(Duration.ofMillis(5)))
+				.build();
+
+		List<SimulationResult> results = simulator.run(PoolSimulator.grid(new int[] { 2, 10 }, new int[] { 1 }, new int[] { 0 }));
+		assertEquals(2, results.size());
+		// Erlang B for the offered load of 5 gives 0.676 with 2 objects and 0.018 with 10 objects
+		assertTrue(results.get(0).getTimeoutRate() > 0.5);
+		assertTrue(results.get(1).getTimeoutRate() < 0.05);
+		assertTrue(results.get(1).getUtilization() > 0.4 && results.get(1).getUtilization() < 0.6);
+	}
+}